@@ -0,0 +1,224 @@
+package quinzical.server;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * The account and leaderboard routes: /register, /login, /leaderboard,
+ * /public/leaderboard and /updatescore. Accounts are kept in memory, and are
+ * lost when the server stops.
+ *
+ * @author Alexander Nicholson
+ */
+public class Accounts {
+
+    private static final int LEADERBOARD_SIZE = 10;
+
+    /**
+     * An account, guarded by itself
+     */
+    private static class Account {
+        private final String username;
+        private final byte[] salt;
+        private final byte[] passwordHash;
+        private int score;
+        private int coins;
+
+        private Account(String username, byte[] salt, byte[] passwordHash) {
+            this.username = username;
+            this.salt = salt;
+            this.passwordHash = passwordHash;
+        }
+    }
+
+    private final Map<String, Account> accounts = new ConcurrentHashMap<String, Account>();
+
+    /**
+     * The account each auth token was given to
+     */
+    private final Map<String, Account> tokens = new ConcurrentHashMap<String, Account>();
+
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * Constructor
+     *
+     * @param server the HTTP server to add the routes to
+     */
+    public Accounts(HttpServer server) {
+        server.createContext("/register", exchange -> route(exchange, "POST", this::register));
+        server.createContext("/login", exchange -> route(exchange, "POST", this::login));
+        server.createContext("/leaderboard", exchange -> route(exchange, "GET", this::leaderboard));
+        server.createContext("/public/leaderboard", exchange -> route(exchange, "GET", this::leaderboard));
+        server.createContext("/updatescore", exchange -> route(exchange, "PUT", this::updateScore));
+    }
+
+    /**
+     * Handles a request to a route
+     */
+    @FunctionalInterface
+    private interface Route {
+        void handle(HttpExchange exchange) throws IOException, JSONException;
+    }
+
+    private void route(HttpExchange exchange, String method, Route route) {
+        try {
+            if (!method.equals(exchange.getRequestMethod())) {
+                Http.respond(exchange, 405, Http.JSON, message("Method not allowed"));
+                return;
+            }
+            route.handle(exchange);
+        } catch (IOException | JSONException | RuntimeException e) {
+            e.printStackTrace();
+            Http.respond(exchange, 400, Http.JSON, message("Bad request"));
+        }
+    }
+
+    /**
+     * POST /register: create an account and log in to it
+     */
+    private void register(HttpExchange exchange) throws IOException, JSONException {
+        JSONObject body = new JSONObject(Http.body(exchange));
+        String username = body.optString("username").trim();
+        String password = body.optString("password");
+        if (username.isEmpty() || password.isEmpty()) {
+            Http.respond(exchange, 400, Http.JSON, message("Enter a username and password"));
+            return;
+        }
+
+        byte[] salt = new byte[16];
+        random.nextBytes(salt);
+        Account account = new Account(username, salt, hash(salt, password));
+        if (accounts.putIfAbsent(username.toLowerCase(), account) != null) {
+            Http.respond(exchange, 400, Http.JSON, message("Username is already taken"));
+            return;
+        }
+        logIn(exchange, account);
+    }
+
+    /**
+     * POST /login: log in to an account
+     */
+    private void login(HttpExchange exchange) throws IOException, JSONException {
+        JSONObject body = new JSONObject(Http.body(exchange));
+        Account account = accounts.get(body.optString("username").trim().toLowerCase());
+        if (account == null
+                || !MessageDigest.isEqual(account.passwordHash, hash(account.salt, body.optString("password")))) {
+            Http.respond(exchange, 400, Http.JSON, message("Incorrect username or password"));
+            return;
+        }
+        logIn(exchange, account);
+    }
+
+    /**
+     * GET /leaderboard and /public/leaderboard: the highest scores, and the place
+     * of the logged in user if there is one
+     */
+    private void leaderboard(HttpExchange exchange) throws JSONException {
+        // Sort a copy of the scores, as they may change while sorting
+        Map<Account, Integer> scores = new HashMap<Account, Integer>();
+        for (Account account : accounts.values()) {
+            synchronized (account) {
+                scores.put(account, account.score);
+            }
+        }
+        List<Account> ranked = new ArrayList<Account>(scores.keySet());
+        ranked.sort((a, b) -> Integer.compare(scores.get(b), scores.get(a)));
+
+        JSONArray leaderboard = new JSONArray();
+        for (int i = 0; i < Math.min(LEADERBOARD_SIZE, ranked.size()); i++) {
+            JSONObject ranking = new JSONObject();
+            ranking.put("username", ranked.get(i).username);
+            ranking.put("score", scores.get(ranked.get(i)));
+            leaderboard.put(ranking);
+        }
+
+        JSONObject response = new JSONObject();
+        response.put("leaderboard", leaderboard);
+        Account account = authenticate(exchange);
+        if (account != null) {
+            response.put("yourPlace", ranked.indexOf(account) + 1);
+        }
+        Http.respond(exchange, 200, Http.JSON, response.toString());
+    }
+
+    /**
+     * PUT /updatescore: set the logged in user's score and coins
+     */
+    private void updateScore(HttpExchange exchange) throws IOException, JSONException {
+        Account account = authenticate(exchange);
+        if (account == null) {
+            Http.respond(exchange, 401, Http.JSON, message("Log in to save your score"));
+            return;
+        }
+        JSONObject body = new JSONObject(Http.body(exchange));
+        synchronized (account) {
+            account.score = body.getInt("score");
+            account.coins = body.getInt("coins");
+        }
+        Http.respond(exchange, 200, Http.JSON, "{}");
+    }
+
+    /**
+     * Give the client a new auth token for an account, with the account's score
+     * and coins
+     */
+    private void logIn(HttpExchange exchange, Account account) throws JSONException {
+        byte[] bytes = new byte[24];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        tokens.put(token, account);
+
+        JSONObject response = new JSONObject();
+        synchronized (account) {
+            response.put("score", account.score);
+            response.put("coins", account.coins);
+        }
+        exchange.getResponseHeaders().set("auth-token", token);
+        Http.respond(exchange, 200, Http.JSON, response.toString());
+    }
+
+    /**
+     * @return the account the request's auth token was given to, or null
+     */
+    private Account authenticate(HttpExchange exchange) {
+        String token = exchange.getRequestHeaders().getFirst("auth-token");
+        return token == null ? null : tokens.get(token);
+    }
+
+    private static byte[] hash(byte[] salt, String password) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(salt);
+            return digest.digest(password.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String message(String message) {
+        JSONObject body = new JSONObject();
+        try {
+            body.put("message", message);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return body.toString();
+    }
+}
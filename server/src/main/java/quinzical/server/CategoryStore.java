@@ -0,0 +1,68 @@
+package quinzical.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import quinzical.util.CategoryHash;
+
+/**
+ * The questions of every category a lobby has been created with, by the hash
+ * of their content, so later lobbies with the same categories can be created
+ * from just their hashes. Only the categories used most recently are kept
+ * ({@code -Dquinzical.server.categoryStoreSize}, 1024 by default).
+ *
+ * A category is only kept if its questions match its hash, so one client
+ * cannot change the questions another gets for a hash.
+ *
+ * @author Alexander Nicholson
+ */
+class CategoryStore {
+
+    private static final int CAPACITY = Integer.getInteger("quinzical.server.categoryStoreSize", 1024);
+
+    /**
+     * The questions of each category by hash, least recently used first. Guarded
+     * by this.
+     */
+    private final Map<String, JSONArray> categories = new LinkedHashMap<String, JSONArray>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, JSONArray> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    /**
+     * @param hash the hash of a category
+     * @return the questions of the category, or null if they are not kept. They
+     *         are shared by every lobby, and must not be changed.
+     */
+    synchronized JSONArray get(String hash) {
+        return categories.get(hash);
+    }
+
+    /**
+     * Keep the questions of a category, if they match its hash
+     *
+     * @param hash      the hash the questions were sent for
+     * @param questions the questions
+     * @return whether the questions matched the hash
+     */
+    boolean put(String hash, JSONArray questions) {
+        try {
+            if (!CategoryHash.of(questions).equals(hash)) {
+                return false;
+            }
+        } catch (JSONException e) {
+            return false;
+        }
+        synchronized (this) {
+            categories.put(hash, questions);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,120 @@
+package quinzical.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Helpers for reading requests and writing responses with the JDK's HTTP server
+ *
+ * @author Alexander Nicholson
+ */
+final class Http {
+
+    static final String TEXT = "text/plain; charset=UTF-8";
+    static final String JSON = "application/json; charset=UTF-8";
+    static final String BINARY = "application/octet-stream";
+
+    /**
+     * Private constructor, this class only has static helpers
+     */
+    private Http() { }
+
+    /**
+     * @param exchange the request
+     * @return the parameters in the query string of the request
+     */
+    static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<String, String>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null) {
+            return params;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    /**
+     * @param exchange the request
+     * @return the body of the request, decoded as UTF-8
+     * @throws IOException if the body could not be read
+     */
+    static String body(HttpExchange exchange) throws IOException {
+        return new String(bytes(exchange), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param exchange the request
+     * @return the body of the request
+     * @throws IOException if the body could not be read
+     */
+    static byte[] bytes(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * @param exchange a request
+     * @return whether the body of the request is binary
+     */
+    static boolean isBinary(HttpExchange exchange) {
+        String type = exchange.getRequestHeaders().getFirst("Content-Type");
+        return type != null && type.startsWith(BINARY);
+    }
+
+    /**
+     * Send a response and end the exchange. May be called from any thread, and
+     * after the handler of the request has returned.
+     *
+     * @param exchange    the request to respond to
+     * @param status      the status code
+     * @param contentType the type of the body
+     * @param body        the body
+     */
+    static void respond(HttpExchange exchange, int status, String contentType, String body) {
+        respond(exchange, status, contentType, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Send a response and end the exchange. May be called from any thread, and
+     * after the handler of the request has returned.
+     *
+     * @param exchange    the request to respond to
+     * @param status      the status code
+     * @param contentType the type of the body
+     * @param bytes       the body
+     */
+    static void respond(HttpExchange exchange, int status, String contentType, byte[] bytes) {
+        try {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+            if (bytes.length > 0) {
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(bytes);
+                }
+            }
+        } catch (IOException e) {
+            // The client has gone away, which the session timeout takes care of
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,435 @@
+package quinzical.server;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The multiplayer protocol: creating and joining lobbies, asking questions,
+ * scoring answers and leaving. Each change to the members of a lobby is sent
+ * to the other members as a numbered LOBBY_DELTA, and a client which misses
+ * one asks for the whole lobby with LOBBY_RESYNC.
+ *
+ * A member whose connection drops keeps their place for a while
+ * ({@code -Dquinzical.server.resumeSeconds}, 30 by default). Their client can
+ * RESUME it from a new connection with the token it was given on joining, and
+ * is sent every event it missed. LEAVE_LOBBY gives the place up straight away.
+ *
+ * A lobby can be created with the hashes of its categories rather than their
+ * questions, by a client which asked for CATEGORY_STORE. The server asks it
+ * for the questions of any categories it does not keep with
+ * CATEGORIES_NEEDED, and creates the lobby once they arrive.
+ *
+ * @author Alexander Nicholson
+ */
+public class Lobbies {
+
+    private static final long RESUME_SECONDS = Long.getLong("quinzical.server.resumeSeconds", 30);
+
+    private final Map<Integer, Lobby> lobbies = new ConcurrentHashMap<Integer, Lobby>();
+
+    /**
+     * The seat each session plays from
+     */
+    private final Map<Session, Seat> joined = new ConcurrentHashMap<Session, Seat>();
+
+    private final CategoryStore categories = new CategoryStore();
+
+    /**
+     * The CREATE_LOBBY of each session waiting for the questions of some of its
+     * categories
+     */
+    private final Map<Session, JSONObject> creating = new ConcurrentHashMap<Session, JSONObject>();
+
+    private final Random random = new Random();
+    private final SecureRandom tokens = new SecureRandom();
+
+    /**
+     * Removes members who do not come back in time
+     */
+    private final ScheduledExecutorService expiries;
+
+    /**
+     * Constructor
+     *
+     * @param server the socket server to handle the events of
+     */
+    public Lobbies(SocketServer server) {
+        expiries = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "quinzical-server-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        server.on("CATEGORY_STORE", (session, data) -> session.emit("CATEGORY_STORE", new JSONObject()));
+        server.on("CREATE_LOBBY", this::create);
+        server.on("CATEGORIES", this::categories);
+        server.on("JOIN_LOBBY", this::join);
+        server.on("LOBBY_RESYNC", this::resync);
+        server.on("NEXT_QUESTION", this::nextQuestion);
+        server.on("RESULT", this::result);
+        server.on("RESUME", this::resume);
+        server.on("LEAVE_LOBBY", (session, data) -> leave(session));
+        server.onDisconnect(this::away);
+    }
+
+    /**
+     * @return the number of open lobbies
+     */
+    public int getLobbyCount() {
+        return lobbies.size();
+    }
+
+    /**
+     * Stop removing members who are away
+     */
+    public void stop() {
+        expiries.shutdownNow();
+    }
+
+    /**
+     * CREATE_LOBBY: open a lobby with the sender as host, and send them its code.
+     * If it names categories the server does not keep, ask for their questions
+     * first.
+     */
+    private void create(Session session, JSONObject data) throws JSONException {
+        creating.remove(session);
+        if (data.has("questions")) {
+            open(session, data, data.getJSONArray("questions"));
+            return;
+        }
+
+        JSONArray needed = new JSONArray();
+        JSONArray questions = questionsOf(data.getJSONArray("categories"), needed);
+        if (questions != null) {
+            open(session, data, questions);
+            return;
+        }
+        creating.put(session, data);
+        JSONObject request = new JSONObject();
+        request.put("hashes", needed);
+        session.emit("CATEGORIES_NEEDED", request);
+    }
+
+    /**
+     * CATEGORIES: the questions of categories the server asked for, to finish
+     * creating the sender's lobby
+     */
+    private void categories(Session session, JSONObject data) throws JSONException {
+        JSONArray sent = data.getJSONArray("categories");
+        for (int i = 0; i < sent.length(); i++) {
+            JSONObject category = sent.getJSONObject(i);
+            categories.put(category.getString("hash"), category.getJSONArray("questions"));
+        }
+
+        JSONObject pending = creating.remove(session);
+        if (pending == null) {
+            return;
+        }
+        JSONArray questions = questionsOf(pending.getJSONArray("categories"), new JSONArray());
+        if (questions == null) {
+            // Some of them were not sent, or did not match their hash
+            session.emit("INVALID_LOBBY", new JSONObject());
+            return;
+        }
+        open(session, pending, questions);
+    }
+
+    /**
+     * @param hashes the hashes of the categories of a lobby
+     * @param needed has the hashes of the categories which are not kept added to
+     *               it
+     * @return the questions of every category, in order, or null if some of them
+     *         are not kept
+     */
+    private JSONArray questionsOf(JSONArray hashes, JSONArray needed) throws JSONException {
+        JSONArray questions = new JSONArray();
+        for (int i = 0; i < hashes.length(); i++) {
+            JSONArray category = categories.get(hashes.getString(i));
+            if (category == null) {
+                needed.put(hashes.getString(i));
+                continue;
+            }
+            for (int j = 0; j < category.length(); j++) {
+                questions.put(category.get(j));
+            }
+        }
+        return needed.length() == 0 ? questions : null;
+    }
+
+    /**
+     * Open a lobby with the sender of a CREATE_LOBBY as host
+     */
+    private void open(Session session, JSONObject data, JSONArray questions) throws JSONException {
+        leave(session);
+
+        JSONObject member = data.getJSONObject("user");
+        member.put("isHost", true);
+
+        Lobby lobby;
+        do {
+            int code = 10000 + random.nextInt(90000);
+            lobby = new Lobby(code, session, member, newToken(), questions);
+        } while (lobbies.putIfAbsent(lobby.getCode(), lobby) != null);
+
+        synchronized (lobby) {
+            Seat seat = lobby.getHost();
+            joined.put(session, seat);
+
+            JSONObject reply = new JSONObject();
+            reply.put("code", lobby.getCode());
+            reply.put("seq", lobby.getSequence());
+            reply.put("resume", seat.getToken());
+            seat.emit("LOBBY_ID", reply);
+        }
+    }
+
+    /**
+     * JOIN_LOBBY: add the sender to a lobby. They are sent every member, and the
+     * other members are sent the one new member.
+     */
+    private void join(Session session, JSONObject data) throws JSONException {
+        JSONObject member = data.getJSONObject("user");
+        member.put("isHost", false);
+        Lobby lobby = lobbies.get(data.optInt("code"));
+        if (lobby == null) {
+            session.emit("INVALID_LOBBY", new JSONObject());
+            return;
+        }
+        leave(session);
+
+        synchronized (lobby) {
+            if (lobby.isClosed() || lobby.isFull() || lobby.hasMember(member.optString("username"))) {
+                session.emit("INVALID_LOBBY", new JSONObject());
+                return;
+            }
+            Seat seat = new Seat(lobby, session, member, newToken());
+            long seq = lobby.add(seat);
+            joined.put(session, seat);
+
+            JSONObject state = new JSONObject();
+            state.put("seq", seq);
+            state.put("members", lobby.membersToJSON());
+            state.put("resume", seat.getToken());
+            seat.emit("LOBBY_JOINED", state);
+
+            JSONObject delta = new JSONObject();
+            delta.put("seq", seq);
+            delta.put("op", "ADDED");
+            delta.put("member", member);
+            lobby.broadcast("LOBBY_DELTA", delta, seat);
+        }
+    }
+
+    /**
+     * LOBBY_RESYNC: send the sender every member of their lobby, after they
+     * missed a change
+     */
+    private void resync(Session session, JSONObject data) throws JSONException {
+        Seat seat = joined.get(session);
+        if (seat == null) {
+            return;
+        }
+        Lobby lobby = seat.getLobby();
+        synchronized (lobby) {
+            JSONObject state = new JSONObject();
+            state.put("seq", lobby.getSequence());
+            state.put("members", lobby.membersToJSON());
+            seat.emit("LOBBY_STATE", state);
+        }
+    }
+
+    /**
+     * NEXT_QUESTION: from the host, send everyone the next question, or end the
+     * game if there are none left
+     */
+    private void nextQuestion(Session session, JSONObject data) throws JSONException {
+        Seat seat = joined.get(session);
+        if (seat == null) {
+            return;
+        }
+        Lobby lobby = seat.getLobby();
+        synchronized (lobby) {
+            if (lobby.getHost() != seat || lobby.isClosed()) {
+                return;
+            }
+            JSONObject question = lobby.nextQuestion();
+            JSONObject next = new JSONObject();
+            next.put("members", lobby.membersToJSON());
+            if (question == null) {
+                lobby.broadcast("GAME_OVER", next, null);
+                return;
+            }
+            next.put("question", question);
+            lobby.broadcast("NEXT_QUESTION", next, null);
+        }
+    }
+
+    /**
+     * RESULT: record the sender's answer and tell everyone, and tell everyone the
+     * round is over once the last member has answered
+     */
+    private void result(Session session, JSONObject data) throws JSONException {
+        Seat seat = joined.get(session);
+        if (seat == null) {
+            return;
+        }
+        Lobby lobby = seat.getLobby();
+        synchronized (lobby) {
+            if (!lobby.hasSeat(seat)) {
+                return;
+            }
+            JSONObject member = seat.getMember();
+            member.put("score", data.getInt("score"));
+            member.put("status", data.getString("status"));
+            member.put("answer", data.optString("answer"));
+
+            JSONObject update = new JSONObject();
+            update.put("username", member.getString("username"));
+            update.put("score", member.getInt("score"));
+            update.put("status", member.getString("status"));
+            update.put("answer", member.getString("answer"));
+            lobby.broadcast("SCORE_UPDATE", update, null);
+
+            if (lobby.finishRound()) {
+                lobby.broadcast("ROUND_OVER", new JSONObject(), null);
+            }
+        }
+    }
+
+    /**
+     * RESUME: move a member whose connection dropped to the sender's connection,
+     * and send them every event since the last one they received. The sender is
+     * told whether it worked with RESUMED, before any of the missed events.
+     */
+    private void resume(Session session, JSONObject data) throws JSONException {
+        JSONObject reply = new JSONObject();
+        reply.put("ok", false);
+
+        Lobby lobby = lobbies.get(data.optInt("code"));
+        if (lobby == null) {
+            session.emit("RESUMED", reply);
+            return;
+        }
+        synchronized (lobby) {
+            Seat seat = lobby.getSeat(data.optString("username"));
+            long last = data.optLong("last");
+            int missed = seat == null ? -1 : seat.missedSince(last);
+            if (lobby.isClosed() || missed < 0 || !seat.getToken().equals(data.optString("token"))) {
+                session.emit("RESUMED", reply);
+                return;
+            }
+
+            // The old connection may not have timed out yet
+            Session previous = seat.getSession();
+            if (previous != null && previous != session) {
+                joined.remove(previous, seat);
+            }
+            joined.put(session, seat);
+
+            reply.put("ok", true);
+            reply.put("replayed", missed);
+            reply.put("seq", lobby.getSequence());
+            session.emit("RESUMED", reply);
+            seat.attach(session, last);
+        }
+    }
+
+    /**
+     * A disconnect: keep the member's place in their lobby for a while, in case
+     * they resume it
+     */
+    private void away(Session session) {
+        creating.remove(session);
+        Seat seat = joined.remove(session);
+        if (seat == null) {
+            return;
+        }
+        synchronized (seat.getLobby()) {
+            // The member may have resumed from another connection already
+            if (seat.getSession() != session || !seat.getLobby().hasSeat(seat)) {
+                return;
+            }
+            seat.detach(expiries.schedule(() -> expire(seat), RESUME_SECONDS, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * Remove a member who has been away for too long
+     */
+    private void expire(Seat seat) {
+        synchronized (seat.getLobby()) {
+            if (seat.getSession() == null) {
+                leave(seat);
+            }
+        }
+    }
+
+    /**
+     * LEAVE_LOBBY: take the session out of its lobby
+     */
+    private void leave(Session session) {
+        Seat seat = joined.remove(session);
+        if (seat != null) {
+            leave(seat);
+        }
+    }
+
+    /**
+     * Take a member out of their lobby. If the host leaves, the lobby is closed.
+     */
+    private void leave(Seat seat) {
+        Lobby lobby = seat.getLobby();
+        synchronized (lobby) {
+            if (lobby.isClosed() || !lobby.hasSeat(seat)) {
+                return;
+            }
+            if (lobby.getHost() == seat) {
+                lobby.close();
+                lobbies.remove(lobby.getCode(), lobby);
+                lobby.broadcast("LOBBY_CLOSED", new JSONObject(), seat);
+                for (Seat member : lobby.getSeats()) {
+                    member.cancelExpiry();
+                    if (member.getSession() != null) {
+                        joined.remove(member.getSession(), member);
+                    }
+                }
+                return;
+            }
+
+            long seq = lobby.remove(seat);
+            try {
+                JSONObject delta = new JSONObject();
+                delta.put("seq", seq);
+                delta.put("op", "REMOVED");
+                delta.put("username", seat.getUsername());
+                lobby.broadcast("LOBBY_DELTA", delta, null);
+
+                // The round may only have been waiting on the member who left
+                if (lobby.finishRound()) {
+                    lobby.broadcast("ROUND_OVER", new JSONObject(), null);
+                }
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @return a new secret for resuming a place in a lobby
+     */
+    private String newToken() {
+        byte[] bytes = new byte[24];
+        tokens.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
@@ -0,0 +1,194 @@
+package quinzical.server;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A multiplayer lobby: its members, in the order they joined, and the questions
+ * the host chose. Every change to the members is numbered, so clients can
+ * apply the changes one at a time and tell when they have missed one. Each
+ * member holds a seat, which keeps their place while their connection is down.
+ *
+ * Not thread safe, callers synchronize on the lobby.
+ *
+ * @author Alexander Nicholson
+ */
+class Lobby {
+
+    static final int MAX_MEMBERS = 5;
+
+    private final int code;
+    private final Seat host;
+    private final JSONArray questions;
+
+    /**
+     * The seat of each member by username, in the order they joined
+     */
+    private final Map<String, Seat> seats = new LinkedHashMap<String, Seat>();
+
+    private int nextQuestion;
+    private boolean roundOpen;
+    private long sequence;
+    private boolean closed;
+
+    /**
+     * Constructor
+     *
+     * @param code      the code players join the lobby with
+     * @param host      the session of the host
+     * @param member    the host's member
+     * @param token     the secret the host resumes their place with
+     * @param questions the questions of the game
+     */
+    Lobby(int code, Session host, JSONObject member, String token, JSONArray questions) {
+        this.code = code;
+        this.host = new Seat(this, host, member, token);
+        this.questions = questions;
+        seats.put(this.host.getUsername(), this.host);
+    }
+
+    int getCode() {
+        return code;
+    }
+
+    Seat getHost() {
+        return host;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    void close() {
+        closed = true;
+    }
+
+    boolean isFull() {
+        return seats.size() >= MAX_MEMBERS;
+    }
+
+    /**
+     * @param username a username
+     * @return whether a member of the lobby has the username
+     */
+    boolean hasMember(String username) {
+        return seats.containsKey(username);
+    }
+
+    /**
+     * @param username a username
+     * @return the seat of the member with the username, or null if there is none
+     */
+    Seat getSeat(String username) {
+        return seats.get(username);
+    }
+
+    /**
+     * @param seat a seat
+     * @return whether the seat is still in the lobby
+     */
+    boolean hasSeat(Seat seat) {
+        return seats.get(seat.getUsername()) == seat;
+    }
+
+    /**
+     * @return the seats of the members
+     */
+    List<Seat> getSeats() {
+        return new ArrayList<Seat>(seats.values());
+    }
+
+    /**
+     * Add a member
+     *
+     * @return the number of the change
+     */
+    long add(Seat seat) {
+        seats.put(seat.getUsername(), seat);
+        return ++sequence;
+    }
+
+    /**
+     * Remove a member
+     *
+     * @return the number of the change
+     */
+    long remove(Seat seat) {
+        seats.remove(seat.getUsername());
+        seat.cancelExpiry();
+        return ++sequence;
+    }
+
+    /**
+     * @return the members, as the JSON the clients expect
+     */
+    JSONArray membersToJSON() {
+        JSONArray array = new JSONArray();
+        for (Seat seat : seats.values()) {
+            array.put(seat.getMember());
+        }
+        return array;
+    }
+
+    /**
+     * Move on to the next question, clearing everyone's answers
+     *
+     * @return the question, or null if every question has been asked
+     * @throws JSONException if a question cannot be read
+     */
+    JSONObject nextQuestion() throws JSONException {
+        if (nextQuestion >= questions.length()) {
+            return null;
+        }
+        for (Seat seat : seats.values()) {
+            JSONObject member = seat.getMember();
+            member.put("status", "ANSWERING");
+            member.put("answer", "");
+        }
+        roundOpen = true;
+        return questions.getJSONObject(nextQuestion++);
+    }
+
+    /**
+     * End the round if every member has answered the current question
+     *
+     * @return whether the round has just ended
+     */
+    boolean finishRound() {
+        if (!roundOpen) {
+            return false;
+        }
+        for (Seat seat : seats.values()) {
+            if ("ANSWERING".equals(seat.getMember().optString("status"))) {
+                return false;
+            }
+        }
+        roundOpen = false;
+        return true;
+    }
+
+    /**
+     * Send an event to every member, including those who are away and may resume
+     *
+     * @param type   the type of the event
+     * @param data   the data of the event
+     * @param except a seat to leave out, or null
+     */
+    void broadcast(String type, JSONObject data, Seat except) {
+        for (Seat seat : seats.values()) {
+            if (seat != except) {
+                seat.emit(type, data);
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package quinzical.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A stand-in for the Quinzical server, so multiplayer games can be played and
+ * load tested without the real one. It serves the multiplayer lobbies over
+ * socket.io and the account and leaderboard routes, all from memory.
+ *
+ * It can be run on its own with {@code ./gradlew :server:run}, or started
+ * inside another JVM with {@link #start(int)}. Point the app at it with
+ * {@code -Dquinzical.server=http://localhost:3000}.
+ *
+ * @author Alexander Nicholson
+ */
+public class LobbyServer {
+
+    public static final int DEFAULT_PORT = 3000;
+
+    private final HttpServer http;
+    private final ExecutorService executor;
+    private final SocketServer sockets;
+    private final Lobbies lobbies;
+
+    private LobbyServer(HttpServer http, ExecutorService executor) {
+        this.http = http;
+        this.executor = executor;
+        this.sockets = new SocketServer();
+        this.lobbies = new Lobbies(sockets);
+
+        http.createContext("/socket.io/", sockets);
+        new Accounts(http);
+        http.setExecutor(executor);
+    }
+
+    /**
+     * Start a server
+     *
+     * @param port the port to listen on, or 0 for any free port
+     * @return the running server
+     * @throws IOException if the port cannot be listened on
+     */
+    public static LobbyServer start(int port) throws IOException {
+        // Send each response as soon as it is written rather than waiting for the
+        // last one to be acknowledged, which otherwise adds around 40ms to each
+        // message. This must be set before the JVM's first HTTP server is made.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+
+        AtomicInteger count = new AtomicInteger();
+        // Polls are held open without a thread, so a few threads are enough
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "quinzical-server-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        LobbyServer server = new LobbyServer(HttpServer.create(new InetSocketAddress(port), 0), executor);
+        server.http.start();
+        return server;
+    }
+
+    /**
+     * @return the port the server is listening on
+     */
+    public int getPort() {
+        return http.getAddress().getPort();
+    }
+
+    /**
+     * @return the address clients connect to, e.g. http://localhost:3000
+     */
+    public String getUrl() {
+        return "http://localhost:" + getPort();
+    }
+
+    /**
+     * @return the number of connected clients
+     */
+    public int getSessionCount() {
+        return sockets.getSessionCount();
+    }
+
+    /**
+     * @return the number of open lobbies
+     */
+    public int getLobbyCount() {
+        return lobbies.getLobbyCount();
+    }
+
+    /**
+     * Disconnect every client and stop the server
+     */
+    public void stop() {
+        sockets.stop();
+        lobbies.stop();
+        http.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Run the server until the process is stopped
+     *
+     * @param args the port to listen on, 3000 if not given
+     * @throws IOException if the port cannot be listened on
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        LobbyServer server = start(port);
+        System.out.println("Quinzical server listening on " + server.getUrl());
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+    }
+}
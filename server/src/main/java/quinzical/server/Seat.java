@@ -0,0 +1,180 @@
+package quinzical.server;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ScheduledFuture;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A member's place in a lobby, which outlives the connection it was taken
+ * with. Every event sent to the member is numbered and kept for a while, so if
+ * their connection drops they can resume their place from a new one and be
+ * sent whatever they missed.
+ *
+ * Not thread safe, callers synchronize on the lobby.
+ *
+ * @author Alexander Nicholson
+ */
+class Seat {
+
+    /**
+     * The most events kept to replay. A game sends far fewer than this in the
+     * time the server holds a place.
+     */
+    static final int LOG_SIZE = 512;
+
+    /**
+     * An event sent to the member, kept to send again
+     */
+    private static class Event {
+        private final String type;
+        private final String data;
+        private final long number;
+
+        private Event(String type, String data, long number) {
+            this.type = type;
+            this.data = data;
+            this.number = number;
+        }
+    }
+
+    private final Lobby lobby;
+    private final JSONObject member;
+    private final String token;
+
+    /**
+     * The connection the member is playing from, or null while they are away
+     */
+    private Session session;
+
+    /**
+     * The most recent events sent, oldest first. Their data is kept as JSON
+     * text, because the members it holds keep changing after it is sent.
+     */
+    private final ArrayDeque<Event> log = new ArrayDeque<Event>();
+    private long lastEvent;
+
+    /**
+     * Removes the member if they do not come back in time, while they are away
+     */
+    private ScheduledFuture<?> expiry;
+
+    /**
+     * Constructor
+     *
+     * @param lobby   the lobby the place is in
+     * @param session the connection the place was taken with
+     * @param member  the member, as the JSON the clients send
+     * @param token   the secret the member resumes their place with
+     */
+    Seat(Lobby lobby, Session session, JSONObject member, String token) {
+        this.lobby = lobby;
+        this.session = session;
+        this.member = member;
+        this.token = token;
+    }
+
+    Lobby getLobby() {
+        return lobby;
+    }
+
+    JSONObject getMember() {
+        return member;
+    }
+
+    String getUsername() {
+        return member.optString("username");
+    }
+
+    String getToken() {
+        return token;
+    }
+
+    /**
+     * @return the connection the member is playing from, or null while they are
+     *         away
+     */
+    Session getSession() {
+        return session;
+    }
+
+    /**
+     * Send an event to the member, numbered after its data, and keep it in case
+     * it has to be sent again. If the member is away it is only kept.
+     *
+     * @param type the type of the event
+     * @param data the data of the event
+     */
+    void emit(String type, JSONObject data) {
+        long number = ++lastEvent;
+        log.add(new Event(type, data.toString(), number));
+        if (log.size() > LOG_SIZE) {
+            log.poll();
+        }
+        if (session != null) {
+            session.emit(type, data, number);
+        }
+    }
+
+    /**
+     * @param last the number of the last event the member received
+     * @return the number of events sent since, or -1 if some of them are no longer
+     *         kept
+     */
+    int missedSince(long last) {
+        long missed = lastEvent - last;
+        if (missed < 0 || missed > log.size()) {
+            return -1;
+        }
+        return (int) missed;
+    }
+
+    /**
+     * Mark the member as away, keeping their place until the expiry runs
+     *
+     * @param expiry removes the member if they have not come back
+     */
+    void detach(ScheduledFuture<?> expiry) {
+        this.session = null;
+        this.expiry = expiry;
+    }
+
+    /**
+     * Move the member to a new connection, and send it every event since the last
+     * one they received
+     *
+     * @param session the new connection
+     * @param last    the number of the last event the member received, which
+     *                must have been checked with missedSince
+     */
+    void attach(Session session, long last) {
+        cancelExpiry();
+        this.session = session;
+
+        int skip = log.size() - (int) (lastEvent - last);
+        Iterator<Event> events = log.iterator();
+        for (int i = 0; events.hasNext(); i++) {
+            Event event = events.next();
+            if (i < skip) {
+                continue;
+            }
+            try {
+                session.emit(event.type, new JSONObject(event.data), event.number);
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Stop the member being removed for being away
+     */
+    void cancelExpiry() {
+        if (expiry != null) {
+            expiry.cancel(false);
+            expiry = null;
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package quinzical.server;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import quinzical.util.WireCodec;
+
+/**
+ * A client connected to the socket server. Messages to the client are queued
+ * until it next polls for them; a poll which arrives while the queue is empty
+ * is held open until there is something to send, so messages are delivered as
+ * soon as they are sent.
+ *
+ * Once the client has agreed to the binary wire format, the data of each event
+ * is encoded with a WireCodec and sent as a socket.io binary attachment.
+ *
+ * @author Alexander Nicholson
+ */
+public class Session {
+
+    private final String id;
+    private final String token;
+
+    /**
+     * Packets waiting for the client to poll for them, guarded by this. Each is
+     * either a String, or a byte[] for a binary message.
+     */
+    private final Queue<Object> outbound = new ArrayDeque<Object>();
+
+    /**
+     * The poll being held open until there is something to send, or null
+     */
+    private HttpExchange poll;
+    private long pollSince;
+
+    private volatile long lastSeen;
+    private volatile boolean closed;
+
+    /**
+     * Encodes the events sent to the client and decodes those it sends, or null
+     * while they are sent as JSON. Guarded by this.
+     */
+    private WireCodec codec;
+
+    /**
+     * A binary event from the client waiting for its attachments, or null
+     */
+    private JSONArray partialEvent;
+    private final List<byte[]> attachments = new ArrayList<byte[]>();
+    private int attachmentsExpected;
+
+    /**
+     * Constructor
+     *
+     * @param id    the id of the session
+     * @param token the auth token the client connected with, which may be null
+     */
+    Session(String id, String token) {
+        this.id = id;
+        this.token = token;
+        this.lastSeen = System.nanoTime();
+    }
+
+    /**
+     * @return the id of the session
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the auth token the client connected with, or null if it did not
+     *         send one
+     */
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * @return whether the client is still connected
+     */
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Send an event to the client
+     *
+     * @param type the type of the event
+     * @param data the data of the event, usually a JSONObject
+     */
+    public void emit(String type, Object data) {
+        JSONArray event = new JSONArray();
+        event.put(type);
+        event.put(data);
+        emit(event);
+    }
+
+    /**
+     * Send an event to the client with its number after the data, so it can ask
+     * for the events after it if its connection drops
+     *
+     * @param type   the type of the event
+     * @param data   the data of the event
+     * @param number the number of the event
+     */
+    void emit(String type, Object data, long number) {
+        JSONArray event = new JSONArray();
+        event.put(type);
+        event.put(data);
+        event.put(number);
+        emit(event);
+    }
+
+    /**
+     * Send the arguments of an event as a socket.io event packet, with the data
+     * encoded as a binary attachment if the client has agreed to it
+     */
+    private synchronized void emit(JSONArray event) {
+        Object data = event.opt(1);
+        if (codec == null || !(data instanceof JSONObject)) {
+            // An engine.io message (4) holding a socket.io event (2)
+            send("42" + event.toString());
+            return;
+        }
+        try {
+            byte[] bytes = codec.encode((JSONObject) data);
+            JSONObject placeholder = new JSONObject();
+            placeholder.put("_placeholder", true);
+            placeholder.put("num", 0);
+            event.put(1, placeholder);
+            // A socket.io binary event (5) with one attachment, which follows it as a
+            // binary message
+            send("451-" + event.toString(), bytes);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Tell the client the events from now on are encoded with a codec, and start
+     * encoding them with it
+     *
+     * @param codec the codec
+     * @param type  the type of the event telling the client
+     * @param data  the data of the event telling the client
+     */
+    synchronized void useCodec(WireCodec codec, String type, Object data) {
+        emit(type, data);
+        this.codec = codec;
+    }
+
+    /**
+     * @return the codec the client's binary messages are decoded with, or null if
+     *         it has not agreed to one
+     */
+    synchronized WireCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Start a binary event from the client, which is complete once its
+     * attachments have arrived
+     *
+     * @param event       the arguments of the event, with placeholders for the
+     *                    attachments
+     * @param attachments the number of attachments which follow
+     * @return the event if it has no attachments, otherwise null
+     */
+    JSONArray startBinaryEvent(JSONArray event, int attachments) {
+        this.attachments.clear();
+        if (attachments == 0) {
+            partialEvent = null;
+            return event;
+        }
+        partialEvent = event;
+        attachmentsExpected = attachments;
+        return null;
+    }
+
+    /**
+     * Add an attachment to the binary event from the client
+     *
+     * @param data the attachment
+     * @return the event, with each placeholder argument replaced by its
+     *         attachment, once every attachment has arrived, otherwise null
+     */
+    JSONArray addAttachment(byte[] data) {
+        if (partialEvent == null) {
+            return null;
+        }
+        attachments.add(data);
+        if (attachments.size() < attachmentsExpected) {
+            return null;
+        }
+
+        JSONArray event = partialEvent;
+        partialEvent = null;
+        try {
+            // The app only ever sends attachments as whole arguments
+            for (int i = 0; i < event.length(); i++) {
+                JSONObject arg = event.optJSONObject(i);
+                if (arg != null && arg.optBoolean("_placeholder")) {
+                    int num = arg.optInt("num", -1);
+                    event.put(i, num >= 0 && num < attachments.size() ? attachments.get(num) : JSONObject.NULL);
+                }
+            }
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        attachments.clear();
+        return event;
+    }
+
+    /**
+     * Queue packets for the client, and send them straight away if the client is
+     * waiting for them
+     *
+     * @param packets the engine.io packets, each a String, or a byte[] for a
+     *                binary message
+     */
+    void send(Object... packets) {
+        HttpExchange waiting;
+        Object payload;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            for (Object packet : packets) {
+                outbound.add(packet);
+            }
+            if (poll == null) {
+                return;
+            }
+            waiting = poll;
+            poll = null;
+            payload = drain();
+        }
+        respond(waiting, payload);
+    }
+
+    /**
+     * Handle a poll from the client, answering it straight away if anything is
+     * queued or holding it open until something is
+     *
+     * @param exchange the poll
+     */
+    void poll(HttpExchange exchange) {
+        seen();
+        HttpExchange previous;
+        Object payload = null;
+        synchronized (this) {
+            if (closed) {
+                payload = encode("1");
+            } else if (!outbound.isEmpty()) {
+                payload = drain();
+            }
+            previous = poll;
+            poll = payload == null ? exchange : null;
+            pollSince = System.nanoTime();
+        }
+        if (previous != null) {
+            // The client should only poll once at a time, let the old poll go
+            Http.respond(previous, 200, Http.TEXT, encode("6"));
+        }
+        if (payload != null) {
+            respond(exchange, payload);
+        }
+    }
+
+    /**
+     * Answer a poll which has been held open for too long with a noop, so the
+     * client does not give up on it
+     *
+     * @param timeout how long a poll may be held open, in nanoseconds
+     */
+    void expirePoll(long timeout) {
+        HttpExchange expired;
+        synchronized (this) {
+            if (poll == null || System.nanoTime() - pollSince < timeout) {
+                return;
+            }
+            expired = poll;
+            poll = null;
+        }
+        Http.respond(expired, 200, Http.TEXT, encode("6"));
+    }
+
+    /**
+     * Mark the session closed, and tell the client if it is waiting
+     */
+    void close() {
+        HttpExchange waiting;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            outbound.clear();
+            waiting = poll;
+            poll = null;
+        }
+        if (waiting != null) {
+            Http.respond(waiting, 200, Http.TEXT, encode("1"));
+        }
+    }
+
+    /**
+     * Record that the client was heard from
+     */
+    void seen() {
+        lastSeen = System.nanoTime();
+    }
+
+    /**
+     * @return the time the client was last heard from, from System.nanoTime()
+     */
+    long getLastSeen() {
+        return lastSeen;
+    }
+
+    /**
+     * @return every queued packet as one payload, emptying the queue. The payload
+     *         is a String, or a byte[] if any of the packets are binary.
+     */
+    private Object drain() {
+        boolean binary = false;
+        for (Object packet : outbound) {
+            binary |= packet instanceof byte[];
+        }
+
+        if (binary) {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            for (Object packet = outbound.poll(); packet != null; packet = outbound.poll()) {
+                encodeBinary(payload, packet);
+            }
+            return payload.toByteArray();
+        }
+        StringBuilder payload = new StringBuilder();
+        for (Object packet = outbound.poll(); packet != null; packet = outbound.poll()) {
+            payload.append(encode((String) packet));
+        }
+        return payload.toString();
+    }
+
+    private static void respond(HttpExchange exchange, Object payload) {
+        if (payload instanceof byte[]) {
+            Http.respond(exchange, 200, Http.BINARY, (byte[]) payload);
+        } else {
+            Http.respond(exchange, 200, Http.TEXT, (String) payload);
+        }
+    }
+
+    /**
+     * Frame a packet for a polling payload, which is its length in characters, a
+     * colon, and then the packet
+     *
+     * @param packet the engine.io packet
+     * @return the framed packet
+     */
+    static String encode(String packet) {
+        return packet.length() + ":" + packet;
+    }
+
+    /**
+     * Frame a packet for a binary polling payload. Each packet starts with 0 for
+     * a string or 1 for binary, then its length in bytes as one byte per decimal
+     * digit, then 255, then the packet. A binary packet is its type, 4 for a
+     * message, followed by the data.
+     *
+     * @param payload the payload to add the packet to
+     * @param packet  the engine.io packet, a String, or a byte[] for a binary
+     *                message
+     */
+    static void encodeBinary(ByteArrayOutputStream payload, Object packet) {
+        byte[] bytes;
+        if (packet instanceof byte[]) {
+            byte[] data = (byte[]) packet;
+            bytes = new byte[data.length + 1];
+            bytes[0] = 4;
+            System.arraycopy(data, 0, bytes, 1, data.length);
+            payload.write(1);
+        } else {
+            bytes = ((String) packet).getBytes(StandardCharsets.UTF_8);
+            payload.write(0);
+        }
+        String length = Integer.toString(bytes.length);
+        for (int i = 0; i < length.length(); i++) {
+            payload.write(length.charAt(i) - '0');
+        }
+        payload.write(255);
+        payload.write(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,472 @@
+package quinzical.server;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import quinzical.util.WireCodec;
+
+/**
+ * A socket.io server speaking the protocol of the socket.io client the app uses
+ * (engine.io protocol 3), over HTTP long-polling. Clients are not offered an
+ * upgrade to websockets, so they stay on long-polling, which the JDK's HTTP
+ * server can serve without any other libraries.
+ *
+ * Polls are held open without holding a thread, so a few threads can serve
+ * hundreds of clients.
+ *
+ * A client may offer the binary wire format with a WIRE event right after it
+ * connects. If the server agrees ({@code -Dquinzical.server.wire}, true by
+ * default), it answers with WIRE, and from then on the data of every event in
+ * both directions is a WireCodec message sent as a binary attachment. Handlers
+ * always see the decoded JSON, and clients which never offer it stay on JSON.
+ *
+ * @author Alexander Nicholson
+ */
+public class SocketServer implements HttpHandler {
+
+    /**
+     * How often clients ping, and how long a poll is held open. This is kept
+     * below the 10 second read timeout of the client's HTTP client.
+     */
+    private static final long PING_INTERVAL = 8000;
+
+    /**
+     * How long to wait for a ping after the last one was due before giving up on
+     * a client
+     */
+    private static final long PING_TIMEOUT = 10000;
+
+    private static final boolean WIRE = Boolean.parseBoolean(System.getProperty("quinzical.server.wire", "true"));
+
+    /**
+     * Handles an event from a client
+     */
+    @FunctionalInterface
+    public interface EventHandler {
+        void handle(Session session, JSONObject data) throws JSONException;
+    }
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+
+    private final Map<String, EventHandler> handlers = new ConcurrentHashMap<String, EventHandler>();
+
+    private final List<Consumer<Session>> disconnectHandlers = new CopyOnWriteArrayList<Consumer<Session>>();
+
+    private final SecureRandom random = new SecureRandom();
+
+    private final ScheduledExecutorService ticker;
+
+    /**
+     * Constructor, which starts checking for polls to expire and clients which
+     * have gone away
+     */
+    public SocketServer() {
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "quinzical-server-ticker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleWithFixedDelay(this::tick, 1, 1, TimeUnit.SECONDS);
+
+        if (WIRE) {
+            on("WIRE", this::agreeWire);
+        }
+    }
+
+    /**
+     * Add a handler for a type of event. Adding a handler replaces any existing
+     * handler for that type.
+     *
+     * @param type    the type of event
+     * @param handler the handler, which runs on a thread of the HTTP server
+     */
+    public void on(String type, EventHandler handler) {
+        handlers.put(type, handler);
+    }
+
+    /**
+     * Add a handler which runs when a client disconnects or times out
+     *
+     * @param handler the handler
+     */
+    public void onDisconnect(Consumer<Session> handler) {
+        disconnectHandlers.add(handler);
+    }
+
+    /**
+     * @return the number of connected clients
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Disconnect every client and stop checking for timeouts
+     */
+    public void stop() {
+        ticker.shutdownNow();
+        for (Session session : new ArrayList<Session>(sessions.values())) {
+            close(session);
+        }
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        Map<String, String> query = Http.query(exchange);
+        if (!"polling".equals(query.get("transport"))) {
+            error(exchange, 0, "Transport unknown");
+            return;
+        }
+
+        String sid = query.get("sid");
+        String method = exchange.getRequestMethod();
+        if (sid == null) {
+            if ("GET".equals(method)) {
+                handshake(exchange, query.get("token"));
+            } else {
+                error(exchange, 2, "Bad handshake method");
+            }
+            return;
+        }
+
+        Session session = sessions.get(sid);
+        if (session == null) {
+            error(exchange, 1, "Session ID unknown");
+            return;
+        }
+
+        if ("GET".equals(method)) {
+            session.poll(exchange);
+        } else if ("POST".equals(method)) {
+            session.seen();
+            List<Object> packets = Http.isBinary(exchange) ? decodeBinaryPayload(Http.bytes(exchange))
+                    : decodePayload(Http.body(exchange));
+            if (packets == null) {
+                error(exchange, 3, "Bad request");
+                return;
+            }
+            // The client does not send again until the post is answered, so handling
+            // the packets first keeps each client's events in order
+            for (Object packet : packets) {
+                if (packet instanceof byte[]) {
+                    onBinaryPacket(session, (byte[]) packet);
+                } else {
+                    onPacket(session, (String) packet);
+                }
+            }
+            Http.respond(exchange, 200, Http.TEXT, "ok");
+        } else {
+            error(exchange, 2, "Bad request");
+        }
+    }
+
+    /**
+     * Open a session for a new client
+     */
+    private void handshake(HttpExchange exchange, String token) {
+        byte[] bytes = new byte[15];
+        random.nextBytes(bytes);
+        String sid = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        Session session = new Session(sid, token);
+        sessions.put(sid, session);
+
+        JSONObject open = new JSONObject();
+        try {
+            open.put("sid", sid);
+            open.put("upgrades", new JSONArray());
+            open.put("pingInterval", PING_INTERVAL);
+            open.put("pingTimeout", PING_TIMEOUT);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        // The open packet (0), then the socket.io connect packet (40) for the root
+        // namespace, which the client waits for before it sends any events
+        Http.respond(exchange, 200, Http.TEXT, Session.encode("0" + open.toString()) + Session.encode("40"));
+    }
+
+    /**
+     * Handle an engine.io packet from a client
+     */
+    private void onPacket(Session session, String packet) {
+        if (packet.isEmpty()) {
+            return;
+        }
+        switch (packet.charAt(0)) {
+            case '1':
+                // close
+                close(session);
+                break;
+            case '2':
+                // ping, answered with a pong with the same data
+                session.send("3" + packet.substring(1));
+                break;
+            case '4':
+                // message
+                onMessage(session, packet.substring(1));
+                break;
+            default:
+                // upgrades are never offered, and noops need no answer
+                break;
+        }
+    }
+
+    /**
+     * Handle a binary engine.io packet from a client, which is the attachment of a
+     * binary event
+     */
+    private void onBinaryPacket(Session session, byte[] packet) {
+        // only messages (4) are sent as binary
+        if (packet.length == 0 || packet[0] != 4) {
+            return;
+        }
+        JSONArray event = session.addAttachment(Arrays.copyOfRange(packet, 1, packet.length));
+        if (event != null) {
+            onEvent(session, event);
+        }
+    }
+
+    /**
+     * Handle a socket.io packet from a client
+     */
+    private void onMessage(Session session, String message) {
+        if (message.isEmpty()) {
+            return;
+        }
+        char type = message.charAt(0);
+        if (type == '1') {
+            // disconnect
+            close(session);
+            return;
+        }
+        if (type != '2' && type != '5') {
+            // connect packets are only sent for other namespaces, and acks are not
+            // used
+            return;
+        }
+
+        int start = 1;
+        int attachments = 0;
+        if (type == '5') {
+            // a binary event starts with the number of attachments which follow it
+            int dash = message.indexOf('-');
+            if (dash < 0) {
+                return;
+            }
+            try {
+                attachments = Integer.parseInt(message.substring(1, dash));
+            } catch (NumberFormatException e) {
+                return;
+            }
+            start = dash + 1;
+        }
+        if (message.startsWith("/", start)) {
+            // only the root namespace is served
+            return;
+        }
+        // skip the id of an ack the client wants, which the app never asks for
+        while (start < message.length() && Character.isDigit(message.charAt(start))) {
+            start++;
+        }
+
+        JSONArray event;
+        try {
+            event = new JSONArray(message.substring(start));
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (type == '5') {
+            event = session.startBinaryEvent(event, attachments);
+        }
+        if (event != null) {
+            onEvent(session, event);
+        }
+    }
+
+    /**
+     * Run the handler of an event from a client, decoding its data first if it
+     * was sent in the binary wire format
+     */
+    private void onEvent(Session session, JSONArray event) {
+        try {
+            EventHandler handler = handlers.get(event.getString(0));
+            if (handler == null) {
+                return;
+            }
+            Object data = event.length() > 1 ? event.get(1) : null;
+            if (data instanceof byte[]) {
+                WireCodec codec = session.getCodec();
+                if (codec == null) {
+                    throw new JSONException("Binary event before the wire format was agreed");
+                }
+                data = codec.decode((byte[]) data);
+            }
+            handler.handle(session, data instanceof JSONObject ? (JSONObject) data : new JSONObject());
+        } catch (JSONException | RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * WIRE: the client offers the binary wire format, with the names of its
+     * cosmetics. Agree to it if the version is one this server understands.
+     */
+    private void agreeWire(Session session, JSONObject data) throws JSONException {
+        if (data.optInt("version") != WireCodec.VERSION || session.getCodec() != null) {
+            return;
+        }
+        JSONArray names = data.getJSONArray("cosmetics");
+        List<String> cosmetics = new ArrayList<String>();
+        for (int i = 0; i < names.length(); i++) {
+            cosmetics.add(names.getString(i));
+        }
+
+        JSONObject reply = new JSONObject();
+        reply.put("version", WireCodec.VERSION);
+        session.useCodec(new WireCodec(cosmetics), "WIRE", reply);
+    }
+
+    /**
+     * Close a session and run the disconnect handlers, if it is still open
+     *
+     * @param session the session
+     */
+    public void close(Session session) {
+        if (!sessions.remove(session.getId(), session)) {
+            return;
+        }
+        session.close();
+        for (Consumer<Session> handler : disconnectHandlers) {
+            try {
+                handler.accept(session);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Answer polls which have been held open too long, and close sessions whose
+     * clients have stopped pinging
+     */
+    private void tick() {
+        long now = System.nanoTime();
+        long pollTimeout = TimeUnit.MILLISECONDS.toNanos(PING_INTERVAL);
+        long sessionTimeout = TimeUnit.MILLISECONDS.toNanos(PING_INTERVAL + PING_TIMEOUT);
+        for (Session session : sessions.values()) {
+            if (now - session.getLastSeen() > sessionTimeout) {
+                close(session);
+            } else {
+                session.expirePoll(pollTimeout);
+            }
+        }
+    }
+
+    /**
+     * Split a polling payload into its packets. Each packet is framed as its
+     * length in characters, a colon, and the packet.
+     *
+     * @param payload the payload
+     * @return the packets, or null if the payload is not framed correctly
+     */
+    static List<Object> decodePayload(String payload) {
+        List<Object> packets = new ArrayList<Object>();
+        int i = 0;
+        while (i < payload.length()) {
+            int colon = payload.indexOf(':', i);
+            if (colon <= i) {
+                return null;
+            }
+            int length;
+            try {
+                length = Integer.parseInt(payload.substring(i, colon));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            int end = colon + 1 + length;
+            if (length < 0 || end > payload.length()) {
+                return null;
+            }
+            packets.add(payload.substring(colon + 1, end));
+            i = end;
+        }
+        return packets;
+    }
+
+    /**
+     * Split a binary polling payload into its packets. Each packet starts with 0
+     * for a string or 1 for binary, then its length in bytes as one byte per
+     * decimal digit, then 255, then the packet.
+     *
+     * @param payload the payload
+     * @return the packets, each a String, or a byte[] for a binary packet
+     *         starting with its type, or null if the payload is not framed
+     *         correctly
+     */
+    static List<Object> decodeBinaryPayload(byte[] payload) {
+        List<Object> packets = new ArrayList<Object>();
+        int i = 0;
+        while (i < payload.length) {
+            int kind = payload[i++];
+            if (kind != 0 && kind != 1) {
+                return null;
+            }
+            boolean binary = kind == 1;
+            int length = 0;
+            int digits = 0;
+            while (i < payload.length && (payload[i] & 0xFF) != 255) {
+                int digit = payload[i++];
+                if (digit < 0 || digit > 9 || ++digits > 9) {
+                    return null;
+                }
+                length = length * 10 + digit;
+            }
+            // skip the 255
+            i++;
+            if (digits == 0 || i + length > payload.length) {
+                return null;
+            }
+            if (binary) {
+                packets.add(Arrays.copyOfRange(payload, i, i + length));
+            } else {
+                packets.add(new String(payload, i, length, StandardCharsets.UTF_8));
+            }
+            i += length;
+        }
+        return packets;
+    }
+
+    /**
+     * Answer a request with an engine.io error
+     */
+    private static void error(HttpExchange exchange, int code, String message) {
+        JSONObject body = new JSONObject();
+        try {
+            body.put("code", code);
+            body.put("message", message);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        Http.respond(exchange, 400, Http.JSON, body.toString());
+    }
+}
@@ -0,0 +1,85 @@
+package quinzical.server.load;
+
+import java.util.Arrays;
+
+/**
+ * Every latency recorded for one kind of round trip, so percentiles can be
+ * worked out exactly at the end of a run. Safe to use from any thread.
+ *
+ * @author Alexander Nicholson
+ */
+public class Latency {
+
+    private final String name;
+    private long[] samples = new long[1024];
+    private int count;
+
+    /**
+     * Constructor
+     *
+     * @param name the name of the round trip
+     */
+    public Latency(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the name of the round trip
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Record the time elapsed since the given start time
+     *
+     * @param startNano a value previously returned by System.nanoTime()
+     */
+    public void recordSince(long startNano) {
+        record(System.nanoTime() - startNano);
+    }
+
+    /**
+     * Record a latency
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    public synchronized void record(long nanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+    }
+
+    /**
+     * @return the number of latencies recorded
+     */
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * @param percentile the percentile, from 0 to 100
+     * @return the latency at the percentile in milliseconds, by nearest rank, or
+     *         0 if nothing has been recorded
+     */
+    public synchronized double getPercentileMillis(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * count);
+        return sorted[Math.max(0, Math.min(count, rank) - 1)] / 1e6;
+    }
+
+    /**
+     * @return a row of the report: the count, the 50th, 90th and 99th percentiles
+     *         and the maximum
+     */
+    @Override
+    public String toString() {
+        return String.format("%-16s %8d %9.1f %9.1f %9.1f %9.1f", name, getCount(), getPercentileMillis(50),
+                getPercentileMillis(90), getPercentileMillis(99), getPercentileMillis(100));
+    }
+}
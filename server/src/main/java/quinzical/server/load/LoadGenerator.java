@@ -0,0 +1,233 @@
+package quinzical.server.load;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.socket.client.IO;
+import io.socket.engineio.client.transports.Polling;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import quinzical.server.LobbyServer;
+
+/**
+ * Plays full multiplayer games against a server with many simulated members at
+ * once, and reports the round trip latency of each step of the game as
+ * percentiles. The members connect through the same socket.io client as the
+ * app, and send the same events.
+ *
+ * It is set up with system properties:
+ * <ul>
+ * <li>quinzical.server: the server to test. If not set, a server is started in
+ * this JVM.</li>
+ * <li>quinzical.load.clients: the number of simulated members (200)</li>
+ * <li>quinzical.load.lobbySize: the number of members in each lobby (5)</li>
+ * <li>quinzical.load.questions: the number of questions in each game (5)</li>
+ * <li>quinzical.load.games: the number of games each lobby plays (2)</li>
+ * <li>quinzical.load.thinkMs: the longest a member takes to answer (250)</li>
+ * <li>quinzical.load.rampMs: the time over which the lobbies start (2000)</li>
+ * <li>quinzical.load.timeoutSeconds: how long to wait for every game to
+ * finish (180)</li>
+ * <li>quinzical.load.wire: whether members offer the binary wire format, as
+ * the app does (true)</li>
+ * </ul>
+ *
+ * The reported latencies are:
+ * <ul>
+ * <li>connect: opening a connection, until the client may send events</li>
+ * <li>create: CREATE_LOBBY until LOBBY_ID</li>
+ * <li>join: JOIN_LOBBY until LOBBY_JOINED</li>
+ * <li>question: the host's NEXT_QUESTION until each member receives it</li>
+ * <li>result: a member's RESULT until their own SCORE_UPDATE comes back</li>
+ * <li>round: NEXT_QUESTION until ROUND_OVER, including the time spent
+ * thinking</li>
+ * <li>game: the first question until GAME_OVER</li>
+ * </ul>
+ *
+ * Every simulated member shares the socket.io client's single event thread,
+ * so with many members the latencies include time spent queued on the client
+ * as well as on the server.
+ *
+ * @author Alexander Nicholson
+ */
+public class LoadGenerator {
+
+    private static final String[] REPORTED = { "connect", "create", "join", "question", "result", "round", "game" };
+
+    private static final int MAX_ERRORS_SHOWN = 10;
+
+    private final Map<String, Latency> latencies = new ConcurrentHashMap<String, Latency>();
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicInteger games = new AtomicInteger();
+
+    private final ScheduledExecutorService scheduler;
+
+    private CountDownLatch lobbiesLeft;
+
+    /**
+     * Constructor
+     */
+    public LoadGenerator() {
+        scheduler = Executors.newScheduledThreadPool(2, r -> {
+            Thread thread = new Thread(r, "quinzical-load");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Run the load test and print the report
+     *
+     * @param args not used, see the class comment for the settings
+     * @throws IOException          if a server cannot be started in this JVM
+     * @throws URISyntaxException   if the address of the server is invalid
+     * @throws InterruptedException if interrupted while the games are played
+     */
+    public static void main(String[] args) throws IOException, URISyntaxException, InterruptedException {
+        int clients = Integer.getInteger("quinzical.load.clients", 200);
+        int lobbySize = Math.max(1, Math.min(5, Integer.getInteger("quinzical.load.lobbySize", 5)));
+        int questions = Integer.getInteger("quinzical.load.questions", 5);
+        int games = Math.max(1, Integer.getInteger("quinzical.load.games", 2));
+        long thinkMillis = Long.getLong("quinzical.load.thinkMs", 250);
+        long rampMillis = Long.getLong("quinzical.load.rampMs", 2000);
+        long timeoutSeconds = Long.getLong("quinzical.load.timeoutSeconds", 180);
+        boolean wire = Boolean.parseBoolean(System.getProperty("quinzical.load.wire", "true"));
+
+        String url = System.getProperty("quinzical.server");
+        LobbyServer server = null;
+        if (url == null) {
+            server = LobbyServer.start(0);
+            url = server.getUrl();
+        }
+
+        LoadGenerator generator = new LoadGenerator();
+        int lobbies = Math.max(1, clients / lobbySize);
+        System.out.printf("Playing %d games in each of %d lobbies of %d, with %d questions each, against %s in %s%n",
+                games, lobbies, lobbySize, questions, url, wire ? "the wire format" : "JSON");
+
+        boolean finished = generator.run(url, lobbies, lobbySize, questions, games, thinkMillis, rampMillis,
+                timeoutSeconds, wire);
+        generator.printReport(finished);
+
+        if (server != null) {
+            server.stop();
+        }
+        System.exit(finished && generator.errors.get() == 0 ? 0 : 1);
+    }
+
+    /**
+     * Play the games
+     *
+     * @return whether every lobby finished before the timeout
+     */
+    private boolean run(String url, int lobbies, int lobbySize, int questions, int games, long thinkMillis,
+            long rampMillis, long timeoutSeconds, boolean wire) throws URISyntaxException, InterruptedException {
+        // Every client holds a poll open and sometimes posts, so allow far more
+        // requests at once than OkHttp's default of 5 per host
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(lobbies * lobbySize * 2 + 16);
+        dispatcher.setMaxRequestsPerHost(lobbies * lobbySize * 2 + 16);
+        OkHttpClient http = new OkHttpClient.Builder().dispatcher(dispatcher).readTimeout(30, TimeUnit.SECONDS)
+                .build();
+
+        IO.Options options = new IO.Options();
+        options.forceNew = true;
+        options.reconnection = false;
+        options.transports = new String[] { Polling.NAME };
+        options.callFactory = http;
+        options.webSocketFactory = http;
+        options.query = "token=load-test";
+
+        List<SimulatedGame> simulated = new ArrayList<SimulatedGame>();
+        for (int i = 0; i < lobbies; i++) {
+            simulated.add(new SimulatedGame(this, url, options, "load" + i, lobbySize, questions, games, thinkMillis,
+                    wire));
+        }
+
+        lobbiesLeft = new CountDownLatch(lobbies);
+        long start = System.nanoTime();
+        for (int i = 0; i < lobbies; i++) {
+            SimulatedGame game = simulated.get(i);
+            scheduler.schedule(game::start, rampMillis * i / lobbies, TimeUnit.MILLISECONDS);
+        }
+        boolean finished = lobbiesLeft.await(timeoutSeconds, TimeUnit.SECONDS);
+        latency("total").recordSince(start);
+
+        return finished;
+    }
+
+    /**
+     * Print the latencies, and anything which went wrong
+     *
+     * @param finished whether every lobby finished before the timeout
+     */
+    private void printReport(boolean finished) {
+        double seconds = latency("total").getPercentileMillis(100) / 1000;
+        System.out.printf("%s in %.1f s: %d games, %d events received (%.0f/s), %d errors, %d lobbies unfinished%n",
+                finished ? "Finished" : "Timed out", seconds, games.get(), received.get(), received.get() / seconds,
+                errors.get(), lobbiesLeft.getCount());
+        System.out.println();
+        System.out.printf("%-16s %8s %9s %9s %9s %9s%n", "latency (ms)", "count", "p50", "p90", "p99", "max");
+        for (String name : REPORTED) {
+            System.out.println(latency(name));
+        }
+    }
+
+    /**
+     * @param name the name of a round trip
+     * @return the latencies recorded for the round trip
+     */
+    Latency latency(String name) {
+        return latencies.computeIfAbsent(name, Latency::new);
+    }
+
+    /**
+     * @return the scheduler simulated members think on
+     */
+    ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Count an event received by a simulated member
+     */
+    void received() {
+        received.incrementAndGet();
+    }
+
+    /**
+     * Report something which went wrong
+     *
+     * @param message what went wrong
+     */
+    void error(String message) {
+        if (errors.incrementAndGet() <= MAX_ERRORS_SHOWN) {
+            System.err.println(message);
+        }
+    }
+
+    /**
+     * Count a game played to the end
+     */
+    void gameFinished() {
+        games.incrementAndGet();
+    }
+
+    /**
+     * Count a lobby which has played all of its games
+     */
+    void lobbyFinished() {
+        lobbiesLeft.countDown();
+    }
+}
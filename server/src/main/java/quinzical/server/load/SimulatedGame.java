@@ -0,0 +1,275 @@
+package quinzical.server.load;
+
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import io.socket.client.IO;
+import io.socket.client.Socket;
+import quinzical.util.CategoryHash;
+
+/**
+ * One lobby of simulated members playing full games, the way the app plays
+ * them: the host creates the lobby, the others join, everyone answers each
+ * question after thinking for a while, and the host moves on to the next
+ * question as soon as the round is over. After each game the host closes the
+ * lobby and opens a new one for the next game. Like the app, the host creates
+ * each lobby with the hash of its questions, and only sends the questions if
+ * the server asks for them.
+ *
+ * Every listener runs on the socket.io client's event thread, so the state of
+ * the game is only touched from that thread.
+ *
+ * @author Alexander Nicholson
+ */
+class SimulatedGame {
+
+    /**
+     * Handles an event sent to a simulated member
+     */
+    @FunctionalInterface
+    private interface Handler {
+        void handle(JSONObject data) throws JSONException;
+    }
+
+    private final LoadGenerator generator;
+    private final int questions;
+    private final long thinkMillis;
+
+    private final SimulatedMember host;
+    private final List<SimulatedMember> guests = new ArrayList<SimulatedMember>();
+
+    private volatile int code;
+    private int gamesLeft;
+    private int joined;
+    private int gameOvers;
+    private boolean guestsConnected;
+    private boolean finished;
+
+    private long gameStartedAt;
+    private volatile long questionSentAt;
+
+    /**
+     * Constructor
+     *
+     * @param generator   the load generator to report to
+     * @param url         the address of the server
+     * @param options     the socket options
+     * @param name        the name of the lobby, which the usernames start with
+     * @param size        the number of members, including the host
+     * @param questions   the number of questions in each game
+     * @param games       the number of games to play
+     * @param thinkMillis the longest a member takes to answer
+     * @param wire        whether the members offer the binary wire format
+     * @throws URISyntaxException if the address of the server is invalid
+     */
+    SimulatedGame(LoadGenerator generator, String url, IO.Options options, String name, int size, int questions,
+            int games, long thinkMillis, boolean wire) throws URISyntaxException {
+        this.generator = generator;
+        this.questions = questions;
+        this.gamesLeft = games;
+        this.thinkMillis = thinkMillis;
+
+        host = new SimulatedMember(url, options, name + "-host", true, wire);
+        for (int i = 1; i < size; i++) {
+            guests.add(new SimulatedMember(url, options, name + "-" + i, false, wire));
+        }
+    }
+
+    /**
+     * Connect the host and start the first game
+     */
+    void start() {
+        List<SimulatedMember> members = new ArrayList<SimulatedMember>(guests);
+        members.add(host);
+        for (SimulatedMember member : members) {
+            on(member, Socket.EVENT_CONNECT_ERROR, data -> generator.error(member.getUsername() + " could not connect"));
+            on(member, Socket.EVENT_DISCONNECT, data -> {
+                if (!finished) {
+                    generator.error(member.getUsername() + " was disconnected");
+                }
+            });
+            on(member, "NEXT_QUESTION", data -> answer(member));
+            on(member, "SCORE_UPDATE", data -> {
+                if (member.getUsername().equals(data.getString("username"))) {
+                    generator.latency("result").recordSince(member.getSentAt());
+                }
+            });
+            on(member, "GAME_OVER", data -> {
+                // Each member gets their last score update before the game ends, so
+                // wait for all of them to have it before closing the lobby
+                if (++gameOvers < guests.size() + 1) {
+                    return;
+                }
+                gameOvers = 0;
+                generator.latency("game").recordSince(gameStartedAt);
+                generator.gameFinished();
+
+                JSONObject leave = new JSONObject();
+                leave.put("code", code);
+                host.emit("LEAVE_LOBBY", leave);
+                if (--gamesLeft > 0) {
+                    createLobby();
+                } else {
+                    finish();
+                }
+            });
+        }
+
+        on(host, Socket.EVENT_CONNECT, data -> {
+            generator.latency("connect").recordSince(host.getSentAt());
+            createLobby();
+        });
+        on(host, "CATEGORIES_NEEDED", data -> {
+            JSONObject category = new JSONObject();
+            category.put("hash", CategoryHash.of(questionSet()));
+            category.put("questions", questionSet());
+            JSONObject json = new JSONObject();
+            json.put("categories", new JSONArray().put(category));
+            host.emit("CATEGORIES", json);
+        });
+        on(host, "INVALID_LOBBY", data -> generator.error(host.getUsername() + " could not create a lobby"));
+        on(host, "LOBBY_ID", data -> {
+            generator.latency("create").recordSince(host.getSentAt());
+            code = data.getInt("code");
+            joined = 0;
+            for (SimulatedMember guest : guests) {
+                if (guestsConnected) {
+                    join(guest);
+                } else {
+                    guest.markSent();
+                    guest.connect();
+                }
+            }
+            guestsConnected = true;
+        });
+        on(host, "LOBBY_DELTA", data -> {
+            if ("ADDED".equals(data.getString("op")) && ++joined == guests.size()) {
+                gameStartedAt = System.nanoTime();
+                nextQuestion();
+            }
+        });
+        on(host, "ROUND_OVER", data -> {
+            generator.latency("round").recordSince(questionSentAt);
+            nextQuestion();
+        });
+
+        for (SimulatedMember guest : guests) {
+            on(guest, Socket.EVENT_CONNECT, data -> {
+                generator.latency("connect").recordSince(guest.getSentAt());
+                join(guest);
+            });
+            on(guest, "LOBBY_JOINED", data -> generator.latency("join").recordSince(guest.getSentAt()));
+            on(guest, "INVALID_LOBBY", data -> generator.error(guest.getUsername() + " could not join " + code));
+        }
+
+        host.markSent();
+        host.connect();
+    }
+
+    /**
+     * Open a lobby with the set of questions, by its hash
+     */
+    private void createLobby() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("categories", new JSONArray().put(CategoryHash.of(questionSet())));
+        json.put("user", host.toJSONObject());
+        host.markSent();
+        host.emit("CREATE_LOBBY", json);
+    }
+
+    /**
+     * @return the questions of each game, which are the same in every game and
+     *         every lobby
+     */
+    private JSONArray questionSet() throws JSONException {
+        JSONArray set = new JSONArray();
+        for (int i = 0; i < questions; i++) {
+            JSONObject question = new JSONObject();
+            question.put("id", UUID.nameUUIDFromBytes(("question " + i).getBytes(StandardCharsets.UTF_8)).toString());
+            question.put("difficulty", (i % 5 + 1) * 100);
+            question.put("question", "This city is the capital of New Zealand, and question " + i + " of the game");
+            question.put("questionPrefix", "What is");
+            question.put("answer", "Wellington");
+            set.put(question);
+        }
+        return set;
+    }
+
+    private void join(SimulatedMember guest) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("code", code);
+        json.put("user", guest.toJSONObject());
+        guest.markSent();
+        guest.emit("JOIN_LOBBY", json);
+    }
+
+    private void nextQuestion() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("code", code);
+        questionSentAt = System.nanoTime();
+        host.emit("NEXT_QUESTION", json);
+    }
+
+    /**
+     * Answer the current question after thinking for a while, getting it right
+     * most of the time
+     */
+    private void answer(SimulatedMember member) {
+        generator.latency("question").recordSince(questionSentAt);
+
+        long think = thinkMillis <= 0 ? 0 : ThreadLocalRandom.current().nextLong(thinkMillis + 1);
+        generator.getScheduler().schedule(() -> {
+            boolean correct = ThreadLocalRandom.current().nextInt(4) != 0;
+            if (correct) {
+                member.addScore(100);
+            }
+            try {
+                JSONObject json = new JSONObject();
+                json.put("code", code);
+                json.put("score", member.getScore());
+                json.put("status", correct ? "CORRECT" : "INCORRECT");
+                json.put("answer", correct ? "Wellington" : "Auckland");
+                member.markSent();
+                member.emit("RESULT", json);
+            } catch (JSONException e) {
+                generator.error(e.toString());
+            }
+        }, think, TimeUnit.MILLISECONDS);
+    }
+
+    private void finish() {
+        finished = true;
+        host.disconnect();
+        for (SimulatedMember guest : guests) {
+            guest.disconnect();
+        }
+        generator.lobbyFinished();
+    }
+
+    /**
+     * Listen for an event sent to a member, counting it and reporting any error
+     */
+    private void on(SimulatedMember member, String type, Handler handler) {
+        member.on(type, args -> {
+            generator.received();
+            try {
+                if (args.length > 0 && args[0] instanceof byte[]) {
+                    throw new JSONException("binary message before the wire format was agreed");
+                }
+                handler.handle(args.length > 0 && args[0] instanceof JSONObject ? (JSONObject) args[0]
+                        : new JSONObject());
+            } catch (JSONException | RuntimeException e) {
+                generator.error(member.getUsername() + " " + type + ": " + e);
+            }
+        });
+    }
+}
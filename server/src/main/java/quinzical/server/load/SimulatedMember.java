@@ -0,0 +1,188 @@
+package quinzical.server.load;
+
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import io.socket.client.IO;
+import io.socket.client.Socket;
+import io.socket.emitter.Emitter;
+import io.socket.thread.EventThread;
+import quinzical.util.WireCodec;
+
+/**
+ * A simulated player: a socket.io connection to the server, and the member it
+ * plays as, sent as the same JSON the app sends for a Member. Like the app, it
+ * can offer the server the binary wire format when it connects, and listeners
+ * see the same JSON either way.
+ *
+ * @author Alexander Nicholson
+ */
+public class SimulatedMember {
+
+    /**
+     * The cosmetics the simulated members wear, in the order the wire format
+     * numbers them
+     */
+    private static final List<String> COSMETICS = Arrays.asList("MUSTACHE", "BEANIE", "SUNGLASSES");
+
+    private final String username;
+    private final boolean host;
+    private final Socket socket;
+
+    private volatile int score;
+
+    /**
+     * Encodes the member's messages once the server has agreed to the wire
+     * format, or null while they are sent as JSON
+     */
+    private volatile WireCodec codec;
+
+    /**
+     * When the member's last request was sent, to time the reply
+     */
+    private volatile long sentAt;
+
+    /**
+     * Constructor, which does not connect yet
+     *
+     * @param url      the address of the server
+     * @param options  the socket options
+     * @param username the username to play as
+     * @param host     whether the member hosts the lobby
+     * @param wire     whether to offer the server the binary wire format
+     * @throws URISyntaxException if the address of the server is invalid
+     */
+    public SimulatedMember(String url, IO.Options options, String username, boolean host, boolean wire)
+            throws URISyntaxException {
+        this.username = username;
+        this.host = host;
+        this.socket = IO.socket(url, options);
+
+        if (wire) {
+            // added first, so the offer goes before anything sent on connecting
+            socket.on(Socket.EVENT_CONNECT, args -> {
+                try {
+                    JSONObject offer = new JSONObject();
+                    offer.put("version", WireCodec.VERSION);
+                    offer.put("cosmetics", new JSONArray(COSMETICS));
+                    socket.emit("WIRE", offer);
+                } catch (JSONException e) {
+                    e.printStackTrace();
+                }
+            });
+            socket.on("WIRE", args -> codec = new WireCodec(COSMETICS));
+        }
+    }
+
+    /**
+     * @return the username the member plays as
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * @return the member's score
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Add to the member's score
+     *
+     * @param value the amount to add
+     */
+    public void addScore(int value) {
+        score += value;
+    }
+
+    /**
+     * Record that a request has just been sent, to time the reply
+     */
+    public void markSent() {
+        sentAt = System.nanoTime();
+    }
+
+    /**
+     * @return when the member's last request was sent, from System.nanoTime()
+     */
+    public long getSentAt() {
+        return sentAt;
+    }
+
+    /**
+     * Listen for an event. Listeners run on the socket.io client's event thread,
+     * which every simulated member shares.
+     *
+     * @param type     the type of event
+     * @param listener the listener
+     */
+    public void on(String type, Emitter.Listener listener) {
+        socket.on(type, args -> {
+            if (args.length > 0 && args[0] instanceof byte[] && codec != null) {
+                Object[] decoded = Arrays.copyOf(args, args.length);
+                try {
+                    decoded[0] = codec.decode((byte[]) args[0]);
+                } catch (JSONException e) {
+                    decoded[0] = null;
+                }
+                args = decoded;
+            }
+            listener.call(args);
+        });
+    }
+
+    /**
+     * Send an event
+     *
+     * @param type the type of event
+     * @param data the data of the event
+     */
+    public void emit(String type, JSONObject data) {
+        // encoded on the event thread, in the order the messages are sent
+        EventThread.exec(() -> {
+            WireCodec current = codec;
+            socket.emit(type, current == null ? data : current.encode(data));
+        });
+    }
+
+    /**
+     * Connect to the server
+     */
+    public void connect() {
+        socket.connect();
+    }
+
+    /**
+     * Disconnect from the server
+     */
+    public void disconnect() {
+        socket.disconnect();
+    }
+
+    /**
+     * @return the member, as the JSON the app sends for a Member
+     * @throws JSONException if the member cannot be encoded
+     */
+    public JSONObject toJSONObject() throws JSONException {
+        JSONObject avatar = new JSONObject();
+        avatar.put("hat", "BEANIE");
+        avatar.put("accessory", "MUSTACHE");
+        avatar.put("eyes", "SUNGLASSES");
+
+        JSONObject obj = new JSONObject();
+        obj.put("avatar", avatar);
+        obj.put("score", score);
+        obj.put("isHost", host);
+        obj.put("username", username);
+        obj.put("status", "ANSWERING");
+        obj.put("answer", "");
+        return obj;
+    }
+}
@@ -0,0 +1,246 @@
+package quinzical.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.xmlbeans.impl.common.Levenshtein;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import quinzical.model.Answer;
+import quinzical.model.Category;
+import quinzical.model.Question;
+
+/**
+ * Compares the speed of AnswerMatcher with the way answers used to be checked:
+ * split the accepted answers on every check, lower case them and the input and
+ * strip their whitespace with a regex, and take the full Levenshtein distance
+ * of each pair.
+ *
+ * The inputs are every answer in the bank typed exactly, with one to four
+ * random edits, with its case and spacing changed, and the answer of another
+ * question. Each invocation checks the next input. Before timing, every input
+ * is checked against a plain Levenshtein reference, and the benchmark fails if
+ * the matcher disagrees with it.
+ *
+ * Run with {@code ./gradlew jmh}.
+ *
+ * @author Alexander Nicholson
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnswerBenchmark {
+
+    private static final int EDITS = 4;
+
+    /**
+     * The directory of text categories to take the answers from, relative to the
+     * project
+     */
+    @Param("gamedata/categories")
+    public String categories;
+
+    private String[] answers;
+
+    private String[] inputs;
+
+    // The question each input is for
+    private int[] questionOf;
+
+    private AnswerMatcher[] plainMatchers;
+
+    private AnswerMatcher[] defaultMatchers;
+
+    private int next;
+
+    /**
+     * Load the answers, make up the inputs and check the matcher against the
+     * reference
+     *
+     * @throws IOException if the categories could not be compiled
+     */
+    @Setup
+    public void setUp() throws IOException {
+        File bank = File.createTempFile("quinzical", ".qzb");
+        bank.deleteOnExit();
+        QuestionBankCompiler.compile(new File(categories), bank);
+        List<String> answerList = new ArrayList<String>();
+        for (Category category : CompiledQuestionBank.load(bank, false).values()) {
+            for (Question question : category.getQuestions()) {
+                answerList.add(question.getAnswer());
+            }
+        }
+        answers = answerList.toArray(new String[0]);
+
+        // what the user types for each question, and which question it is for
+        Random rand = new Random(42);
+        List<String> inputList = new ArrayList<String>();
+        List<Integer> questionList = new ArrayList<Integer>();
+        for (int q = 0; q < answers.length; q++) {
+            String[] alternatives = answers[q].split("/");
+            String answer = alternatives[rand.nextInt(alternatives.length)].trim();
+            List<String> typed = new ArrayList<String>();
+            typed.add(answer);
+            for (int edits = 1; edits <= EDITS; edits++) {
+                typed.add(edit(answer, edits, rand));
+            }
+            typed.add(respace(answer, rand));
+            typed.add(answers[rand.nextInt(answers.length)]);
+            for (String input : typed) {
+                inputList.add(input);
+                questionList.add(q);
+            }
+        }
+        inputs = inputList.toArray(new String[0]);
+        questionOf = questionList.stream().mapToInt(Integer::intValue).toArray();
+
+        // The old path only folded case and whitespace, so compare against a
+        // matcher which does the same as well as the default one
+        AnswerNormaliser plain = new AnswerNormaliser(AnswerNormaliser.FOLD_CASE | AnswerNormaliser.REMOVE_WHITESPACE);
+        plainMatchers = new AnswerMatcher[answers.length];
+        defaultMatchers = new AnswerMatcher[answers.length];
+        for (int q = 0; q < answers.length; q++) {
+            plainMatchers[q] = new AnswerMatcher(answers[q], plain);
+            defaultMatchers[q] = new AnswerMatcher(answers[q]);
+        }
+
+        int mismatches = 0;
+        for (int i = 0; i < inputs.length; i++) {
+            int q = questionOf[i];
+            if (plainMatchers[q].match(inputs[i]) != reference(answers[q], inputs[i], plain)) {
+                mismatches++;
+            }
+        }
+        if (mismatches > 0) {
+            throw new IllegalStateException(mismatches + " of " + inputs.length
+                    + " inputs were judged differently from the Levenshtein reference");
+        }
+    }
+
+    /**
+     * Split, regex and Levenshtein, as answers used to be checked
+     */
+    @Benchmark
+    public Answer legacy() {
+        int i = advance();
+        return legacy(answers[questionOf[i]], inputs[i]);
+    }
+
+    /**
+     * AnswerMatcher, folding only case and whitespace like the old path
+     */
+    @Benchmark
+    public Answer matcherPlain() {
+        int i = advance();
+        return plainMatchers[questionOf[i]].match(inputs[i]);
+    }
+
+    /**
+     * AnswerMatcher with the default normaliser, as the game uses it
+     */
+    @Benchmark
+    public Answer matcherDefault() {
+        int i = advance();
+        return defaultMatchers[questionOf[i]].match(inputs[i]);
+    }
+
+    /**
+     * @return the index of the next input to check
+     */
+    private int advance() {
+        int i = next;
+        next = i + 1 == inputs.length ? 0 : i + 1;
+        return i;
+    }
+
+    /**
+     * The way Question.checkAnswer used to check an answer
+     */
+    private static Answer legacy(String answer, String input) {
+        for (String alternative : answer.split("/")) {
+            int distance = Levenshtein.distance(sanitise(input), sanitise(alternative));
+            if (distance == 0) {
+                return Answer.CORRECT;
+            } else if (distance < 3) {
+                return Answer.TYPO;
+            }
+        }
+        return Answer.INCORRECT;
+    }
+
+    private static String sanitise(String str) {
+        return str.toLowerCase().replaceAll("\\s+", "");
+    }
+
+    /**
+     * What AnswerMatcher should say: correct if the input is any accepted answer,
+     * a typo if it is within the typo distance of one, and otherwise incorrect
+     */
+    private static Answer reference(String answer, String input, AnswerNormaliser normaliser) {
+        String normalised = new String(normaliser.normalise(input));
+        int best = Integer.MAX_VALUE;
+        for (String alternative : answer.split("/")) {
+            best = Math.min(best, Levenshtein.distance(normalised, new String(normaliser.normalise(alternative))));
+        }
+        if (best == 0) {
+            return Answer.CORRECT;
+        }
+        return best <= AnswerMatcher.MAX_TYPO_DISTANCE ? Answer.TYPO : Answer.INCORRECT;
+    }
+
+    /**
+     * @return the text with a number of random insertions, deletions and
+     *         substitutions
+     */
+    private static String edit(String text, int edits, Random rand) {
+        StringBuilder edited = new StringBuilder(text);
+        for (int i = 0; i < edits; i++) {
+            int at = rand.nextInt(edited.length() + 1);
+            char c = (char) ('a' + rand.nextInt(26));
+            int kind = edited.length() == 0 ? 0 : rand.nextInt(3);
+            if (kind == 0) {
+                edited.insert(at, c);
+            } else if (kind == 1) {
+                edited.deleteCharAt(Math.min(at, edited.length() - 1));
+            } else {
+                edited.setCharAt(Math.min(at, edited.length() - 1), c);
+            }
+        }
+        return edited.toString();
+    }
+
+    /**
+     * @return the text with the case of random letters flipped and spaces added
+     *         and removed
+     */
+    private static String respace(String text, Random rand) {
+        StringBuilder respaced = new StringBuilder();
+        for (char c : text.toCharArray()) {
+            if (c == ' ' && rand.nextBoolean()) {
+                continue;
+            }
+            respaced.append(rand.nextBoolean() ? Character.toUpperCase(c) : c);
+            if (rand.nextInt(8) == 0) {
+                respaced.append(' ');
+            }
+        }
+        return respaced.toString();
+    }
+}
@@ -0,0 +1,142 @@
+package quinzical.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import quinzical.model.User;
+
+/**
+ * Compares the size and speed of the binary state format (see StateCodec) with
+ * the Java serialisation it replaced, for a user with a large map of
+ * unattempted questions: by default 50 categories of 1000 questions each.
+ *
+ * The user is made with a new User's defaults and the generated map, without
+ * reading or writing the player's saved user. Each encoding is decoded again
+ * and checked to hold the same unattempted questions.
+ *
+ * Run with {@code ./gradlew stateBenchmark}, or
+ * {@code StateBenchmark [categories] [questions per category] [iterations]}.
+ *
+ * @author Alexander Nicholson
+ */
+public class StateBenchmark {
+
+    /**
+     * Encodes a user, standing in for Java serialisation or StateCodec
+     */
+    @FunctionalInterface
+    private interface Encoder {
+        byte[] encode(User user) throws Exception;
+    }
+
+    /**
+     * Decodes a user encoded by an Encoder
+     */
+    @FunctionalInterface
+    private interface Decoder {
+        User decode(byte[] bytes) throws Exception;
+    }
+
+    /**
+     * Run the benchmark
+     *
+     * @param args the number of categories, the number of questions in each, and
+     *             the number of times to encode and decode the user
+     */
+    public static void main(String[] args) throws Exception {
+        int categories = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int questions = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+
+        Map<String, Set<String>> unattempted = new HashMap<String, Set<String>>();
+        for (int c = 0; c < categories; c++) {
+            Set<String> ids = new HashSet<String>();
+            for (int q = 0; q < questions; q++) {
+                ids.add(UUID.randomUUID().toString());
+            }
+            unattempted.put("Category " + c, ids);
+        }
+        User user = newUser(unattempted);
+
+        System.out.printf("%d categories of %d unattempted questions, %d iterations%n%n", categories, questions,
+                iterations);
+        System.out.printf("%-20s %11s %11s %11s%n", "format", "bytes", "encode ms", "decode ms");
+
+        report("java serialisation", user, unattempted, iterations, u -> {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(buffer)) {
+                out.writeObject(u);
+            }
+            return buffer.toByteArray();
+        }, bytes -> {
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                return (User) in.readObject();
+            }
+        });
+        report("StateCodec", user, unattempted, iterations, u -> StateCodec.encode(State.USER, u),
+                bytes -> StateCodec.decode(State.USER, bytes));
+    }
+
+    /**
+     * Time encoding and decoding the user, and print the size and the average
+     * times
+     */
+    private static void report(String name, User user, Map<String, Set<String>> unattempted, int iterations,
+            Encoder encoder, Decoder decoder) throws Exception {
+        byte[] bytes = encoder.encode(user);
+        if (!unattempted.equals(unattemptedOf(decoder.decode(bytes)))) {
+            throw new IllegalStateException(name + " did not decode to the user it encoded");
+        }
+
+        // warm up, then time
+        for (int i = 0; i < iterations; i++) {
+            decoder.decode(encoder.encode(user));
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            bytes = encoder.encode(user);
+        }
+        double encodeMillis = (System.nanoTime() - start) / 1e6 / iterations;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            decoder.decode(bytes);
+        }
+        double decodeMillis = (System.nanoTime() - start) / 1e6 / iterations;
+
+        System.out.printf("%-20s %11d %11.2f %11.2f%n", name, bytes.length, encodeMillis, decodeMillis);
+    }
+
+    /**
+     * @return a user with the defaults of a new user and the given unattempted
+     *         questions, which is not saved
+     */
+    private static User newUser(Map<String, Set<String>> unattempted) throws ReflectiveOperationException {
+        Constructor<User> constructor = User.class.getDeclaredConstructor();
+        constructor.setAccessible(true);
+        User user = constructor.newInstance();
+        unattemptedField().set(user, new HashMap<String, Set<String>>(unattempted));
+        return user;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Set<String>> unattemptedOf(User user) throws ReflectiveOperationException {
+        return (Map<String, Set<String>>) unattemptedField().get(user);
+    }
+
+    private static Field unattemptedField() throws NoSuchFieldException {
+        Field field = User.class.getDeclaredField("unattemptedQuestions");
+        field.setAccessible(true);
+        return field;
+    }
+}
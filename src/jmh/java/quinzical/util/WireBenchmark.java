@@ -0,0 +1,174 @@
+package quinzical.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import quinzical.avatar.Cosmetic;
+import quinzical.model.Avatar;
+import quinzical.model.Category;
+import quinzical.model.Member;
+import quinzical.model.Question;
+
+/**
+ * Compares the size and speed of the binary wire format with JSON, for the
+ * messages of a lobby of five categories: creating the lobby, the first time,
+ * again on the same connection, and by the hashes of its categories, and a
+ * question sent to five members.
+ *
+ * Run with {@code ./gradlew wireBenchmark}, or
+ * {@code WireBenchmark <category directory> [iterations]}.
+ *
+ * @author Alexander Nicholson
+ */
+public class WireBenchmark {
+
+    private static final int CATEGORIES = 5;
+    private static final int MEMBERS = 5;
+
+    /**
+     * Encodes a message, standing in for JSON or the wire format
+     */
+    @FunctionalInterface
+    private interface Encoder {
+        Object encode(JSONObject data) throws JSONException;
+    }
+
+    /**
+     * Decodes a message encoded by an Encoder
+     */
+    @FunctionalInterface
+    private interface Decoder {
+        JSONObject decode(Object encoded) throws JSONException;
+    }
+
+    /**
+     * Run the benchmark
+     *
+     * @param args the category directory, and the number of times to encode and
+     *             decode each message
+     */
+    public static void main(String[] args) throws IOException, JSONException {
+        if (args.length < 1) {
+            System.err.println("Usage: WireBenchmark <category directory> [iterations]");
+            System.exit(1);
+        }
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+
+        File bank = File.createTempFile("quinzical", ".qzb");
+        bank.deleteOnExit();
+        QuestionBankCompiler.compile(new File(args[0]), bank);
+        List<Category> categories = new ArrayList<Category>(CompiledQuestionBank.load(bank, false).values());
+        categories.sort(Comparator.comparing(Category::getName));
+        categories = categories.subList(0, Math.min(CATEGORIES, categories.size()));
+
+        // the messages as CategorySelectMultiplayer and the server build them
+        Avatar avatar = new Avatar(Cosmetic.FROG, Cosmetic.MUSTACHE, Cosmetic.SUNGLASSES);
+        JSONArray questions = new JSONArray();
+        for (Category category : categories) {
+            for (Question question : category.getQuestions()) {
+                questions.put(question.toJSONObject());
+            }
+        }
+        JSONObject create = new JSONObject();
+        create.put("questions", questions);
+        create.put("user", new Member(avatar, 0, "host", true).toJSONObject());
+
+        JSONArray hashes = new JSONArray();
+        for (Category category : categories) {
+            hashes.put(category.getHash());
+        }
+        JSONObject createByHash = new JSONObject();
+        createByHash.put("categories", hashes);
+        createByHash.put("user", new Member(avatar, 0, "host", true).toJSONObject());
+
+        JSONArray members = new JSONArray();
+        for (int i = 0; i < MEMBERS; i++) {
+            members.put(new Member(avatar, i * 100, "player" + i, i == 0).toJSONObject());
+        }
+        JSONObject next = new JSONObject();
+        next.put("question", questions.get(0));
+        next.put("members", members);
+
+        List<String> cosmetics = new ArrayList<String>();
+        for (Cosmetic cosmetic : Cosmetic.values()) {
+            cosmetics.add(cosmetic.name());
+        }
+
+        System.out.printf("%d categories, %d questions, %d iterations%n%n", categories.size(), questions.length(),
+                iterations);
+        System.out.printf("%-36s %9s %11s %11s%n", "message", "bytes", "encode us", "decode us");
+
+        Encoder json = data -> data.toString();
+        Decoder fromJSON = encoded -> new JSONObject((String) encoded);
+        report("CREATE_LOBBY json", create, iterations, json, fromJSON);
+        report("CREATE_LOBBY wire", create, iterations, data -> new WireCodec(cosmetics).encode(data),
+                encoded -> new WireCodec(cosmetics).decode((byte[]) encoded));
+
+        // both ends already have the questions from an earlier lobby
+        WireCodec sender = new WireCodec(cosmetics);
+        WireCodec receiver = new WireCodec(cosmetics);
+        receiver.decode(sender.encode(create));
+        report("CREATE_LOBBY wire, questions known", create, iterations, sender::encode,
+                encoded -> receiver.decode((byte[]) encoded));
+
+        report("CREATE_LOBBY by hash json", createByHash, iterations, json, fromJSON);
+        report("CREATE_LOBBY by hash wire", createByHash, iterations, data -> new WireCodec(cosmetics).encode(data),
+                encoded -> new WireCodec(cosmetics).decode((byte[]) encoded));
+
+        report("NEXT_QUESTION json", next, iterations, json, fromJSON);
+        report("NEXT_QUESTION wire", next, iterations, data -> new WireCodec(cosmetics).encode(data),
+                encoded -> new WireCodec(cosmetics).decode((byte[]) encoded));
+    }
+
+    /**
+     * Time encoding and decoding a message, and print its size and the average
+     * times
+     */
+    private static void report(String name, JSONObject data, int iterations, Encoder encoder, Decoder decoder)
+            throws JSONException {
+        Object encoded = encoder.encode(data);
+        int bytes = encoded instanceof byte[] ? ((byte[]) encoded).length
+                : encoded.toString().getBytes(StandardCharsets.UTF_8).length;
+
+        // warm up, then time
+        for (int i = 0; i < iterations; i++) {
+            decoder.decode(encoder.encode(data));
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            encoded = encoder.encode(data);
+        }
+        double encodeMicros = (System.nanoTime() - start) / 1e3 / iterations;
+
+        start = System.nanoTime();
+        JSONObject decoded = null;
+        for (int i = 0; i < iterations; i++) {
+            decoded = decoder.decode(encoded);
+        }
+        double decodeMicros = (System.nanoTime() - start) / 1e3 / iterations;
+
+        if (!Arrays.equals(sorted(decoded), sorted(data))) {
+            throw new IllegalStateException(name + " did not decode to the message it encoded");
+        }
+        System.out.printf("%-36s %9d %11.1f %11.1f%n", name, bytes, encodeMicros, decodeMicros);
+    }
+
+    /**
+     * @return the characters of the message's JSON, sorted, to compare two
+     *         messages whose keys may be in a different order
+     */
+    private static char[] sorted(JSONObject data) {
+        char[] chars = data.toString().toCharArray();
+        Arrays.sort(chars);
+        return chars;
+    }
+}
@@ -1,8 +1,5 @@
 package quinzical;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.scene.Scene;
@@ -16,8 +13,12 @@ import quinzical.controller.component.Component;
 import quinzical.model.MultiplayerGame;
 import quinzical.model.User;
 import quinzical.util.Connect;
+import quinzical.util.ImageLoader;
+import quinzical.util.Metrics;
 import quinzical.util.Modal;
+import quinzical.util.PersistenceService;
 import quinzical.util.Router;
+import quinzical.util.ViewCache;
 import quinzical.util.ViewLoader;
 
 /**
@@ -65,6 +66,14 @@ public class App extends Application {
         Router.show(View.MAIN_MENU);
         s.show();
 
+        // Load the views most likely to be visited from the main menu while the
+        // user is looking at it
+        ViewCache.prewarm(View.GAME_BOARD, View.TROPHY_CASE, View.LEADERBOARD, View.LOBBY);
+        ImageLoader.preload();
+
+        // Once the first frame has been shown
+        Platform.runLater(() -> Metrics.printReport("startup"));
+
         scene.getWindow().addEventFilter(WindowEvent.WINDOW_CLOSE_REQUEST, e -> {
 
             // When user wants to quit, save their preferred window size
@@ -81,23 +90,23 @@ public class App extends Application {
                             }
                         });
             } else if (MultiplayerGame.getInstance() != null) {
-                Integer code = MultiplayerGame.getInstance().getCode();
-                if (code != null) {
-                    Connect connect = Connect.getInstance();
-                    JSONObject obj = new JSONObject();
-                    try {
-                        obj.put("code", MultiplayerGame.getInstance().getCode());
-                    } catch (JSONException err) {
-                        err.printStackTrace();
-                    }
-                    connect.emit("LEAVE_LOBBY", obj);
-                }
+                Connect.getInstance().leaveLobby();
             }
             Platform.exit();
         });
 
     }
 
+    /**
+     * Called by javaFX when the application exits. Writes any state that is still
+     * waiting to be saved.
+     */
+    @Override
+    public void stop() {
+        PersistenceService.getInstance().flush();
+        Metrics.printReport("exit");
+    }
+
     public static void main(String[] args) {
         launch(args);
     }
@@ -0,0 +1,22 @@
+package quinzical.controller;
+
+/**
+ * A controller whose view only needs to be loaded once. The view is kept by
+ * the ViewCache and the same nodes are shown each time the user navigates to
+ * it.
+ *
+ * The initialize method of a reusable controller runs once, when the fxml is
+ * loaded, and may run on a background thread when the view is loaded ahead of
+ * time. It must only set up the view itself. Anything which depends on the
+ * state of the app belongs in onShow instead.
+ *
+ * @author Alexander Nicholson
+ */
+public interface Reusable {
+
+    /**
+     * Called on the JavaFX thread each time the view is shown, including the
+     * first time, to fill the view from the current state of the app
+     */
+    void onShow();
+}
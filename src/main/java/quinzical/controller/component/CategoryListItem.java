@@ -78,7 +78,7 @@ public class CategoryListItem {
         category = categoryName;
         locked = !User.getInstance().getInternationalUnlocked() && categoryName.getName().equals("International");
         fxName.textProperty().set(category.getName());
-        fxCount.textProperty().set(Integer.toString(category.getQuestions().size()));
+        fxCount.textProperty().set(Integer.toString(category.getQuestionCount()));
 
         // Event listeners
         categories.addListener((ListChangeListener<Category>) (c -> {
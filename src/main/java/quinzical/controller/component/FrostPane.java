@@ -1,25 +1,40 @@
 package quinzical.controller.component;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
 import javafx.beans.property.ReadOnlyDoubleProperty;
 import javafx.scene.Node;
 import javafx.scene.SnapshotParameters;
-import javafx.scene.effect.BoxBlur;
-import javafx.scene.effect.Effect;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.Region;
 import javafx.scene.layout.StackPane;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
+import javafx.scene.transform.Scale;
 import javafx.scene.transform.Translate;
 import javafx.stage.Stage;
+import quinzical.util.Metrics;
+import quinzical.util.Router;
 
 /**
  * Adapted from:
  * https://stackoverflow.com/questions/22622034/frosted-glass-effect-in-javafx
  * This generates a pane which blurs the background behind the specified
  * content.
+ *
+ * The background is captured at a quarter of the window's resolution and
+ * blurred once on a background thread, and the small blurred image is scaled
+ * up to fill the window. A blur hides the detail lost by capturing at a lower
+ * resolution, and it is far cheaper than blurring the whole window live. The
+ * blurred image is reused by the next pane for as long as the same view is
+ * being shown at the same window size.
  * 
  * @author: Alexander Nicholson
  */
@@ -27,20 +42,33 @@ public class FrostPane extends StackPane {
 
     private static final double BLUR_AMOUNT = 50;
 
-    private static final Effect frostEffect = new BoxBlur(BLUR_AMOUNT, BLUR_AMOUNT, 3);
+    private static final double SCALE = 0.25;
+
+    // The same strength of blur as a 3 pass BoxBlur of BLUR_AMOUNT at full size
+    private static final int BLUR_RADIUS = (int) Math.round(BLUR_AMOUNT * SCALE / 2);
+
+    private static final int BLUR_PASSES = 3;
+
+    private static ExecutorService blurrer;
+
+    // The last blurred background, and what it was captured from
+    private static Image cachedFrost;
+
+    private static String cachedKey;
 
     private double setWidth;
 
     private double setHeight;
 
-    private Image frostImage;
-
     private ImageView frost;
 
     private ReadOnlyDoubleProperty vw;
 
     private ReadOnlyDoubleProperty vh;
 
+    // When window size changes the frosted background will need to be repositioned
+    private final InvalidationListener resizeListener = c -> positionFrost();
+
     /**
      * Creates a frost pane of the given height and width. It blurs the content in
      * backgrond and places the content in front of it
@@ -62,31 +90,129 @@ public class FrostPane extends StackPane {
         setWidth = width;
         setHeight = height;
 
-        snapshot(background);
-
         setContent(content);
         renderFrost();
         renderFiller();
 
-        // When window size changes the frosted background will need to be repositioned
-        vw.addListener(c -> {
-            positionFrost();
-        });
+        vw.addListener(resizeListener);
+        vh.addListener(resizeListener);
 
-        vh.addListener(c -> {
-            positionFrost();
-        });
+        snapshot(background);
     }
 
     /**
-     * Generates an image of the node tree contained in background
+     * Stops following the size of the window. Called once the pane has been
+     * closed.
+     */
+    public void dispose() {
+        vw.removeListener(resizeListener);
+        vh.removeListener(resizeListener);
+    }
+
+    /**
+     * Generates a blurred image of the node tree contained in background. The
+     * image is shown once it has been blurred.
      * 
      * @param background the node hierarchy to capture the snapshot from. This
      *                   should be the root of the application to ensure everything
      *                   is captured
      */
     private void snapshot(Node background) {
-        frostImage = background.snapshot(new SnapshotParameters(), null);
+        String key = Router.getNavigationCount() + ":" + System.identityHashCode(background) + ":" + vw.get() + "x"
+                + vh.get();
+        if (key.equals(cachedKey)) {
+            Metrics.increment("frost.cache.hit");
+            frost.setImage(cachedFrost);
+            return;
+        }
+        Metrics.increment("frost.cache.miss");
+
+        // Snapshots can only be taken on the JavaFX thread, so only the capture
+        // happens here
+        long start = System.nanoTime();
+        SnapshotParameters parameters = new SnapshotParameters();
+        parameters.setTransform(new Scale(SCALE, SCALE));
+        WritableImage small = background.snapshot(parameters, null);
+
+        int w = (int) small.getWidth();
+        int h = (int) small.getHeight();
+        int[] pixels = new int[w * h];
+        small.getPixelReader().getPixels(0, 0, w, h, PixelFormat.getIntArgbInstance(), pixels, 0, w);
+        Metrics.recordSince("frost.snapshot", start);
+
+        blurrer().execute(() -> {
+            long blurStart = System.nanoTime();
+            for (int i = 0; i < BLUR_PASSES; i++) {
+                blur(pixels, w, h, 1, w);
+                blur(pixels, h, w, w, 1);
+            }
+            Metrics.recordSince("frost.blur", blurStart);
+
+            Platform.runLater(() -> {
+                WritableImage blurred = new WritableImage(w, h);
+                blurred.getPixelWriter().setPixels(0, 0, w, h, PixelFormat.getIntArgbInstance(), pixels, 0, w);
+                cachedFrost = blurred;
+                cachedKey = key;
+                frost.setImage(blurred);
+            });
+        });
+    }
+
+    /**
+     * Box blur the pixels along one axis, in place
+     * 
+     * @param pixels the ARGB pixels of the image
+     * @param length the number of pixels along the axis
+     * @param lines  the number of lines along the other axis
+     * @param step   the distance between neighbouring pixels along the axis
+     * @param stride the distance between neighbouring lines
+     */
+    private static void blur(int[] pixels, int length, int lines, int step, int stride) {
+        int[] line = new int[length];
+        int window = 2 * BLUR_RADIUS + 1;
+
+        for (int l = 0; l < lines; l++) {
+            int offset = l * stride;
+            for (int i = 0; i < length; i++) {
+                line[i] = pixels[offset + i * step];
+            }
+
+            // Running sums of each channel over the window, with the edge pixels
+            // repeated past the ends of the line
+            int a = 0, r = 0, g = 0, b = 0;
+            for (int i = -BLUR_RADIUS; i <= BLUR_RADIUS; i++) {
+                int p = line[Math.min(Math.max(i, 0), length - 1)];
+                a += p >>> 24;
+                r += (p >> 16) & 0xFF;
+                g += (p >> 8) & 0xFF;
+                b += p & 0xFF;
+            }
+            for (int i = 0; i < length; i++) {
+                pixels[offset + i * step] = ((a / window) << 24) | ((r / window) << 16) | ((g / window) << 8)
+                        | (b / window);
+
+                int out = line[Math.max(i - BLUR_RADIUS, 0)];
+                int in = line[Math.min(i + BLUR_RADIUS + 1, length - 1)];
+                a += (in >>> 24) - (out >>> 24);
+                r += ((in >> 16) & 0xFF) - ((out >> 16) & 0xFF);
+                g += ((in >> 8) & 0xFF) - ((out >> 8) & 0xFF);
+                b += (in & 0xFF) - (out & 0xFF);
+            }
+        }
+    }
+
+    /**
+     * @return the thread backgrounds are blurred on
+     */
+    private static synchronized ExecutorService blurrer() {
+        if (blurrer == null) {
+            blurrer = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "quinzical-frost");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return blurrer;
     }
 
     /**
@@ -104,24 +230,23 @@ public class FrostPane extends StackPane {
     }
 
     /**
-     * Blurs and scales the background image and places in between the filler and
+     * Scales the blurred background image and places in between the filler and
      * the content
      */
     private void renderFrost() {
 
-        frost = new ImageView(frostImage);
+        frost = new ImageView();
+        frost.setSmooth(true);
         frost.fitWidthProperty().bind(vw);
         frost.fitHeightProperty().bind(vh);
 
         Pane frostPane = new Pane(frost);
         frostPane.maxWidth(setWidth);
         frostPane.maxHeight(setHeight);
-        frostPane.setEffect(frostEffect);
 
         getChildren().set(1, frostPane);
         positionFrost();
     }
-
     /**
      * Positions the blurred image so that it aligns with the background behind to
      * give the effect of blurring a portion of the background
@@ -1,6 +1,7 @@
 package quinzical.controller.component;
 
 import javafx.scene.control.Label;
+import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.Region;
@@ -10,6 +11,7 @@ import quinzical.util.ImageLoader;
 import quinzical.util.ViewLoader;
 
 import java.io.IOException;
+import java.util.Objects;
 
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -49,6 +51,11 @@ public class GameBoardItem {
 
     private boolean active;
 
+    // The state of the question when the cell was last bound
+    private boolean shownAnswered;
+
+    private String shownStatus;
+
     /**
      * The different style classes that can be applied to the element to reflect its
      * state
@@ -68,41 +75,47 @@ public class GameBoardItem {
     }
 
     /**
-     * Configures the node with the given data
+     * Binds the cell to a question, updating only what is shown if the question or
+     * its state has changed since the cell was last bound
      * 
      * @param q        the question the gameboard item represents
      * @param isActive a boolean that indicates if the node should be clickable
      * @param f        the function to run when the button is pressed
+     * @return whether the cell had to be updated
      */
-    private void config(Question q, boolean isActive, Runnable f) {
-
+    public boolean bind(Question q, boolean isActive, Runnable f) {
         action = f;
-        active = isActive;
-        question = q;
 
-        fxValue.textProperty().set("$" + question.getValue());
-        fxResult.setText(question.getAnswerStatus());
-        switch (question.getAnswerStatus()) {
-            case "Incorrect":
-                fxImageIndicator.setImage(ImageLoader.loadImage("images/feedback_incorrect.png"));
-                break;
-            case "Correct":
-                fxImageIndicator.setImage(ImageLoader.loadImage("images/feedback_correct.png"));
-                break;
-            case "Timed out":
-                fxImageIndicator.setImage(ImageLoader.loadImage("images/feedback_timeout.png"));
-                break;
+        boolean answered = q.isAnswered();
+        String status = q.getAnswerStatus();
+        if (q == question && isActive == active && answered == shownAnswered && Objects.equals(status, shownStatus)) {
+            return false;
         }
+        question = q;
+        active = isActive;
+        shownAnswered = answered;
+        shownStatus = status;
 
-        if (question.isAnswered()) {
+        fxValue.setText("$" + question.getValue());
+        fxResult.setText(status);
+        fxImageIndicator.setImage(feedbackImage(status));
+
+        // Every part of the cell is set, as it may have shown another question before
+        fxFront.setVisible(!answered);
+        fxBack.setVisible(answered);
+        if (answered) {
             setStyle(Style.ANSWERED);
-            fxFront.setVisible(false);
         } else {
-            fxBack.setVisible(false);
-            if (active) {
-                setStyle(Style.FOCUSED);
-            }
+            setStyle(active ? Style.FOCUSED : Style.DEFAULT);
         }
+        return true;
+    }
+
+    /**
+     * @return the node of the cell
+     */
+    public Region getNode() {
+        return fxBase;
     }
 
     /**
@@ -126,22 +139,38 @@ public class GameBoardItem {
     }
 
     /**
-     * Static factory method to generate a new intance of GameBoardItem.
+     * @param status the answer status of a question
+     * @return the icon for the status, or null if there is none
+     */
+    private static Image feedbackImage(String status) {
+        if (status == null) {
+            return null;
+        }
+        switch (status) {
+            case "Incorrect":
+                return ImageLoader.loadImage("images/feedback_incorrect.png");
+            case "Correct":
+                return ImageLoader.loadImage("images/feedback_correct.png");
+            case "Timed out":
+                return ImageLoader.loadImage("images/feedback_timeout.png");
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Static factory method to generate a new intance of GameBoardItem. The cell
+     * is empty until it is bound to a question.
      * 
-     * @param q        the question the gameboard item represents
-     * @param isActive a boolean that indicates if the node should be clickable
-     * @param f        the function to run when the button is pressed
-     * @return a region that contains a gameboarditem
+     * @return the controller of the new cell
      */
-    public static Region create(Question question, boolean active, Runnable f) {
+    public static GameBoardItem create() {
         FXMLLoader loader = ViewLoader.manualLoad(Component.GAME_BOARD_ITEM.getPath());
         try {
-            Region content = (Region) loader.load();
-            GameBoardItem controller = loader.getController();
-
-            controller.config(question, active, f);
-            return content;
+            loader.load();
+            return loader.getController();
         } catch (IOException e) {
+            e.printStackTrace();
             return null;
         }
     }
@@ -1,8 +1,5 @@
 package quinzical.controller.component;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
 import javafx.beans.binding.Bindings;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.event.ActionEvent;
@@ -11,9 +8,9 @@ import javafx.scene.control.Label;
 import javafx.scene.layout.HBox;
 import quinzical.App;
 import quinzical.App.GameState;
+import quinzical.controller.Reusable;
 import quinzical.controller.View;
 import quinzical.model.Game;
-import quinzical.model.MultiplayerGame;
 import quinzical.util.Connect;
 import quinzical.util.Modal;
 import quinzical.util.Router;
@@ -25,7 +22,7 @@ import quinzical.util.Router;
  * 
  * @author Alexander Nicholson, Peter Geodeke
  */
-public class GameTopBar {
+public class GameTopBar implements Reusable {
 	@FXML
 	private Label fxScoreLabel;
 
@@ -33,17 +30,20 @@ public class GameTopBar {
 	private HBox fxScoreCard;
 
 	/**
-	 * The method to run when the fxml is initialised
+	 * The method to run each time the top bar is shown
 	 */
-	public void initialize() {
+	@Override
+	public void onShow() {
 		// Hide the score if in practice mode
-		if (App.getState() == GameState.GAME) {
+		boolean showScore = App.getState() == GameState.GAME;
+		if (showScore) {
 			SimpleIntegerProperty score = Game.getInstance().getScore();
 			fxScoreLabel.textProperty().bind(Bindings.convert(score));
 		} else {
-			fxScoreCard.setVisible(false);
-			fxScoreCard.setManaged(false);
+			fxScoreLabel.textProperty().unbind();
 		}
+		fxScoreCard.setVisible(showScore);
+		fxScoreCard.setManaged(showScore);
 	}
 
 	/**
@@ -55,14 +55,7 @@ public class GameTopBar {
 	private void handleGoBack(ActionEvent event) {
 		// If player is in multiplayer
 		if (Router.currentViewIs(View.LOBBY)) {
-			Connect connect = Connect.getInstance();
-			JSONObject obj = new JSONObject();
-			try {
-				obj.put("code", MultiplayerGame.getInstance().getCode());
-			} catch (JSONException e) {
-				e.printStackTrace();
-			}
-			connect.emit("LEAVE_LOBBY", obj);
+			Connect.getInstance().leaveLobby();
 		}
 		Router.navigateBack();
 	}
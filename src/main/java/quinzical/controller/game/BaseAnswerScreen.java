@@ -21,6 +21,7 @@ import quinzical.model.User;
 import quinzical.util.AvatarFactory;
 import quinzical.util.Macron;
 import quinzical.util.Modal;
+import quinzical.util.QuestionScheduler;
 import quinzical.util.TTS;
 import quinzical.util.Timer;
 
@@ -60,10 +61,13 @@ public abstract class BaseAnswerScreen {
 
     private boolean isSubmitted;
 
+    private boolean isRecorded;
+
     public void initialize() {
 
         isSubmitted = false;
         hasTypoed = false;
+        isRecorded = false;
 
         // Show avatar
         AvatarFactory avatar = new AvatarFactory(avatarContainer);
@@ -79,12 +83,13 @@ public abstract class BaseAnswerScreen {
         fxHint.setText(capitalise(question.getHint()));
         fxPrefix.setText(capitalise(question.getPrefix()));
 
-        TTS.getInstance().speak(question.getHint());
+        TTS.getInstance().speakClue(question.getHint());
         Macron.getInstance().bind(fxInput, fxMacronLetter, fxMacronPopup);
 
         timer = Timer.getInstance();
         timer.set(fxProgressLabel, fxProgressLeft, fxProgressRight, 30);
         timer.start(e -> {
+            recordResult(false);
             forceWrongAnswer(question, true);
         });
 
@@ -182,17 +187,20 @@ public abstract class BaseAnswerScreen {
         Answer answer = question.checkAnswer(userAnswer);
 
         if (answer == Answer.CORRECT) {
+            recordResult(true);
             onCorrectAnswer(question);
         } else if (answer == Answer.INCORRECT) {
+            recordResult(false);
             onWrongAnswer(question);
         } else if (answer == Answer.TYPO) {
             if (hasTypoed) {
+                recordResult(false);
                 onWrongAnswer(question);
             }
             else {
                 isSubmitted = false;
                 hasTypoed = true;
-                TTS.getInstance().speak("Typo");
+                TTS.getInstance().speak("Typo", TTS.Priority.HIGH);
                 fxFeedback.setVisible(true);
                 fxFeedback.setText("Typo");
             }
@@ -204,14 +212,30 @@ public abstract class BaseAnswerScreen {
      */
     @FXML
     public void onUnsure() {
+        recordResult(false);
         forceWrongAnswer(question, false);
     }
 
+    /**
+     * Records the result of the question in the user's question history, so the
+     * question scheduler can bring missed questions back sooner. Only the first
+     * result for the question counts, so getting a practice question right on the
+     * third attempt still counts as a miss.
+     * 
+     * @param isCorrect whether the user answered correctly
+     */
+    private void recordResult(boolean isCorrect) {
+        if (!isRecorded) {
+            isRecorded = true;
+            QuestionScheduler.getInstance().record(question, isCorrect);
+        }
+    }
+
     /**
      * Repeat the spoken clue to the user
      */
     @FXML
     public void repeatClue() {
-        TTS.getInstance().speak(question.getHint());
+        TTS.getInstance().speakClue(question.getHint());
     }
 }
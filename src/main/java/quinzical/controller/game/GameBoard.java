@@ -1,23 +1,28 @@
 package quinzical.controller.game;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import javafx.fxml.FXML;
 import javafx.scene.control.Label;
 import javafx.scene.layout.GridPane;
-import javafx.scene.layout.Region;
 import javafx.scene.paint.Color;
+import quinzical.controller.Reusable;
 import quinzical.controller.View;
 import quinzical.controller.component.GameBoardItem;
 import quinzical.model.Game;
 import quinzical.model.Question;
 import quinzical.model.User;
+import quinzical.util.Metrics;
 import quinzical.util.Router;
 
 /**
  * Controller for the game board of the regular game option
  */
-public class GameBoard {
+public class GameBoard implements Reusable {
+
+	private static final int COLUMNS = 5;
+	private static final int ROWS = 5;
 
 	@FXML
 	private GridPane fxGrid;
@@ -26,22 +31,47 @@ public class GameBoard {
 	private Game game;
 	private User user;
 
+	// The cells of the board, by column then row, and the label at the top of each
+	// column. They are created once and bound to the questions of the game each
+	// time the board is shown.
+	private final List<List<GameBoardItem>> cells = new ArrayList<List<GameBoardItem>>();
+	private final List<Label> headers = new ArrayList<Label>();
+
 	/**
-	 * This method is called once the fxml has been loaded
+	 * This method is called once the fxml has been loaded, and creates the cells
+	 * of a full board ahead of time
 	 */
 	public void initialize() {
+		for (int i = 0; i < COLUMNS; i++) {
+			for (int j = 0; j < ROWS; j++) {
+				cell(i, j);
+			}
+		}
+	}
+
+	/**
+	 * This method is called each time the game board is shown. Only the cells whose
+	 * questions have changed since the board was last shown are updated.
+	 */
+	@Override
+	public void onShow() {
+		long start = System.nanoTime();
 		game = Game.getInstance();
 		user = User.getInstance();
 
 		// Populate the gameboard grid
 		ArrayList<String> categories = game.getCategories();
-		for (int i = 0; i < categories.size(); i++) {
+		int updated = 0;
+		for (int i = 0; i < Math.max(categories.size(), headers.size()); i++) {
+			if (i >= categories.size()) {
+				hideColumn(i, 0);
+				continue;
+			}
 			String category = categories.get(i);
 			// Place label
-			Label label = new Label(category);
-			label.setTextFill(Color.web("#fff"));
-			label.setStyle("-fx-font-size: 18px;");
-			fxGrid.add(label, i, 0);
+			Label label = header(i);
+			label.setText(category);
+			label.setVisible(true);
 
 			// Place buttons
 			boolean active = true;
@@ -49,16 +79,74 @@ public class GameBoard {
 			for (int j = 0; j < questions.size(); j++) {
 				final Integer intJ = j;
 				Question question = questions.get(intJ);
-				// Place button
-				Region item = GameBoardItem.create(question, active, () -> {
+				GameBoardItem item = cell(i, j);
+				if (item == null) {
+					continue;
+				}
+				if (item.bind(question, active, () -> {
 					game.setCurrentQuestion(category, intJ);
 					user.attemptQuestion(category, question.getId());
 					Router.show(View.ANSWER_SCREEN, false);
-				});
+				})) {
+					updated++;
+				}
+				item.getNode().setVisible(true);
 				if (!question.isAnswered()) {
 					active = false;
 				}
-				fxGrid.add(item, i, j + 1);
+			}
+			hideColumn(i, questions.size());
+		}
+
+		Metrics.add("board.cell.update", updated);
+		Metrics.recordSince("board.render", start);
+	}
+
+	/**
+	 * Get the label at the top of a column, creating it if there is not one yet
+	 */
+	private Label header(int column) {
+		while (headers.size() <= column) {
+			Label label = new Label();
+			label.setTextFill(Color.web("#fff"));
+			label.setStyle("-fx-font-size: 18px;");
+			fxGrid.add(label, headers.size(), 0);
+			headers.add(label);
+		}
+		return headers.get(column);
+	}
+
+	/**
+	 * Get the cell at a position on the board, creating it if there is not one yet
+	 */
+	private GameBoardItem cell(int column, int row) {
+		while (cells.size() <= column) {
+			cells.add(new ArrayList<GameBoardItem>());
+		}
+		List<GameBoardItem> rows = cells.get(column);
+		while (rows.size() <= row) {
+			GameBoardItem item = GameBoardItem.create();
+			if (item == null) {
+				return null;
+			}
+			fxGrid.add(item.getNode(), column, rows.size() + 1);
+			rows.add(item);
+		}
+		return rows.get(row);
+	}
+
+	/**
+	 * Hide the cells of a column from a row down, for games with fewer questions
+	 * than there are cells
+	 */
+	private void hideColumn(int column, int fromRow) {
+		if (fromRow == 0 && column < headers.size()) {
+			headers.get(column).setVisible(false);
+		}
+		if (column < cells.size()) {
+			List<GameBoardItem> rows = cells.get(column);
+			for (int j = fromRow; j < rows.size(); j++) {
+				rows.get(j).getNode().setVisible(false);
 			}
 		}
 	}
@@ -1,27 +1,26 @@
 package quinzical.controller.game;
 
-import java.lang.reflect.Field;
-import java.util.ArrayList;
-import java.util.List;
-
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import javafx.beans.binding.Bindings;
 import javafx.beans.property.SimpleStringProperty;
+import javafx.collections.ListChangeListener;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.layout.StackPane;
+import quinzical.controller.Reusable;
 import quinzical.controller.View;
 import quinzical.model.Answer;
 import quinzical.model.Avatar;
+import quinzical.model.LobbyEvent;
+import quinzical.model.LobbyMembers;
 import quinzical.model.Member;
 import quinzical.model.MultiplayerGame;
-import quinzical.model.Question;
 import quinzical.util.AvatarFactory;
 import quinzical.util.Connect;
+import quinzical.util.Metrics;
 import quinzical.util.Modal;
 import quinzical.util.Router;
 
@@ -29,7 +28,7 @@ import quinzical.util.Router;
  * Controller for the lobby of the multiplayer game. This class contains most of
  * the networking of the multiplayer game mode.
  */
-public class Lobby {
+public class Lobby implements Reusable {
     @FXML
     private Label fxCode;
     @FXML
@@ -82,7 +81,18 @@ public class Lobby {
     private MultiplayerGame game;
     private Connect connect;
 
-    public void initialize() {
+    /**
+     * The members the slots are drawn from, and the listener which redraws a slot
+     * when its member changes
+     */
+    private LobbyMembers store;
+    private final ListChangeListener<Member> slotListener = this::onSlotsChanged;
+
+    /**
+     * Called each time the lobby is shown
+     */
+    @Override
+    public void onShow() {
         game = MultiplayerGame.getInstance();
 
         fxCode.setText(Integer.toString(game.getCode()));
@@ -93,81 +103,90 @@ public class Lobby {
         connect = Connect.getInstance();
 
         // on next question, refresh the members and then go to the question screen
-        connect.onMessage("NEXT_QUESTION", args -> {
-            try {
-                JSONObject obj = new JSONObject(args[0].toString());
-                Question question = Question.fromJSONObject(obj.getString("question"));
-                JSONArray membersRaw = obj.getJSONArray("members");
-
-                ArrayList<Member> members = new ArrayList<Member>();
-                for (int i = 0; i < membersRaw.length(); i++) {
-                    members.add(Member.fromJSONObject(membersRaw.getString(i)));
-                }
-                MultiplayerGame.getInstance().updateMembers(members);
+        connect.on("NEXT_QUESTION", args -> LobbyEvent.NextQuestion.fromJSONObject(args[0].toString()), next -> {
+            MultiplayerGame.getInstance().updateMembers(next.getMembers());
 
-                game.setCurrentQuestion(question);
-                Router.show(View.MULTIPLAYER_ANSWER_SCREEN, false);
-                game.start();
-            } catch (JSONException e) {
-                e.printStackTrace();
-            }
+            game.setCurrentQuestion(next.getQuestion());
+            Router.show(View.MULTIPLAYER_ANSWER_SCREEN, false);
+            game.start();
         });
         connect.onMessage("ROUND_OVER", e -> {
             game.setRoundOver(true);
         });
-        connect.onMessage("LOBBY_JOINED", args -> {
-            processLobbyUpdate(args);
-        });
-        connect.onMessage("LOBBY_LEFT", args -> {
-            processLobbyUpdate(args);
+        // each change to the members is numbered, and must be applied in order, so
+        // none are coalesced. If one has been missed, ask for a full copy
+        connect.on("LOBBY_DELTA", args -> LobbyEvent.Delta.fromJSONObject(args[0].toString()), delta -> {
+            if (!game.getMemberStore().apply(delta)) {
+                requestResync();
+            }
         });
+        // a full copy of the members replaces them, so only the latest of a burst
+        // needs to be applied. Servers which do not number their changes send one
+        // of these for every change instead
+        connect.on("LOBBY_STATE", args -> LobbyEvent.State.fromJSONObject(args[0].toString()), state -> "members",
+                this::applyState);
+        connect.on("LOBBY_JOINED", args -> LobbyEvent.State.fromJSONObject(args[0].toString()), state -> "members",
+                this::applyState);
+        connect.on("LOBBY_LEFT", args -> LobbyEvent.State.fromJSONObject(args[0].toString()), state -> "members",
+                this::applyState);
         connect.onMessage("LOBBY_CLOSED", args -> {
+            game.setResumeToken(null);
             Router.show(View.MAIN_MENU);
             Modal.alert("Lobby closed", "The lobby has been closed by the host.");
         });
-        // update the score of a member who has answered the question
-        connect.onMessage("SCORE_UPDATE", args -> {
-            try {
-                JSONObject obj = new JSONObject(args[0].toString());
-                String username = obj.getString("username");
-                int score = obj.getInt("score");
-                Answer status = Answer.valueOf(obj.getString("status"));
-                String answer = obj.getString("answer");
-
-                setUserAnswerStatus(username, score, status, answer);
-            } catch (JSONException e) {
-                e.printStackTrace();
-            }
+        // sent by the connection when it dropped and the server no longer held the
+        // player's place by the time it came back
+        connect.onMessage(Connect.RESUME_FAILED, args -> {
+            Router.show(View.MAIN_MENU);
+            Modal.alert("Connection lost", "The connection to the lobby was lost and could not be restored.");
         });
+        // update the score of a member who has answered the question. Scores are
+        // absolute, so only the latest update for each member matters
+        connect.on("SCORE_UPDATE", args -> LobbyEvent.ScoreUpdate.fromJSONObject(args[0].toString()),
+                LobbyEvent.ScoreUpdate::getUsername, update -> {
+                    setUserAnswerStatus(update.getUsername(), update.getScore(), update.getStatus(),
+                            update.getAnswer());
+                });
         connect.onMessage("GAME_OVER", e -> {
         });
-        // make sure displays are bound so that the elements reflect the scores of the
-        // members
-        bindAnswerDisplays(game.getMembers());
-        renderAvatars(game.getMembers());
+
+        // from here on only the slots which change are redrawn
+        if (store != game.getMemberStore()) {
+            if (store != null) {
+                store.getSlots().removeListener(slotListener);
+            }
+            store = game.getMemberStore();
+            store.getSlots().addListener(slotListener);
+        }
+        for (int i = 0; i < LobbyMembers.MAX_MEMBERS; i++) {
+            renderMember(i + 1, store.getSlots().get(i));
+        }
     }
 
     /**
-     * Take a list of members as JSON and update the display of the lobby to use the
-     * new list of members. This is necessary because the backend will often change
-     * details about the list of members and return it as a list.
+     * Replace the members of the lobby with a full copy of them. Slots whose member
+     * has not changed are not redrawn.
      * 
-     * @param args
+     * @param state the members of the lobby
      */
-    public void processLobbyUpdate(Object... args) {
-        try {
-            JSONObject obj = new JSONObject(args[0].toString());
-            JSONArray membersRaw = obj.getJSONArray("members");
+    private void applyState(LobbyEvent.State state) {
+        game.getMemberStore().reset(state.getMembers(), state.getSequence());
+    }
 
-            ArrayList<Member> members = new ArrayList<Member>();
-            for (int i = 0; i < membersRaw.length(); i++) {
-                members.add(Member.fromJSONObject(membersRaw.getString(i)));
-            }
-            MultiplayerGame.getInstance().updateMembers(members);
-            Router.show(View.LOBBY, false); // reload screen
-        } catch (JSONException e) {
-            e.printStackTrace();
+    /**
+     * Ask the server for a full copy of the members of the lobby, after a change
+     * to them has been missed
+     */
+    private void requestResync() {
+        Metrics.increment("lobby.resync");
+        JSONObject json = new JSONObject();
+        try {
+            json.put("code", game.getCode());
+            json.put("seq", game.getMemberStore().getSequence());
+        } catch (JSONException err) {
+            err.printStackTrace();
         }
+        connect.emit("LOBBY_RESYNC", json);
     }
 
     /**
@@ -185,87 +204,76 @@ public class Lobby {
     }
 
     /**
-     * Render the avatars of the players in the lobby
+     * Redraw the slots whose member has been replaced
      * 
-     * @param players the players
+     * @param change the change to the slots
      */
-    public void renderAvatars(List<Member> players) {
-        for (int i = 1; i <= players.size(); i++) {
-            Member m = players.get(i - 1);
-
-            renderSlot(i, m.getAvatar());
-            setTitle(i, m.getUsername());
+    private void onSlotsChanged(ListChangeListener.Change<? extends Member> change) {
+        while (change.next()) {
+            if (!change.wasReplaced()) {
+                continue;
+            }
+            for (int i = change.getFrom(); i < change.getTo(); i++) {
+                renderMember(i + 1, change.getList().get(i));
+            }
         }
     }
 
     /**
-     * Render a specific avatar within the lobby
+     * Draw a member in an avatar slot, binding the slot's score and speech bubble
+     * to the member so that they update when the server returns information about
+     * the member's answers
      * 
-     * @param pos    the position in the array
-     * @param avatar the avatar to set to the location on the board
+     * @param pos    the position of the slot
+     * @param member the member, or null to empty the slot
      */
-    private void renderSlot(int pos, Avatar avatar) {
-        final int[] SIZE = { 220, 180, 140 };
-
+    private void renderMember(int pos, Member member) {
         try {
-            Field slotField = getClass().getDeclaredField("avatarSlot" + pos);
-
-            StackPane container = (StackPane) slotField.get(this);
-
-            // Map index to size
-            int s = (int) Math.ceil((pos - 1.7) / 1.7);
-            AvatarFactory slot = new AvatarFactory(container, SIZE[s], false);
+            StackPane container = (StackPane) getClass().getDeclaredField("avatarSlot" + pos).get(this);
+            Label title = (Label) getClass().getDeclaredField("avatarTitle" + pos).get(this);
+            Label subtitle = (Label) getClass().getDeclaredField("avatarSubtitle" + pos).get(this);
+            Label bubble = (Label) getClass().getDeclaredField("avatarSpeechBubble" + pos).get(this);
+
+            subtitle.textProperty().unbind();
+            bubble.textProperty().unbind();
+
+            if (member == null) {
+                container.getChildren().clear();
+                title.setText("");
+                subtitle.setText("");
+                bubble.setVisible(false);
+                return;
+            }
 
-            slot.set(avatar);
+            renderSlot(container, pos, member.getAvatar());
+            title.setText(member.getUsername());
+            subtitle.textProperty()
+                    .bind(Bindings.concat(new SimpleStringProperty("Score: "), member.getScore().asString()));
+            bubble.textProperty().bind(member.getAnswer());
+            // don't show answer bubbles before we have answered a question
+            bubble.setVisible(game.hasStarted());
 
+            Metrics.increment("lobby.slot.render");
         } catch (NoSuchFieldException | SecurityException | IllegalAccessException e) {
             e.printStackTrace();
         }
     }
 
     /**
-     * Set the title of a given avatar slot. This is supposed to represnt the given
-     * user's username.
+     * Render a specific avatar within the lobby
      * 
-     * @param pos          the position of the slot
-     * @param titleMessage the username of the user in the slot
+     * @param container the slot to draw the avatar in
+     * @param pos       the position of the slot
+     * @param avatar    the avatar to set to the location on the board
      */
-    private void setTitle(int pos, String titleMessage) {
-        try {
-            Field titleField = getClass().getDeclaredField("avatarTitle" + pos);
-            Label title = (Label) titleField.get(this);
-
-            title.setText(titleMessage);
-        } catch (NoSuchFieldException | SecurityException | IllegalAccessException e) {
-            e.printStackTrace();
-        }
-    }
+    private void renderSlot(StackPane container, int pos, Avatar avatar) {
+        final int[] SIZE = { 220, 180, 140 };
 
-    /**
-     * Bind the various elements of the avatar slots to JavaFX beans so that they
-     * will update when the server returns information about the answers of the
-     * different users.
-     * 
-     * @param members the members of the game
-     */
-    public void bindAnswerDisplays(List<Member> members) {
-        try {
-            for (int i = 1; i <= members.size(); i++) {
-                Member member = members.get(i - 1);
-                Label bubble = (Label) getClass().getDeclaredField("avatarSpeechBubble" + i).get(this);
-                bubble.textProperty().bind(member.getAnswer());
-                // don't show answer bubbles before we have answered a question
-                if (game.hasStarted()) {
-                    bubble.setVisible(true);
-                }
+        // Map index to size
+        int s = (int) Math.ceil((pos - 1.7) / 1.7);
+        AvatarFactory slot = new AvatarFactory(container, SIZE[s], false);
 
-                Label subtitle = (Label) getClass().getDeclaredField("avatarSubtitle" + i).get(this);
-                subtitle.textProperty()
-                        .bind(Bindings.concat(new SimpleStringProperty("Score: "), member.getScore().asString()));
-            }
-        } catch (NoSuchFieldException | SecurityException | IllegalAccessException e) {
-            e.printStackTrace();
-        }
+        slot.set(avatar);
     }
 
     /**
@@ -278,13 +286,11 @@ public class Lobby {
      * @param answer   the answer the user typed
      */
     public void setUserAnswerStatus(String username, int score, Answer status, String answer) {
-        for (Member member : game.getMembers()) {
-            if (member.getUsername().equals(username)) {
-                member.setScore(score);
-                member.setStatus(status);
-                member.setAnswer(answer);
-                return;
-            }
+        Member member = game.getMemberStore().find(username);
+        if (member != null) {
+            member.setScore(score);
+            member.setStatus(status);
+            member.setAnswer(answer);
         }
     }
 }
@@ -12,10 +12,12 @@ import javafx.scene.layout.Region;
 import quinzical.controller.View;
 import quinzical.controller.component.SelectedCategory;
 import quinzical.model.Category;
+import quinzical.model.LobbyMembers;
 import quinzical.model.Member;
 import quinzical.model.MultiplayerGame;
 import quinzical.model.Question;
 import quinzical.model.User;
+import quinzical.util.CategoryStore;
 import quinzical.util.Connect;
 import quinzical.util.QuestionBank;
 import quinzical.util.Router;
@@ -79,29 +81,44 @@ public class CategorySelectMultiplayer extends CategorySelect {
         Member user = new Member(User.getInstance().getAvatar(), 0, User.getInstance().getName(), true);
         MultiplayerGame.startGame(null, user);
 
-        // create the json array of categories and the user
-        JSONArray questions = new JSONArray();
-        for (Category category : selected) {
-            for (Question question : category.getQuestions()) {
-                questions.put(question.toJSONObject());
-            }
-        }
+        Connect connect = Connect.getInstance();
+
+        // send the hashes of the categories if the server keeps them, and it asks
+        // for the questions of any it does not have. Otherwise send every question.
         JSONObject json = new JSONObject();
         try {
-            json.put("questions", questions);
+            if (connect.hasCategoryStore()) {
+                JSONArray hashes = new JSONArray();
+                for (Category category : selected) {
+                    hashes.put(CategoryStore.getInstance().put(category));
+                }
+                json.put("categories", hashes);
+            } else {
+                JSONArray questions = new JSONArray();
+                for (Category category : selected) {
+                    for (Question question : category.getQuestions()) {
+                        questions.put(question.toJSONObject());
+                    }
+                }
+                json.put("questions", questions);
+            }
             json.put("user", user.toJSONObject());
         } catch (JSONException e) {
             e.printStackTrace();
         }
 
-        // connect to the server and create the lobby
-        Connect connect = Connect.getInstance();
+        // create the lobby
         connect.emit("CREATE_LOBBY", json);
         connect.onMessage("LOBBY_ID", args -> {
             try {
                 JSONObject obj = new JSONObject(args[0].toString());
                 int code = obj.getInt("code");
                 MultiplayerGame.getInstance().setCode(code);
+                MultiplayerGame.getInstance().setResumeToken(obj.optString("resume", null));
+
+                // the number of the lobby's last change, if the server numbers them
+                LobbyMembers members = MultiplayerGame.getInstance().getMemberStore();
+                members.reset(members.getMembers(), obj.optLong("seq", -1));
             } catch (JSONException err) {
                 err.printStackTrace();
             }
@@ -9,6 +9,7 @@ import javafx.scene.control.Label;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 
+import quinzical.controller.Reusable;
 import quinzical.model.Ranking;
 import quinzical.model.User;
 import quinzical.util.UserConnect;
@@ -16,7 +17,7 @@ import quinzical.util.UserConnect;
 /**
  * Controller for the leaderboard screen
  */
-public class Leaderboard {
+public class Leaderboard implements Reusable {
 
 	@FXML
 	public Label fxTotalScore;
@@ -38,10 +39,20 @@ public class Leaderboard {
 
 	private ObservableList<Ranking> rankings;
 
+	/**
+	 * The method to run when the fxml is loaded
+	 */
 	public void initialize() {
 		rankings = FXCollections.observableArrayList();
-		rankings.add(new Ranking(1, 0, "Loading Leaderboard..."));
 		initTable();
+	}
+
+	/**
+	 * Called each time the leaderboard is shown
+	 */
+	@Override
+	public void onShow() {
+		rankings.setAll(new Ranking(1, 0, "Loading Leaderboard..."));
 
 		// Show users own stats
 		int score = User.getInstance().getTotalCoins();
@@ -6,6 +6,7 @@ import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.layout.StackPane;
+import quinzical.controller.Reusable;
 import quinzical.controller.View;
 import quinzical.model.Avatar;
 import quinzical.model.Game;
@@ -17,7 +18,7 @@ import quinzical.util.Router;
 /**
  * Controller for the main menu screen
  */
-public class MainMenu {
+public class MainMenu implements Reusable {
 	private User user;
 
 	@FXML
@@ -48,16 +49,19 @@ public class MainMenu {
 	@FXML
 	private Label fxCoinDisplay;
 
-	public void initialize() {
+	/**
+	 * Called each time the main menu is shown
+	 */
+	@Override
+	public void onShow() {
 
 		// Store reference to user object
 		user = User.getInstance();
 
 		// Check if resume button should be shown
-		if (!Game.isInProgress()) {
-			fxResume.setVisible(false);
-			fxResume.setManaged(false);
-		}
+		boolean inProgress = Game.isInProgress();
+		fxResume.setVisible(inProgress);
+		fxResume.setManaged(inProgress);
 
 		if (user.getToken() != null) {
 			loggedIn.set(true);
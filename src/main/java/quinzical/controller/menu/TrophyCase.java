@@ -4,13 +4,14 @@ import java.util.HashMap;
 
 import javafx.fxml.FXML;
 import javafx.scene.control.Label;
+import quinzical.controller.Reusable;
 import quinzical.model.Reward;
 import quinzical.model.User;
 
 /**
  * Controller for the trophy case screen
  */
-public class TrophyCase {
+public class TrophyCase implements Reusable {
     
     @FXML
     private Label fxDiamond;
@@ -27,7 +28,11 @@ public class TrophyCase {
     @FXML
     private Label fxBronze;
 
-    public void initialize() {
+    /**
+     * Called each time the trophy case is shown
+     */
+    @Override
+    public void onShow() {
         HashMap<Reward, Integer> rewards = User.getInstance().getRewards();
         fxDiamond.setText(Integer.toString(rewards.get(Reward.Diamond)));
         fxPlatinum.setText(Integer.toString(rewards.get(Reward.Platinum)));
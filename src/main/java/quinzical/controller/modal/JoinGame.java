@@ -1,10 +1,8 @@
 package quinzical.controller.modal;
 
-import java.util.ArrayList;
 import java.util.function.UnaryOperator;
 import java.util.regex.Pattern;
 
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -19,6 +17,7 @@ import quinzical.util.Connect;
 import quinzical.util.Modal;
 import quinzical.util.Router;
 import quinzical.controller.View;
+import quinzical.model.LobbyEvent;
 import quinzical.model.Member;
 
 /**
@@ -159,22 +158,11 @@ public class JoinGame {
         }
 
         connect.emit("JOIN_LOBBY", json);
-        connect.onMessage("LOBBY_JOINED", args -> {
-            try {
-                JSONObject obj = new JSONObject(args[0].toString());
-                JSONArray membersRaw = obj.getJSONArray("members");
-
-                ArrayList<Member> members = new ArrayList<Member>();
-                for (int i = 0; i < membersRaw.length(); i++) {
-                    members.add(Member.fromJSONObject(membersRaw.getString(i)));
-                }
-
-                MultiplayerGame.startGame(code, user);
-                MultiplayerGame.getInstance().updateMembers(members);
-                Router.show(View.LOBBY);
-            } catch (JSONException e) {
-                e.printStackTrace();
-            }
+        connect.on("LOBBY_JOINED", args -> LobbyEvent.State.fromJSONObject(args[0].toString()), state -> {
+            MultiplayerGame.startGame(code, user);
+            MultiplayerGame.getInstance().setResumeToken(state.getResumeToken());
+            MultiplayerGame.getInstance().getMemberStore().reset(state.getMembers(), state.getSequence());
+            Router.show(View.LOBBY);
         });
         connect.onMessage("INVALID_LOBBY", args -> {
             fxMessage.setText("Invalid Code");
@@ -1,11 +1,15 @@
 package quinzical.model;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import quinzical.avatar.Cosmetic;
+import quinzical.util.StateCodec;
 
 /**
  * Avatar class representing a player avatar which can be customised and
@@ -15,6 +19,8 @@ public class Avatar implements Serializable {
 
     private static final long serialVersionUID = 1402907673497852680L;
 
+    private static final int FORMAT_VERSION = 1;
+
     private Cosmetic slotHat;
 
     private Cosmetic slotAccessory;
@@ -132,6 +138,37 @@ public class Avatar implements Serializable {
         return forceDisableAnimation;
     }
 
+    /**
+     * Write the avatar in the binary state format
+     * 
+     * @param out the output to write it to
+     * @throws IOException
+     * @see quinzical.util.StateCodec
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeShort(FORMAT_VERSION);
+        StateCodec.writeEnum(out, slotHat);
+        StateCodec.writeEnum(out, slotAccessory);
+        StateCodec.writeEnum(out, slotEyes);
+        out.writeBoolean(forceDisableAnimation);
+    }
+
+    /**
+     * Read an avatar written by write
+     * 
+     * @param in the input to read it from
+     * @return the avatar
+     * @throws IOException
+     */
+    public static Avatar read(DataInput in) throws IOException {
+        StateCodec.readVersion(in, FORMAT_VERSION, "Avatar");
+
+        Avatar avatar = new Avatar(StateCodec.readEnum(in, Cosmetic.class), StateCodec.readEnum(in, Cosmetic.class),
+                StateCodec.readEnum(in, Cosmetic.class));
+        avatar.forceDisableAnimation = in.readBoolean();
+        return avatar;
+    }
+
     /**
      * Convert the avatar to a JSONObject so that it can be sent to the backend
      * server
@@ -1,9 +1,19 @@
 package quinzical.model;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import quinzical.util.CategoryHash;
+
 /**
  * Represents a category of questions, which can either be set or user created.
  */
@@ -30,6 +40,32 @@ public class Category {
      */
     private String name;
 
+    /**
+     * Source of questions which have not been decoded yet. Categories loaded from
+     * the compiled question bank only decode their questions the first time they
+     * are accessed.
+     */
+    private Supplier<List<Question>> pendingQuestions;
+
+    /**
+     * Every question in the category, ordered by id. Rebuilt on demand after the
+     * questions change, and never modified once built.
+     */
+    private Question[] index;
+
+    /**
+     * The questions in the category grouped by difficulty, so that
+     * indexByDifficulty[d] holds the questions of difficulty d. Built alongside
+     * index.
+     */
+    private Question[][] indexByDifficulty;
+
+    /**
+     * The hash of the questions in the category, or null until it is next asked
+     * for after the questions change
+     */
+    private String hash;
+
     /**
      * Constructor to call when the user wants to create a category. Any categories
      * created this way will be marked as user created.
@@ -58,6 +94,30 @@ public class Category {
         userCreated = isUserCreated;
     }
 
+    /**
+     * Constructor for categories whose questions are decoded lazily, the first time
+     * any of the questions are accessed
+     * 
+     * @param categoryName
+     * @param isUserCreated
+     * @param source        supplies the questions of the category when first needed
+     */
+    public Category(String categoryName, boolean isUserCreated, Supplier<List<Question>> source) {
+        this(categoryName, isUserCreated);
+        pendingQuestions = source;
+    }
+
+    /**
+     * Decodes the questions from the pending source, if there is one
+     */
+    private void ensureLoaded() {
+        if (pendingQuestions != null) {
+            Supplier<List<Question>> source = pendingQuestions;
+            pendingQuestions = null;
+            addQuestion(source.get());
+        }
+    }
+
     /**
      * Set the locked state of the category
      * 
@@ -105,7 +165,174 @@ public class Category {
      * @return get the questions of the category
      */
     public List<Question> getQuestions() {
-        return questions.values().stream().collect(Collectors.toList());
+        ensureLoaded();
+        return new ArrayList<Question>(Arrays.asList(getIndex()));
+    }
+
+    /**
+     * 
+     * @return the number of questions in the category
+     */
+    public int getQuestionCount() {
+        ensureLoaded();
+        return questions.size();
+    }
+
+    /**
+     * Get a question by its position in the category. Questions are ordered by id,
+     * so positions are stable as long as the category is not modified.
+     * 
+     * @param position the position, between 0 and getQuestionCount() - 1
+     * @return the question
+     */
+    public Question getQuestion(int position) {
+        ensureLoaded();
+        return getIndex()[position];
+    }
+
+    /**
+     * 
+     * @return the highest difficulty of any question in the category, or 0 if it
+     *         is empty
+     */
+    public int getMaxDifficulty() {
+        ensureLoaded();
+        getIndex();
+        return indexByDifficulty.length - 1;
+    }
+
+    /**
+     * 
+     * @param difficulty the difficulty
+     * @return the number of questions of that difficulty in the category
+     */
+    public int getQuestionCount(int difficulty) {
+        ensureLoaded();
+        getIndex();
+        if (difficulty < 0 || difficulty >= indexByDifficulty.length) {
+            return 0;
+        }
+        return indexByDifficulty[difficulty].length;
+    }
+
+    /**
+     * Get a question by its position among the questions of a given difficulty.
+     * Positions are stable as long as the category is not modified.
+     * 
+     * @param difficulty the difficulty of the question
+     * @param position   the position, between 0 and getQuestionCount(difficulty) - 1
+     * @return the question
+     */
+    public Question getQuestion(int difficulty, int position) {
+        ensureLoaded();
+        getIndex();
+        return indexByDifficulty[difficulty][position];
+    }
+
+    /**
+     * Pick a random question from the category
+     * 
+     * @param rand the random number generator to use
+     * @return a random question, or null if the category is empty
+     */
+    public Question getRandomQuestion(Random rand) {
+        ensureLoaded();
+        Question[] all = getIndex();
+        return all.length == 0 ? null : all[rand.nextInt(all.length)];
+    }
+
+    /**
+     * Pick a random question of a given difficulty from the category
+     * 
+     * @param difficulty the difficulty of the question
+     * @param rand       the random number generator to use
+     * @return a random question of that difficulty, or null if the category has
+     *         none
+     */
+    public Question getRandomQuestion(int difficulty, Random rand) {
+        ensureLoaded();
+        getIndex();
+        if (difficulty < 0 || difficulty >= indexByDifficulty.length) {
+            return null;
+        }
+        Question[] candidates = indexByDifficulty[difficulty];
+        return candidates.length == 0 ? null : candidates[rand.nextInt(candidates.length)];
+    }
+
+    /**
+     * @return the index of the questions, building it first if the questions have
+     *         changed since it was last built
+     */
+    private Question[] getIndex() {
+        if (index == null) {
+            Question[] all = questions.values().toArray(new Question[0]);
+            Arrays.sort(all, Comparator.comparing(Question::getId));
+
+            int maxDifficulty = 0;
+            for (Question q : all) {
+                maxDifficulty = Math.max(maxDifficulty, q.getDifficulty());
+            }
+            int[] counts = new int[maxDifficulty + 1];
+            for (Question q : all) {
+                counts[Math.max(q.getDifficulty(), 0)]++;
+            }
+            Question[][] byDifficulty = new Question[maxDifficulty + 1][];
+            for (int d = 0; d <= maxDifficulty; d++) {
+                byDifficulty[d] = new Question[counts[d]];
+                counts[d] = 0;
+            }
+            for (Question q : all) {
+                int d = Math.max(q.getDifficulty(), 0);
+                byDifficulty[d][counts[d]++] = q;
+            }
+
+            indexByDifficulty = byDifficulty;
+            index = all;
+        }
+        return index;
+    }
+
+    /**
+     * Marks the index and hash as out of date after the questions have changed
+     */
+    private void invalidateIndex() {
+        index = null;
+        indexByDifficulty = null;
+        hash = null;
+    }
+
+    /**
+     * 
+     * @return the questions of the category as a JSONArray, ordered by id
+     */
+    public JSONArray toJSONArray() {
+        ensureLoaded();
+        JSONArray array = new JSONArray();
+        for (Question q : getIndex()) {
+            array.put(q.toJSONObject());
+        }
+        return array;
+    }
+
+    /**
+     * Get the hash of the questions in the category, which names the category by
+     * its content. It is worked out the first time it is asked for, and again
+     * after the questions change.
+     * 
+     * @return the hash
+     * @see quinzical.util.CategoryHash
+     */
+    public String getHash() {
+        ensureLoaded();
+        if (hash == null) {
+            try {
+                hash = CategoryHash.of(toJSONArray());
+            } catch (JSONException e) {
+                // toJSONArray only ever holds objects
+                throw new IllegalStateException(e);
+            }
+        }
+        return hash;
     }
 
     /**
@@ -114,7 +341,9 @@ public class Category {
      * @param q the question to add
      */
     public void addQuestion(Question q) {
+        ensureLoaded();
         questions.put(q.getId(), q);
+        invalidateIndex();
     }
 
     /**
@@ -123,9 +352,11 @@ public class Category {
      * @param qList the list of questions
      */
     public void addQuestion(List<Question> qList) {
+        ensureLoaded();
         for (Question q : qList) {
             questions.put(q.getId(), q);
         }
+        invalidateIndex();
     }
 
     /**
@@ -135,6 +366,7 @@ public class Category {
      * @return the question
      */
     public Question getQuestionById(String id) {
+        ensureLoaded();
         return questions.get(id);
     }
 
@@ -143,6 +375,7 @@ public class Category {
      * @return the ids of the questions
      */
     public List<String> getQuestionIds() {
+        ensureLoaded();
         return questions.keySet().stream().collect(Collectors.toList());
     }
 
@@ -152,7 +385,9 @@ public class Category {
      * @param id the id of the question to remove
      */
     public void removeQuestion(String id) {
+        ensureLoaded();
         questions.remove(id);
+        invalidateIndex();
     }
 
 }
@@ -1,18 +1,25 @@
 package quinzical.model;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.stream.Collectors;
 
 import javafx.beans.property.SimpleIntegerProperty;
+import quinzical.util.GameJournal;
 import quinzical.util.IOManager;
 import quinzical.util.State;
+import quinzical.util.StateCodec;
+import quinzical.util.TTS;
 import quinzical.util.Timer;
 
 /**
@@ -22,6 +29,22 @@ public class Game extends QuinzicalGame implements Serializable {
 
     private static final long serialVersionUID = -7700892048792888475L;
 
+    private static final int FORMAT_VERSION = 2;
+
+    /**
+     * How many journal records to append before taking a full snapshot
+     */
+    private static final int SNAPSHOT_INTERVAL = 10;
+
+    /**
+     * The answer statuses of a question, indexed by the code they are journalled
+     * as
+     */
+    private static final String[] ANSWER_STATUSES = { "Didnt Answer", "Correct", "Incorrect" };
+
+    // Created with the class so the journal is emptied after every snapshot
+    private static final GameJournal journal = GameJournal.getInstance();
+
     private HashMap<String, ArrayList<Question>> questions;
 
     private transient SimpleIntegerProperty score;
@@ -36,6 +59,17 @@ public class Game extends QuinzicalGame implements Serializable {
 
     private float totalTime;
 
+    /**
+     * Identifies this game's records in the journal
+     */
+    private long journalId;
+
+    private transient int currentIndex;
+
+    private transient int journalled;
+
+    private transient String[] categoryOrder;
+
     /**
      * Construct the game with questions corresponding to the categories of the
      * game.
@@ -45,14 +79,77 @@ public class Game extends QuinzicalGame implements Serializable {
     private Game(List<Category> categories) {
         score = new SimpleIntegerProperty();
         questions = new HashMap<String, ArrayList<Question>>();
+        journalId = newJournalId();
 
-        // For each category select 5 random questions
+        // For each category select 5 questions, one of each difficulty
         for (Category category : categories) {
-            ArrayList<Question> questionList = questionBank.getRandomQuestions(category, questionCount, false);
+            ArrayList<Question> questionList = questionBank.getScheduledQuestions(category, questionCount);
             questions.put(category.getName(), questionList);
         }
     }
 
+    /**
+     * Constructor for a game read from the binary state format
+     * 
+     * @param in      the input to read the game from
+     * @param version the format version the game was written with
+     * @throws IOException
+     */
+    private Game(DataInput in, int version) throws IOException {
+        questions = new HashMap<String, ArrayList<Question>>();
+        int categoryCount = in.readInt();
+        for (int i = 0; i < categoryCount; i++) {
+            String category = in.readUTF();
+            int questionCount = in.readInt();
+            ArrayList<Question> questionList = new ArrayList<Question>(questionCount);
+            for (int j = 0; j < questionCount; j++) {
+                questionList.add(Question.read(in));
+            }
+            questions.put(category, questionList);
+        }
+
+        score = new SimpleIntegerProperty(in.readInt());
+        currentCategory = StateCodec.readString(in);
+        totalTime = in.readFloat();
+        journalId = version >= 2 ? in.readLong() : 0;
+    }
+
+    /**
+     * Write the game in the binary state format
+     * 
+     * @param out the output to write it to
+     * @throws IOException
+     * @see quinzical.util.StateCodec
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeShort(FORMAT_VERSION);
+
+        out.writeInt(questions.size());
+        for (Map.Entry<String, ArrayList<Question>> entry : questions.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (Question question : entry.getValue()) {
+                question.write(out);
+            }
+        }
+
+        out.writeInt(score.get());
+        StateCodec.writeString(out, currentCategory);
+        out.writeFloat(totalTime);
+        out.writeLong(journalId);
+    }
+
+    /**
+     * Read a game written by write
+     * 
+     * @param in the input to read it from
+     * @return the game
+     * @throws IOException
+     */
+    public static Game read(DataInput in) throws IOException {
+        return new Game(in, StateCodec.readVersion(in, FORMAT_VERSION, "Game"));
+    }
+
     /**
      * Adds to the score for the current game
      * 
@@ -64,6 +161,7 @@ public class Game extends QuinzicalGame implements Serializable {
 
         lastScore = Math.round(amount * multiplier);
         score.set(score.intValue() + lastScore);
+        journal(GameJournal.SCORED, 0, 0, score.get());
     }
 
     /**
@@ -90,9 +188,10 @@ public class Game extends QuinzicalGame implements Serializable {
     public void setCurrentQuestion(String category, int index) {
         Question q = questions.get(category).get(index);
         currentCategory = category;
+        currentIndex = index;
         setCurrentQuestion(q);
         q.setAnswered(true);
-        persist();
+        journal(GameJournal.OPENED, categoryIndex(category), index, 0);
     }
 
     /**
@@ -102,7 +201,7 @@ public class Game extends QuinzicalGame implements Serializable {
     public static Game getInstance() {
         if (instance == null) {
             // Attempt to read state from file
-            instance = IOManager.readState(State.GAME);
+            instance = load();
             if (instance == null) {
                 return null;
             }
@@ -115,12 +214,9 @@ public class Game extends QuinzicalGame implements Serializable {
      * @return whether the game is in progress
      */
     public static boolean isInProgress() {
-        instance = IOManager.readState(State.GAME);
-        if (instance != null) {
-            return !(instance.getRemainingQuestions() == 0);
-        } else {
-            return false;
-        }
+        // Only load the game if there is no live one, which is always newer
+        Game game = getInstance();
+        return game != null && game.getRemainingQuestions() != 0;
     }
 
     /**
@@ -128,6 +224,16 @@ public class Game extends QuinzicalGame implements Serializable {
      */
     public static void newGame(List<Category> categories) {
         instance = new Game(categories);
+        persist();
+
+        // Render the clues while the user looks at the board
+        List<String> clues = new ArrayList<String>();
+        for (ArrayList<Question> questionList : instance.questions.values()) {
+            for (Question question : questionList) {
+                clues.add(question.getHint());
+            }
+        }
+        TTS.getInstance().prepareClues(clues);
     }
 
     /**
@@ -183,7 +289,14 @@ public class Game extends QuinzicalGame implements Serializable {
      */
     public void addTime(float time) {
         totalTime += time;
-        persist();
+
+        // Called once the current question has been answered
+        Question q = getCurrentQuestion();
+        if (q != null && currentCategory != null) {
+            int status = Math.max(0, Arrays.asList(ANSWER_STATUSES).indexOf(q.getAnswerStatus()));
+            journal(GameJournal.ANSWERED, categoryIndex(currentCategory), currentIndex, status);
+        }
+        journal(GameJournal.TIMED, 0, 0, Float.floatToIntBits(totalTime));
     }
 
     /**
@@ -198,17 +311,107 @@ public class Game extends QuinzicalGame implements Serializable {
     }
 
     /**
-     * Saves the current game instance to file, or deletes any game data if the
-     * instance is null.
+     * Saves a snapshot of the current game instance to file, or deletes any game
+     * data if the instance is null. The journal is emptied once the snapshot is on
+     * disk.
      */
     private static void persist() {
         if (instance == null) {
             IOManager.clearState(State.GAME);
         } else {
+            instance.journalled = 0;
             IOManager.writeState(State.GAME, instance);
         }
     }
 
+    /**
+     * Reads the game from file and replays the journal on top of it
+     * 
+     * @return the game, or null if there is none
+     */
+    private static Game load() {
+        Game game = IOManager.readState(State.GAME);
+        if (game != null) {
+            game.journalled = journal.replay(game.journalId, game::apply);
+        }
+        return game;
+    }
+
+    /**
+     * Appends a record to the journal, taking a snapshot instead every
+     * SNAPSHOT_INTERVAL records
+     */
+    private void journal(int type, int a, int b, int value) {
+        if (this != instance) {
+            return;
+        }
+        journal.append(journalId, type, a, b, value);
+        if (++journalled >= SNAPSHOT_INTERVAL) {
+            persist();
+        }
+    }
+
+    /**
+     * Applies a journal record to the game
+     */
+    private void apply(int type, int a, int b, int value) {
+        Question q = null;
+        if (type == GameJournal.OPENED || type == GameJournal.ANSWERED) {
+            String[] order = getCategoryOrder();
+            if (a < 0 || a >= order.length || b < 0 || b >= questions.get(order[a]).size()) {
+                return;
+            }
+            q = questions.get(order[a]).get(b);
+        }
+
+        switch (type) {
+            case GameJournal.OPENED:
+                currentCategory = getCategoryOrder()[a];
+                currentIndex = b;
+                setCurrentQuestion(q);
+                q.setAnswered(true);
+                break;
+            case GameJournal.ANSWERED:
+                if (value >= 0 && value < ANSWER_STATUSES.length) {
+                    q.setAnswerStatus(ANSWER_STATUSES[value]);
+                }
+                break;
+            case GameJournal.SCORED:
+                score.set(value);
+                break;
+            case GameJournal.TIMED:
+                totalTime = Float.intBitsToFloat(value);
+                break;
+        }
+    }
+
+    /**
+     * @return the categories in a fixed order, so they can be journalled by index
+     */
+    private String[] getCategoryOrder() {
+        if (categoryOrder == null) {
+            categoryOrder = questions.keySet().toArray(new String[0]);
+            Arrays.sort(categoryOrder);
+        }
+        return categoryOrder;
+    }
+
+    private int categoryIndex(String category) {
+        return Arrays.binarySearch(getCategoryOrder(), category);
+    }
+
+    /**
+     * @return a random id for the journal records of a new game, never 0, which
+     *         is the id of games saved before the journal was kept
+     */
+    private static long newJournalId() {
+        long id;
+        do {
+            id = new Random().nextLong();
+        } while (id == 0);
+        return id;
+    }
+
     /**
      * Write the object
      * 
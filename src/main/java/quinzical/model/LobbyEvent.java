@@ -0,0 +1,244 @@
+package quinzical.model;
+
+import java.util.ArrayList;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The messages the server sends to the members of a multiplayer lobby, decoded
+ * from JSON. They are decoded on the socket thread (see Connect.on) so the
+ * JavaFX thread only has to apply them.
+ */
+public class LobbyEvent {
+
+    /**
+     * Private constructor, this class only holds the event types
+     */
+    private LobbyEvent() { }
+
+    /**
+     * A member of the lobby has answered the current question
+     */
+    public static class ScoreUpdate {
+        private final String username;
+        private final int score;
+        private final Answer status;
+        private final String answer;
+
+        private ScoreUpdate(String username, int score, Answer status, String answer) {
+            this.username = username;
+            this.score = score;
+            this.status = status;
+            this.answer = answer;
+        }
+
+        /**
+         * @param raw the message as a string
+         * @return the score update
+         * @throws JSONException if the message is not a score update
+         */
+        public static ScoreUpdate fromJSONObject(String raw) throws JSONException {
+            JSONObject obj = new JSONObject(raw);
+            return new ScoreUpdate(obj.getString("username"), obj.getInt("score"),
+                    Answer.valueOf(obj.getString("status")), obj.getString("answer"));
+        }
+
+        /**
+         * @return the username of the member who answered
+         */
+        public String getUsername() {
+            return username;
+        }
+
+        /**
+         * @return the member's new score
+         */
+        public int getScore() {
+            return score;
+        }
+
+        /**
+         * @return the status of the member's answer
+         */
+        public Answer getStatus() {
+            return status;
+        }
+
+        /**
+         * @return the answer the member typed
+         */
+        public String getAnswer() {
+            return answer;
+        }
+    }
+
+    /**
+     * The host has moved the lobby on to the next question
+     */
+    public static class NextQuestion {
+        private final Question question;
+        private final ArrayList<Member> members;
+
+        private NextQuestion(Question question, ArrayList<Member> members) {
+            this.question = question;
+            this.members = members;
+        }
+
+        /**
+         * @param raw the message as a string
+         * @return the next question
+         * @throws JSONException if the message is not a next question message
+         */
+        public static NextQuestion fromJSONObject(String raw) throws JSONException {
+            JSONObject obj = new JSONObject(raw);
+            return new NextQuestion(Question.fromJSONObject(obj.getString("question")), members(obj));
+        }
+
+        /**
+         * @return the question to answer
+         */
+        public Question getQuestion() {
+            return question;
+        }
+
+        /**
+         * @return the members of the lobby
+         */
+        public ArrayList<Member> getMembers() {
+            return members;
+        }
+    }
+
+    /**
+     * A numbered change to the members of the lobby (LOBBY_DELTA)
+     */
+    public static class Delta {
+
+        /**
+         * What happened to the member
+         */
+        public static enum Op {
+            ADDED, REMOVED, CHANGED
+        }
+
+        private final long sequence;
+        private final Op op;
+        private final String username;
+        private final Member member;
+
+        private Delta(long sequence, Op op, String username, Member member) {
+            this.sequence = sequence;
+            this.op = op;
+            this.username = username;
+            this.member = member;
+        }
+
+        /**
+         * @param raw the message as a string
+         * @return the change
+         * @throws JSONException if the message is not a change to the lobby
+         */
+        public static Delta fromJSONObject(String raw) throws JSONException {
+            JSONObject obj = new JSONObject(raw);
+            Op op = Op.valueOf(obj.getString("op"));
+            if (op == Op.REMOVED) {
+                return new Delta(obj.getLong("seq"), op, obj.getString("username"), null);
+            }
+            Member member = Member.fromJSONObject(obj.getString("member"));
+            if (member == null) {
+                throw new JSONException("Invalid member in " + op + " change");
+            }
+            return new Delta(obj.getLong("seq"), op, member.getUsername(), member);
+        }
+
+        /**
+         * @return the number of the change
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * @return what happened to the member
+         */
+        public Op getOp() {
+            return op;
+        }
+
+        /**
+         * @return the username of the member
+         */
+        public String getUsername() {
+            return username;
+        }
+
+        /**
+         * @return the member as they now are, or null if they were removed
+         */
+        public Member getMember() {
+            return member;
+        }
+    }
+
+    /**
+     * A full copy of the members of the lobby (LOBBY_STATE), sent when the lobby
+     * asks for one after missing a change. LOBBY_JOINED and LOBBY_LEFT also list
+     * every member, and are numbered if the server numbers its changes.
+     */
+    public static class State {
+        private final long sequence;
+        private final ArrayList<Member> members;
+        private final String resumeToken;
+
+        private State(long sequence, ArrayList<Member> members, String resumeToken) {
+            this.sequence = sequence;
+            this.members = members;
+            this.resumeToken = resumeToken;
+        }
+
+        /**
+         * @param raw the message as a string
+         * @return the state of the lobby
+         * @throws JSONException if the message is not a copy of the lobby
+         */
+        public static State fromJSONObject(String raw) throws JSONException {
+            JSONObject obj = new JSONObject(raw);
+            return new State(obj.optLong("seq", -1), members(obj), obj.optString("resume", null));
+        }
+
+        /**
+         * @return the number of the last change the copy includes, or -1 if the
+         *         server does not number its changes
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * @return the members of the lobby
+         */
+        public ArrayList<Member> getMembers() {
+            return members;
+        }
+
+        /**
+         * @return the token to resume the player's place in the lobby with after
+         *         a dropped connection, or null if the server does not hold places
+         */
+        public String getResumeToken() {
+            return resumeToken;
+        }
+    }
+
+    private static ArrayList<Member> members(JSONObject obj) throws JSONException {
+        JSONArray membersRaw = obj.getJSONArray("members");
+
+        ArrayList<Member> members = new ArrayList<Member>();
+        for (int i = 0; i < membersRaw.length(); i++) {
+            members.add(Member.fromJSONObject(membersRaw.getString(i)));
+        }
+        return members;
+    }
+}
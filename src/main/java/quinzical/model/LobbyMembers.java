@@ -0,0 +1,186 @@
+package quinzical.model;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import quinzical.util.Metrics;
+
+/**
+ * The members of a multiplayer lobby, each in a fixed slot. A member keeps
+ * their slot until they leave, so a member joining or leaving changes only
+ * that one slot, and a view listening to the slots only has to redraw that
+ * slot.
+ *
+ * The server numbers its changes to the lobby. Each change (a member added,
+ * removed or changed) is applied in order, and when one is missed the lobby is
+ * out of date until a full copy of its state is applied.
+ */
+public class LobbyMembers {
+
+    public static final int MAX_MEMBERS = 5;
+
+    /**
+     * The member in each slot, or null where the slot is empty
+     */
+    private final ObservableList<Member> slots = FXCollections.observableArrayList();
+
+    /**
+     * The number of the last change applied, or -1 if not known
+     */
+    private long sequence = -1;
+
+    /**
+     * Constructor, with every slot empty
+     */
+    public LobbyMembers() {
+        for (int i = 0; i < MAX_MEMBERS; i++) {
+            slots.add(null);
+        }
+    }
+
+    /**
+     * @return the member in each slot, or null where the slot is empty
+     */
+    public ObservableList<Member> getSlots() {
+        return slots;
+    }
+
+    /**
+     * @return the members, in slot order
+     */
+    public ArrayList<Member> getMembers() {
+        ArrayList<Member> members = new ArrayList<Member>();
+        for (Member member : slots) {
+            if (member != null) {
+                members.add(member);
+            }
+        }
+        return members;
+    }
+
+    /**
+     * @param username the username of a member
+     * @return the member with the username, or null if they are not in the lobby
+     */
+    public Member find(String username) {
+        int slot = slotOf(username);
+        return slot < 0 ? null : slots.get(slot);
+    }
+
+    /**
+     * @return the number of the last change applied, or -1 if not known
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Replace the members with a full copy of the lobby, which brings the lobby up
+     * to date. Members already in the lobby keep their slots, and slots whose
+     * member has not changed are not touched.
+     *
+     * @param members  the members of the lobby
+     * @param sequence the number of the last change the copy includes, or -1 if it
+     *                 is not numbered
+     */
+    public void reset(List<Member> members, long sequence) {
+        this.sequence = sequence;
+
+        Set<String> usernames = new HashSet<String>();
+        for (Member member : members) {
+            usernames.add(member.getUsername());
+        }
+        for (int i = 0; i < MAX_MEMBERS; i++) {
+            Member current = slots.get(i);
+            if (current != null && !usernames.contains(current.getUsername())) {
+                slots.set(i, null);
+            }
+        }
+        for (Member member : members) {
+            put(member);
+        }
+    }
+
+    /**
+     * Apply a numbered change to the lobby
+     *
+     * @param delta the change
+     * @return false if a change was missed before this one, in which case nothing
+     *         is applied and the lobby needs a full copy to be up to date
+     */
+    public boolean apply(LobbyEvent.Delta delta) {
+        if (sequence < 0 || delta.getSequence() != sequence + 1) {
+            if (delta.getSequence() <= sequence) {
+                // Already applied, e.g. replayed after a full copy
+                return true;
+            }
+            Metrics.increment("lobby.delta.gap");
+            return false;
+        }
+        sequence = delta.getSequence();
+
+        switch (delta.getOp()) {
+            case ADDED:
+            case CHANGED:
+                put(delta.getMember());
+                break;
+            case REMOVED:
+                int slot = slotOf(delta.getUsername());
+                if (slot >= 0) {
+                    slots.set(slot, null);
+                }
+                break;
+        }
+        Metrics.increment("lobby.delta.applied");
+        return true;
+    }
+
+    /**
+     * Add a member, or update them if they are already in the lobby. The details
+     * of an existing member are changed in place, so anything bound to them
+     * updates; their slot is only replaced if their avatar has changed.
+     */
+    private void put(Member member) {
+        int slot = slotOf(member.getUsername());
+        if (slot < 0) {
+            slot = slots.indexOf(null);
+            if (slot < 0) {
+                // The lobby is full
+                return;
+            }
+            slots.set(slot, member);
+            return;
+        }
+
+        Member current = slots.get(slot);
+        if (!sameAvatar(current.getAvatar(), member.getAvatar()) || current.isHost() != member.isHost()) {
+            slots.set(slot, member);
+            return;
+        }
+        current.setScore(member.getScore().get());
+        current.setStatus(member.getStatus());
+        current.setAnswer(member.getAnswer().get());
+    }
+
+    private int slotOf(String username) {
+        for (int i = 0; i < MAX_MEMBERS; i++) {
+            Member member = slots.get(i);
+            if (member != null && Objects.equals(member.getUsername(), username)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean sameAvatar(Avatar a, Avatar b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return a.getHat() == b.getHat() && a.getAccessory() == b.getAccessory() && a.getEyes() == b.getEyes();
+    }
+}
@@ -1,6 +1,7 @@
 package quinzical.model;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import javafx.beans.property.SimpleBooleanProperty;
 
@@ -8,10 +9,11 @@ import javafx.beans.property.SimpleBooleanProperty;
  * MultiplayerGame class
  */
 public class MultiplayerGame extends QuinzicalGame {
-    private ArrayList<Member> members;
+    private LobbyMembers members;
     private boolean isHost;
 
     private Integer code;
+    private String resumeToken;
     private Member local;
     private boolean hasStarted;
     private boolean roundOver;
@@ -23,7 +25,7 @@ public class MultiplayerGame extends QuinzicalGame {
      * Singleton constructor
      */
     private MultiplayerGame() {
-        members = new ArrayList<Member>();
+        members = new LobbyMembers();
         hasStarted = false;
         roundOver = true;
     }
@@ -48,17 +50,18 @@ public class MultiplayerGame extends QuinzicalGame {
         instance.code = code;
         instance.isHost = user.isHost();
         instance.local = user;
-        instance.members.add(instance.local);
+        instance.members.reset(Arrays.asList(instance.local), -1);
         instance.mayProgress = new SimpleBooleanProperty(instance.roundOver && instance.isHost);
     }
 
     /**
-     * Update the members list of the lobby
+     * Update the members list of the lobby from a full list of the members which
+     * is not numbered
      * 
      * @param members
      */
     public void updateMembers(ArrayList<Member> members) {
-        this.members = members;
+        this.members.reset(members, this.members.getSequence());
     }
 
     /**
@@ -66,6 +69,14 @@ public class MultiplayerGame extends QuinzicalGame {
      * @return the members of the lobby
      */
     public ArrayList<Member> getMembers() {
+        return members.getMembers();
+    }
+
+    /**
+     * 
+     * @return the members of the lobby, by slot
+     */
+    public LobbyMembers getMemberStore() {
         return members;
     }
 
@@ -87,6 +98,33 @@ public class MultiplayerGame extends QuinzicalGame {
         return code;
     }
 
+    /**
+     * Set the token the server gave for resuming the logged in user's place in
+     * the lobby if the connection drops
+     * 
+     * @param resumeToken the token, or null once the place is given up
+     */
+    public void setResumeToken(String resumeToken) {
+        this.resumeToken = resumeToken;
+    }
+
+    /**
+     * 
+     * @return the token to resume the logged in user's place in the lobby with,
+     *         or null if there is no place to resume
+     */
+    public String getResumeToken() {
+        return resumeToken;
+    }
+
+    /**
+     * 
+     * @return the username of the logged in user
+     */
+    public String getLocalUsername() {
+        return local.getUsername();
+    }
+
     /**
      * 
      * @return whether the logged in user is the host of the game
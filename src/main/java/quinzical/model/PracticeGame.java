@@ -49,7 +49,7 @@ public class PracticeGame extends QuinzicalGame {
         currentQuestionAttempts = 0;
         remainingAttempts.set(3);
 
-        setCurrentQuestion(questionBank.getRandomQuestions(currentCategory, 1, true).get(0));
+        setCurrentQuestion(questionBank.getPracticeQuestion(currentCategory));
     }
 
     /**
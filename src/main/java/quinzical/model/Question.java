@@ -3,16 +3,20 @@ package quinzical.model;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleStringProperty;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.UUID;
 
-import org.apache.xmlbeans.impl.common.Levenshtein;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import quinzical.util.AnswerMatcher;
+import quinzical.util.StateCodec;
+
 /**
  * Question model representing a question in the game
  */
@@ -20,6 +24,8 @@ public class Question implements Serializable {
 
     private static final long serialVersionUID = -1945949962117279881L;
 
+    private static final int FORMAT_VERSION = 1;
+
     private String id;
 
     private transient SimpleIntegerProperty difficulty;
@@ -31,6 +37,8 @@ public class Question implements Serializable {
 
     private String answerStatus = "Didnt Answer";
 
+    private transient AnswerMatcher matcher;
+
     /**
      * Constructor without id
      * 
@@ -69,6 +77,7 @@ public class Question implements Serializable {
      * @param q
      */
     public Question(Question q) {
+        this.id = q.id;
         this.difficulty = q.difficulty;
         this.question = q.question;
         this.questionPrefix = q.questionPrefix;
@@ -118,25 +127,18 @@ public class Question implements Serializable {
      * @return Whether the answer was correct
      */
     public Answer checkAnswer(String input) {
-        String[] possibleAnswers = answer.get().split("/");
-
-        for (String answer : possibleAnswers) {
-            int distance = Levenshtein.distance(sanitise(input), sanitise(answer));
-
-            if (distance == 0) {
-                answerStatus = "Correct";
-                return Answer.CORRECT;
-            } else if (distance < 3) {
-                return Answer.TYPO;
-            }
+        // The accepted answers are normalised once, the first time they are needed
+        if (matcher == null) {
+            matcher = new AnswerMatcher(answer.get());
         }
-        answerStatus = "Incorrect";
-        return Answer.INCORRECT;
-    }
 
-    private String sanitise(String str) {
-        // str = Normalizer.normalize(str, Normalizer.Form.NFKD);
-        return str.toLowerCase().replaceAll("\\s+", "");
+        Answer result = matcher.match(input);
+        if (result == Answer.CORRECT) {
+            answerStatus = "Correct";
+        } else if (result == Answer.INCORRECT) {
+            answerStatus = "Incorrect";
+        }
+        return result;
     }
 
     /**
@@ -150,6 +152,15 @@ public class Question implements Serializable {
         return answerStatus;
     }
 
+    /**
+     * Sets the answer status, used when a game is restored
+     * 
+     * @param status
+     */
+    void setAnswerStatus(String status) {
+        answerStatus = status;
+    }
+
     /**
      * Save the question to a string. This is useful for saving the question to a
      * file
@@ -205,6 +216,41 @@ public class Question implements Serializable {
         answer = new SimpleStringProperty(answerS);
     };
 
+    /**
+     * Write the question in the binary state format
+     * 
+     * @param out the output to write it to
+     * @throws IOException
+     * @see quinzical.util.StateCodec
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeShort(FORMAT_VERSION);
+        StateCodec.writeId(out, id);
+        out.writeInt(difficulty.get());
+        StateCodec.writeString(out, question.get());
+        StateCodec.writeString(out, questionPrefix.get());
+        StateCodec.writeString(out, answer.get());
+        out.writeBoolean(isAnswered);
+        StateCodec.writeString(out, answerStatus);
+    }
+
+    /**
+     * Read a question written by write
+     * 
+     * @param in the input to read it from
+     * @return the question
+     * @throws IOException
+     */
+    public static Question read(DataInput in) throws IOException {
+        StateCodec.readVersion(in, FORMAT_VERSION, "Question");
+
+        Question q = new Question(StateCodec.readId(in), in.readInt(), StateCodec.readString(in),
+                StateCodec.readString(in), StateCodec.readString(in));
+        q.isAnswered = in.readBoolean();
+        q.answerStatus = StateCodec.readString(in);
+        return q;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -236,6 +282,7 @@ public class Question implements Serializable {
     public JSONObject toJSONObject() {
         JSONObject obj = new JSONObject();
         try {
+            obj.put("id", id);
             obj.put("difficulty", difficulty.getValue());
             obj.put("question", question.getValue());
             obj.put("questionPrefix", questionPrefix.getValue());
@@ -258,8 +305,13 @@ public class Question implements Serializable {
             // if this raises an error, there is a good chance that you need to convert the
             // argument to a string before passing
             JSONObject obj = new JSONObject(raw);
-            return new Question(obj.getInt("difficulty"), obj.getString("question"), obj.getString("questionPrefix"),
-                    obj.getString("answer"));
+            String id = obj.optString("id", null);
+            if (id == null) {
+                return new Question(obj.getInt("difficulty"), obj.getString("question"),
+                        obj.getString("questionPrefix"), obj.getString("answer"));
+            }
+            return new Question(id, obj.getInt("difficulty"), obj.getString("question"),
+                    obj.getString("questionPrefix"), obj.getString("answer"));
         } catch (JSONException e) {
             e.printStackTrace();
             return null;
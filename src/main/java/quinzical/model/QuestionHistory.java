@@ -0,0 +1,229 @@
+package quinzical.model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import quinzical.util.StateCodec;
+
+/**
+ * The user's history with each question: how many times it was attempted and
+ * answered correctly, when it was last seen, and whether it has already come up
+ * in the current practice cycle. Stats are kept in primitive arrays indexed by
+ * a dense question index. A question is given the next index the first time
+ * the question scheduler asks for it, and keeps it from then on, so the
+ * history never needs the whole question bank at once.
+ */
+public class QuestionHistory implements Serializable {
+
+    private static final long serialVersionUID = 6105227784129904416L;
+
+    private static final int FORMAT_VERSION = 1;
+
+    private String[] ids;
+
+    private int[] attempts;
+
+    private int[] correct;
+
+    private long[] lastSeen;
+
+    private boolean[] practiced;
+
+    /**
+     * No longer used: questions are seeded one at a time as they are added. Kept
+     * so histories saved with it can still be read.
+     */
+    private boolean seeded;
+
+    /**
+     * The index of each question by id, built the first time it is needed
+     */
+    private transient HashMap<String, Integer> indexOf;
+
+    /**
+     * Creates an empty history
+     */
+    public QuestionHistory() {
+        ids = new String[0];
+        attempts = new int[0];
+        correct = new int[0];
+        lastSeen = new long[0];
+        practiced = new boolean[0];
+    }
+
+    /**
+     * Find the dense index of each of the given questions. Questions which are
+     * not in the history yet are added to the end of it, with no history.
+     *
+     * @param questionIds the ids of the questions
+     * @return the index of each question. The questions which were added are the
+     *         ones with an index of at least the size before this was called.
+     */
+    public int[] indexOf(String[] questionIds) {
+        if (indexOf == null) {
+            indexOf = new HashMap<String, Integer>(ids.length * 4 / 3 + 1);
+            for (int i = 0; i < ids.length; i++) {
+                indexOf.put(ids[i], i);
+            }
+        }
+
+        int[] indices = new int[questionIds.length];
+        int size = ids.length;
+        for (int i = 0; i < questionIds.length; i++) {
+            Integer index = indexOf.get(questionIds[i]);
+            if (index == null) {
+                index = size++;
+                indexOf.put(questionIds[i], index);
+            }
+            indices[i] = index;
+        }
+
+        if (size > ids.length) {
+            // Grow once for every question added
+            int oldSize = ids.length;
+            ids = Arrays.copyOf(ids, size);
+            attempts = Arrays.copyOf(attempts, size);
+            correct = Arrays.copyOf(correct, size);
+            lastSeen = Arrays.copyOf(lastSeen, size);
+            practiced = Arrays.copyOf(practiced, size);
+            for (int i = 0; i < questionIds.length; i++) {
+                if (indices[i] >= oldSize) {
+                    ids[indices[i]] = questionIds[i];
+                }
+            }
+        }
+        return indices;
+    }
+
+    /**
+     *
+     * @return the number of questions in the history
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     *
+     * @param index the dense index of a question
+     * @return the id of the question
+     */
+    public String getId(int index) {
+        return ids[index];
+    }
+
+    /**
+     *
+     * @param index the dense index of a question
+     * @return how many times the question has been attempted
+     */
+    public int getAttempts(int index) {
+        return attempts[index];
+    }
+
+    /**
+     *
+     * @param index the dense index of a question
+     * @return how many times the question has been answered correctly
+     */
+    public int getCorrect(int index) {
+        return correct[index];
+    }
+
+    /**
+     *
+     * @param index the dense index of a question
+     * @return when the question was last attempted, in epoch milliseconds, or 0
+     *         if never
+     */
+    public long getLastSeen(int index) {
+        return lastSeen[index];
+    }
+
+    /**
+     *
+     * @param index the dense index of a question
+     * @return whether the question has come up in the current practice cycle
+     */
+    public boolean isPracticed(int index) {
+        return practiced[index];
+    }
+
+    /**
+     * Set whether the question has come up in the current practice cycle
+     *
+     * @param index     the dense index of a question
+     * @param practiced
+     */
+    public void setPracticed(int index, boolean practiced) {
+        this.practiced[index] = practiced;
+    }
+
+    /**
+     * Write the history in the binary state format
+     *
+     * @param out the output to write it to
+     * @throws IOException
+     * @see quinzical.util.StateCodec
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeShort(FORMAT_VERSION);
+        out.writeBoolean(seeded);
+        out.writeInt(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            StateCodec.writeId(out, ids[i]);
+            out.writeInt(attempts[i]);
+            out.writeInt(correct[i]);
+            out.writeLong(lastSeen[i]);
+            out.writeBoolean(practiced[i]);
+        }
+    }
+
+    /**
+     * Read a history written by write
+     *
+     * @param in the input to read it from
+     * @return the history
+     * @throws IOException
+     */
+    public static QuestionHistory read(DataInput in) throws IOException {
+        StateCodec.readVersion(in, FORMAT_VERSION, "QuestionHistory");
+
+        QuestionHistory history = new QuestionHistory();
+        history.seeded = in.readBoolean();
+
+        int size = in.readInt();
+        history.ids = new String[size];
+        history.attempts = new int[size];
+        history.correct = new int[size];
+        history.lastSeen = new long[size];
+        history.practiced = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            history.ids[i] = StateCodec.readId(in);
+            history.attempts[i] = in.readInt();
+            history.correct[i] = in.readInt();
+            history.lastSeen[i] = in.readLong();
+            history.practiced[i] = in.readBoolean();
+        }
+        return history;
+    }
+
+    /**
+     * Record an attempt at a question
+     *
+     * @param index     the dense index of the question
+     * @param isCorrect whether the attempt was correct
+     * @param time      the time of the attempt, in epoch milliseconds
+     */
+    public void record(int index, boolean isCorrect, long time) {
+        attempts[index]++;
+        if (isCorrect) {
+            correct[index]++;
+        }
+        lastSeen[index] = time;
+    }
+}
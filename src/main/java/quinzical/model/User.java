@@ -1,13 +1,22 @@
 package quinzical.model;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import quinzical.util.IOManager;
 import quinzical.util.QuestionBank;
 import quinzical.util.State;
+import quinzical.util.StateCodec;
 import quinzical.util.UserConnect;
 
 /**
@@ -19,11 +28,15 @@ public class User implements Serializable {
 
     private static final long serialVersionUID = -4964840915298617866L;
 
+    private static final int FORMAT_VERSION = 1;
+
     private static User user;
 
     private HashMap<Reward, Integer> _rewards = new HashMap<Reward, Integer>();
 
-    private HashMap<String, List<String>> unattemptedQuestions;
+    private HashMap<String, Set<String>> unattemptedQuestions;
+
+    private QuestionHistory questionHistory;
 
     private int numberAttemptedCategories;
 
@@ -81,12 +94,14 @@ public class User implements Serializable {
         QuestionBank questionBank = QuestionBank.getInstance();
         ArrayList<Category> categories = questionBank.getCategories();
 
-        unattemptedQuestions = new HashMap<String, List<String>>();
+        unattemptedQuestions = new HashMap<String, Set<String>>();
 
         for (Category category : categories) {
-            unattemptedQuestions.put(category.getName(), category.getQuestionIds());
+            unattemptedQuestions.put(category.getName(), new HashSet<String>(category.getQuestionIds()));
         }
 
+        questionHistory = new QuestionHistory();
+
         _rewards.put(Reward.Diamond, 0);
         _rewards.put(Reward.Platinum, 0);
         _rewards.put(Reward.Gold, 0);
@@ -94,6 +109,114 @@ public class User implements Serializable {
         _rewards.put(Reward.Bronze, 0);
     }
 
+    /**
+     * Constructor for a user read from the binary state format
+     * 
+     * @param in      the input to read the user from
+     * @param version the format version the user was written with
+     * @throws IOException
+     */
+    private User(DataInput in, int version) throws IOException {
+        int rewardCount = in.readInt();
+        for (int i = 0; i < rewardCount; i++) {
+            Reward reward = StateCodec.readEnum(in, Reward.class);
+            int count = in.readInt();
+            if (reward != null) {
+                _rewards.put(reward, count);
+            }
+        }
+
+        int categoryCount = in.readInt();
+        if (categoryCount >= 0) {
+            unattemptedQuestions = new HashMap<String, Set<String>>();
+            for (int i = 0; i < categoryCount; i++) {
+                String category = in.readUTF();
+                int idCount = in.readInt();
+                Set<String> ids = new HashSet<String>(idCount * 4 / 3 + 1);
+                for (int j = 0; j < idCount; j++) {
+                    ids.add(StateCodec.readId(in));
+                }
+                unattemptedQuestions.put(category, ids);
+            }
+        }
+
+        questionHistory = QuestionHistory.read(in);
+        numberAttemptedCategories = in.readInt();
+        internationalUnlocked = in.readBoolean();
+        coins = in.readInt();
+        totalCoins = in.readInt();
+        avatar = Avatar.read(in);
+
+        int itemCount = in.readInt();
+        ownedItems = new ArrayList<String>(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            ownedItems.add(in.readUTF());
+        }
+
+        prefWidth = in.readDouble();
+        prefHeight = in.readDouble();
+        name = StateCodec.readString(in);
+        token = StateCodec.readString(in);
+    }
+
+    /**
+     * Write the user in the binary state format
+     * 
+     * @param out the output to write it to
+     * @throws IOException
+     * @see quinzical.util.StateCodec
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeShort(FORMAT_VERSION);
+
+        out.writeInt(_rewards.size());
+        for (Map.Entry<Reward, Integer> entry : _rewards.entrySet()) {
+            StateCodec.writeEnum(out, entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+
+        if (unattemptedQuestions == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(unattemptedQuestions.size());
+            for (Map.Entry<String, Set<String>> entry : unattemptedQuestions.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (String id : entry.getValue()) {
+                    StateCodec.writeId(out, id);
+                }
+            }
+        }
+
+        getQuestionHistory().write(out);
+        out.writeInt(numberAttemptedCategories);
+        out.writeBoolean(internationalUnlocked);
+        out.writeInt(coins);
+        out.writeInt(totalCoins);
+        (avatar == null ? new Avatar() : avatar).write(out);
+
+        out.writeInt(ownedItems.size());
+        for (String item : ownedItems) {
+            out.writeUTF(item);
+        }
+
+        out.writeDouble(prefWidth.doubleValue());
+        out.writeDouble(prefHeight.doubleValue());
+        StateCodec.writeString(out, name);
+        StateCodec.writeString(out, token);
+    }
+
+    /**
+     * Read a user written by write
+     * 
+     * @param in the input to read it from
+     * @return the user
+     * @throws IOException
+     */
+    public static User read(DataInput in) throws IOException {
+        return new User(in, StateCodec.readVersion(in, FORMAT_VERSION, "User"));
+    }
+
     /**
      * Getter for user rewards
      * 
@@ -157,9 +280,9 @@ public class User implements Serializable {
      * @param id       the id of the specific question to remove
      */
     public void attemptQuestion(String category, String id) {
-        unattemptedQuestions.get(category).remove(id);
+        Set<String> unattempted = unattemptedQuestions.get(category);
 
-        if (unattemptedQuestions.get(category).isEmpty()) {
+        if (unattempted != null && unattempted.remove(id) && unattempted.isEmpty()) {
             numberAttemptedCategories++;
         }
 
@@ -168,6 +291,37 @@ public class User implements Serializable {
         }
     }
 
+    /**
+     * Checks whether the user has attempted a question
+     * 
+     * @param category the category of the question
+     * @param id       the id of the question
+     * @return true if the question is in a category the user started with and the
+     *         user has attempted it
+     */
+    public boolean hasAttempted(String category, String id) {
+        Set<String> unattempted = unattemptedQuestions.get(category);
+        return unattempted != null && !unattempted.contains(id);
+    }
+
+    /**
+     * @return the user's history with each question, used to schedule questions
+     */
+    public QuestionHistory getQuestionHistory() {
+        if (questionHistory == null) {
+            // users saved before the history was kept
+            questionHistory = new QuestionHistory();
+        }
+        return questionHistory;
+    }
+
+    /**
+     * Saves the user after the question history has been updated
+     */
+    public void saveQuestionHistory() {
+        persist();
+    }
+
     /**
      * Adds the given amount of coins to the users coins
      * 
@@ -371,4 +525,24 @@ public class User implements Serializable {
         return name;
     }
 
+    /**
+     * Read the user. Users saved before unattempted questions were kept in sets
+     * stored them in lists, so convert them.
+     * 
+     * @param in the input stream
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+
+        if (unattemptedQuestions != null) {
+            for (Map.Entry entry : ((Map<String, ?>) unattemptedQuestions).entrySet()) {
+                if (!(entry.getValue() instanceof Set)) {
+                    entry.setValue(new HashSet<String>((Collection<String>) entry.getValue()));
+                }
+            }
+        }
+    }
 }
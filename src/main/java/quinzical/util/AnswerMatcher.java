@@ -0,0 +1,244 @@
+package quinzical.util;
+
+import java.util.Arrays;
+
+import quinzical.model.Answer;
+
+/**
+ * Checks user input against the accepted answers of a question. The accepted
+ * answers are split on '/' and normalised once, when the matcher is created.
+ * Checking an answer normalises the input (see AnswerNormaliser) into a reused
+ * buffer and then
+ * computes a bounded edit distance against each accepted answer, giving up as
+ * soon as the distance is known to exceed the typo threshold. Checking does not
+ * allocate once the buffers have grown to fit the input.
+ *
+ * @author Alexander Nicholson
+ */
+public class AnswerMatcher {
+
+    /**
+     * Answers within this many edits of an accepted answer are treated as typos
+     */
+    public static final int MAX_TYPO_DISTANCE = 2;
+
+    private final AnswerNormaliser normaliser;
+
+    private final char[][] alternatives;
+
+    /**
+     * For each alternative, its distinct characters in sorted order, and for each
+     * of those characters a bit mask of the positions it occurs at. Used by the
+     * bit-parallel distance.
+     */
+    private final char[][] maskKeys;
+
+    private final long[][] masks;
+
+    private char[] input = new char[32];
+
+    private int[] previousRow = new int[0];
+
+    private int[] currentRow = new int[0];
+
+    /**
+     * Creates a matcher for an answer using the default normalisation
+     *
+     * @param answer the accepted answers, separated by '/'
+     */
+    public AnswerMatcher(String answer) {
+        this(answer, AnswerNormaliser.getDefault());
+    }
+
+    /**
+     * Creates a matcher for an answer
+     *
+     * @param answer     the accepted answers, separated by '/'
+     * @param normaliser how to normalise the answers and the user's input
+     */
+    public AnswerMatcher(String answer, AnswerNormaliser normaliser) {
+        this.normaliser = normaliser;
+        String[] parts = answer.split("/");
+        alternatives = new char[parts.length][];
+        maskKeys = new char[parts.length][];
+        masks = new long[parts.length][];
+        for (int i = 0; i < parts.length; i++) {
+            alternatives[i] = normaliser.normalise(parts[i]);
+            if (alternatives[i].length <= 64) {
+                buildMasks(i);
+            }
+        }
+    }
+
+    /**
+     * Builds the position masks of an alternative
+     *
+     * @param alt the index of the alternative
+     */
+    private void buildMasks(int alt) {
+        char[] pattern = alternatives[alt];
+        char[] keys = pattern.clone();
+        Arrays.sort(keys);
+
+        int distinct = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (i == 0 || keys[i] != keys[i - 1]) {
+                keys[distinct++] = keys[i];
+            }
+        }
+        keys = Arrays.copyOf(keys, distinct);
+
+        long[] bits = new long[distinct];
+        for (int i = 0; i < pattern.length; i++) {
+            bits[Arrays.binarySearch(keys, pattern[i])] |= 1L << i;
+        }
+        maskKeys[alt] = keys;
+        masks[alt] = bits;
+    }
+
+    /**
+     * Checks an answer
+     *
+     * @param userInput the user's answer
+     * @return CORRECT if it matches an accepted answer exactly, TYPO if it is
+     *         within MAX_TYPO_DISTANCE edits of one, otherwise INCORRECT
+     */
+    public Answer match(CharSequence userInput) {
+        int length = normaliseInput(userInput);
+
+        boolean typo = false;
+        for (int alt = 0; alt < alternatives.length; alt++) {
+            int distance = distance(input, length, alt, MAX_TYPO_DISTANCE);
+            if (distance == 0) {
+                return Answer.CORRECT;
+            } else if (distance <= MAX_TYPO_DISTANCE) {
+                typo = true;
+            }
+        }
+        return typo ? Answer.TYPO : Answer.INCORRECT;
+    }
+
+    /**
+     * Normalises the user input into the input buffer
+     *
+     * @param s the user input
+     * @return the number of characters in the buffer
+     */
+    private int normaliseInput(CharSequence s) {
+        if (input.length < s.length()) {
+            input = new char[Math.max(s.length(), input.length * 2)];
+        }
+        return normaliser.normalise(s, input);
+    }
+
+    /**
+     * Computes the edit distance between two strings, up to a limit
+     *
+     * @param a       the first string
+     * @param aLength the number of characters of a to use
+     * @param alt     the index of the alternative to compare against
+     * @param limit   the largest distance of interest
+     * @return the edit distance, or limit + 1 if it is greater than limit
+     */
+    private int distance(char[] a, int aLength, int alt, int limit) {
+        char[] b = alternatives[alt];
+        if (Math.abs(aLength - b.length) > limit) {
+            return limit + 1;
+        }
+        if (aLength == 0 || b.length == 0) {
+            return Math.max(aLength, b.length);
+        }
+        if (b.length <= 64) {
+            return myers(a, aLength, b.length, maskKeys[alt], masks[alt], limit);
+        }
+        return banded(a, aLength, b, limit);
+    }
+
+    /**
+     * Myers' bit-parallel edit distance. The pattern (at most 64 characters) is
+     * kept in the bits of a long, so each character of a is processed in a
+     * constant number of word operations. Stops early once the remaining
+     * characters could not bring the distance back within the limit.
+     */
+    private static int myers(char[] a, int aLength, int m, char[] keys, long[] bits, int limit) {
+        long last = 1L << (m - 1);
+        long vp = m == 64 ? -1L : (1L << m) - 1;
+        long vn = 0;
+        int score = m;
+
+        for (int j = 0; j < aLength; j++) {
+            // Bit i is set where the pattern matches the current character of a
+            int key = Arrays.binarySearch(keys, a[j]);
+            long eq = key >= 0 ? bits[key] : 0;
+
+            long xv = eq | vn;
+            long xh = (((eq & vp) + vp) ^ vp) | eq;
+            long hp = vn | ~(xh | vp);
+            long hn = vp & xh;
+
+            if ((hp & last) != 0) {
+                score++;
+            } else if ((hn & last) != 0) {
+                score--;
+            }
+
+            // Each remaining character can lower the score by at most one
+            if (score - (aLength - j - 1) > limit) {
+                return limit + 1;
+            }
+
+            hp = (hp << 1) | 1;
+            hn = hn << 1;
+            vp = hn | ~(xv | hp);
+            vn = hp & xv;
+        }
+        return score <= limit ? score : limit + 1;
+    }
+
+    /**
+     * Ukkonen's banded edit distance for patterns too long for myers. Only cells
+     * within limit of the diagonal are computed, and the computation stops as
+     * soon as every cell in a row exceeds the limit.
+     */
+    private int banded(char[] a, int aLength, char[] b, int limit) {
+        int n = b.length;
+        if (previousRow.length < n + 1) {
+            previousRow = new int[n + 1];
+            currentRow = new int[n + 1];
+        }
+        int over = limit + 1;
+
+        for (int j = 0; j <= n; j++) {
+            previousRow[j] = j <= limit ? j : over;
+        }
+
+        for (int i = 1; i <= aLength; i++) {
+            int from = Math.max(1, i - limit);
+            int to = Math.min(n, i + limit);
+
+            currentRow[0] = i <= limit ? i : over;
+            if (from > 1) {
+                currentRow[from - 1] = over;
+            }
+
+            int rowMin = currentRow[0];
+            for (int j = from; j <= to; j++) {
+                int cost = a[i - 1] == b[j - 1] ? 0 : 1;
+                int value = Math.min(Math.min(previousRow[j] + 1, currentRow[j - 1] + 1), previousRow[j - 1] + cost);
+                currentRow[j] = Math.min(value, over);
+                rowMin = Math.min(rowMin, currentRow[j]);
+            }
+            if (to < n) {
+                currentRow[to + 1] = over;
+            }
+            if (rowMin > limit) {
+                return over;
+            }
+
+            int[] tmp = previousRow;
+            previousRow = currentRow;
+            currentRow = tmp;
+        }
+        return Math.min(previousRow[n], over);
+    }
+}
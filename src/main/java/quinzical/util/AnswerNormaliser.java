@@ -0,0 +1,199 @@
+package quinzical.util;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+
+/**
+ * Normalises answers before they are compared. The stages of the pipeline are
+ * chosen with flags:
+ *
+ * <ul>
+ * <li>FOLD_CASE lower cases every character</li>
+ * <li>REMOVE_WHITESPACE removes all whitespace</li>
+ * <li>FOLD_DIACRITICS removes macrons and other accents, so "kākāpō" becomes
+ * "kakapo"</li>
+ * <li>STRIP_ARTICLES removes a leading "the", "a" or "an"</li>
+ * </ul>
+ *
+ * The character mappings are worked out once, when the normaliser is created,
+ * so normalising is a single pass over the input with a table lookup per
+ * character, and can write into a caller's buffer without allocating.
+ *
+ * @author Alexander Nicholson
+ */
+public class AnswerNormaliser {
+
+    public static final int FOLD_CASE = 1;
+
+    public static final int REMOVE_WHITESPACE = 1 << 1;
+
+    public static final int FOLD_DIACRITICS = 1 << 2;
+
+    public static final int STRIP_ARTICLES = 1 << 3;
+
+    /**
+     * Characters up to here (Latin-1, Latin Extended A and B, and the combining
+     * diacritical marks) are mapped through the table, everything else is only
+     * case folded
+     */
+    private static final int TABLE_SIZE = 0x370;
+
+    /**
+     * Marks a character that is removed entirely
+     */
+    private static final char REMOVE = '\0';
+
+    private static final char[][] ARTICLES = { "the".toCharArray(), "an".toCharArray(), "a".toCharArray() };
+
+    private static AnswerNormaliser defaultInstance;
+
+    private final int flags;
+
+    private final char[] table = new char[TABLE_SIZE];
+
+    /**
+     * The normaliser used for answer checking. Leading articles are stripped
+     * unless the quinzical.stripArticles system property is false.
+     *
+     * @return the default normaliser
+     */
+    public static AnswerNormaliser getDefault() {
+        if (defaultInstance == null) {
+            int flags = FOLD_CASE | REMOVE_WHITESPACE | FOLD_DIACRITICS;
+            if (!"false".equals(System.getProperty("quinzical.stripArticles"))) {
+                flags |= STRIP_ARTICLES;
+            }
+            defaultInstance = new AnswerNormaliser(flags);
+        }
+        return defaultInstance;
+    }
+
+    /**
+     * Creates a normaliser
+     *
+     * @param flags the stages to apply, combined with |
+     */
+    public AnswerNormaliser(int flags) {
+        this.flags = flags;
+
+        for (int c = 0; c < TABLE_SIZE; c++) {
+            char mapped = (char) c;
+            if (has(FOLD_DIACRITICS)) {
+                mapped = stripDiacritics(mapped);
+            }
+            if (has(FOLD_CASE) && mapped != REMOVE) {
+                mapped = Character.toLowerCase(mapped);
+            }
+            table[c] = mapped;
+        }
+    }
+
+    /**
+     * Normalises a string into a new array. Used for stored answers, which are
+     * normalised once.
+     *
+     * @param s the string
+     * @return the normalised characters
+     */
+    public char[] normalise(CharSequence s) {
+        char[] out = new char[s.length()];
+        int length = normalise(s, out);
+        return length == out.length ? out : Arrays.copyOf(out, length);
+    }
+
+    /**
+     * Normalises a string into a buffer. Normalising never makes a string longer,
+     * so the buffer must hold at least s.length() characters.
+     *
+     * @param s   the string
+     * @param out the buffer to write to
+     * @return the number of characters written
+     */
+    public int normalise(CharSequence s, char[] out) {
+        int start = has(STRIP_ARTICLES) ? skipArticle(s) : 0;
+        boolean removeWhitespace = has(REMOVE_WHITESPACE);
+
+        int length = 0;
+        for (int i = start; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (removeWhitespace && Character.isWhitespace(c)) {
+                continue;
+            }
+            c = map(c);
+            if (c != REMOVE) {
+                out[length++] = c;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Finds where a string starts once its leading article is skipped. The article
+     * is only skipped if it is a whole word and something follows it, so "A" and
+     * "apple" are left alone.
+     *
+     * @param s the string
+     * @return the index of the first character after the article, or 0 if there
+     *         is no article
+     */
+    private int skipArticle(CharSequence s) {
+        int start = 0;
+        while (start < s.length() && Character.isWhitespace(s.charAt(start))) {
+            start++;
+        }
+
+        for (char[] article : ARTICLES) {
+            int end = start + article.length;
+            if (end >= s.length() || !Character.isWhitespace(s.charAt(end))) {
+                continue;
+            }
+
+            boolean matches = true;
+            for (int i = 0; i < article.length && matches; i++) {
+                matches = Character.toLowerCase(map(s.charAt(start + i))) == article[i];
+            }
+            if (!matches) {
+                continue;
+            }
+
+            for (int i = end; i < s.length(); i++) {
+                if (!Character.isWhitespace(s.charAt(i))) {
+                    return i;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private char map(char c) {
+        if (c < TABLE_SIZE) {
+            return table[c];
+        }
+        return has(FOLD_CASE) ? Character.toLowerCase(c) : c;
+    }
+
+    private boolean has(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    /**
+     * Strips the diacritics from a character by decomposing it. Combining marks on
+     * their own are removed, so input that is already decomposed folds the same
+     * way.
+     *
+     * @param c the character
+     * @return the base character, or REMOVE for a combining mark
+     */
+    private static char stripDiacritics(char c) {
+        if (Character.getType(c) == Character.NON_SPACING_MARK) {
+            return REMOVE;
+        }
+        String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+        for (int i = 1; i < decomposed.length(); i++) {
+            if (Character.getType(decomposed.charAt(i)) != Character.NON_SPACING_MARK) {
+                return c;
+            }
+        }
+        return decomposed.charAt(0);
+    }
+}
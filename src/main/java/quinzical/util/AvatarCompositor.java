@@ -0,0 +1,139 @@
+package quinzical.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import quinzical.App;
+import quinzical.avatar.Cosmetic;
+
+/**
+ * Flattens the layers of a still avatar (the character, then the hat, the
+ * accessory and the eyes) into a single image at the size it is shown at. The
+ * flattened images are cached by combination and size, so every avatar on
+ * screen wearing the same items shares one image, and drawing an avatar is one
+ * image instead of four.
+ *
+ * Animated avatars are not flattened, as each animation is around 240 frames
+ * and a flattened strip would take tens of megabytes per combination. Their
+ * layers are shared through ImageLoader instead.
+ *
+ * @author Alexander Nicholson
+ */
+public class AvatarCompositor {
+
+    private static final String RESOURCE_PATH = "avatar/";
+
+    private static final int MAX_ENTRIES = 32;
+
+    /**
+     * Flattened avatars, from least to most recently used
+     */
+    private static final Map<String, Image> composites = new LinkedHashMap<String, Image>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Image> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * Get the flattened image of an avatar
+     *
+     * @param hat       the hat, or null for none
+     * @param accessory the accessory, or null for none
+     * @param eyes      the eyes, or null for none
+     * @param size      the width and height to draw the avatar at, in pixels
+     * @return the flattened image
+     */
+    public static synchronized Image get(Cosmetic hat, Cosmetic accessory, Cosmetic eyes, int size) {
+        String key = name(hat) + "|" + name(accessory) + "|" + name(eyes) + "|" + size;
+        Image image = composites.get(key);
+        if (image != null) {
+            Metrics.increment("avatar.composite.hit");
+            return image;
+        }
+
+        Metrics.increment("avatar.composite.miss");
+        long start = System.nanoTime();
+        image = composite(size, "char_idle", file(hat), file(accessory), file(eyes));
+        composites.put(key, image);
+        Metrics.recordSince("avatar.composite", start);
+        return image;
+    }
+
+    /**
+     * Draw the layers over each other, in order
+     *
+     * @param size   the width and height of the result
+     * @param layers the file names of the layers, which may be null
+     * @return the flattened image
+     */
+    private static Image composite(int size, String... layers) {
+        int[] pixels = new int[size * size];
+        int[] layerPixels = new int[size * size];
+
+        for (String layer : layers) {
+            if (layer == null) {
+                continue;
+            }
+            // Every layer is drawn on the same square canvas, so scaling them all to
+            // the same size keeps them lined up
+            Image image = new Image(App.class.getResource(RESOURCE_PATH + layer + ".png").toString(), size, size,
+                    true, true, false);
+            PixelReader reader = image.getPixelReader();
+            if (image.isError() || reader == null) {
+                continue;
+            }
+
+            int width = Math.min(size, (int) image.getWidth());
+            int height = Math.min(size, (int) image.getHeight());
+            reader.getPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), layerPixels, 0, size);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int i = y * size + x;
+                    pixels[i] = over(layerPixels[i], pixels[i]);
+                }
+            }
+        }
+
+        WritableImage result = new WritableImage(size, size);
+        PixelWriter writer = result.getPixelWriter();
+        writer.setPixels(0, 0, size, size, PixelFormat.getIntArgbInstance(), pixels, 0, size);
+        return result;
+    }
+
+    /**
+     * Blend a pixel over another, both non-premultiplied ARGB
+     */
+    private static int over(int src, int dst) {
+        int sa = src >>> 24;
+        if (sa == 0xFF) {
+            return src;
+        }
+        if (sa == 0) {
+            return dst;
+        }
+        int da = dst >>> 24;
+        int back = da * (0xFF - sa) / 0xFF;
+        int a = sa + back;
+
+        int r = (((src >> 16) & 0xFF) * sa + ((dst >> 16) & 0xFF) * back) / a;
+        int g = (((src >> 8) & 0xFF) * sa + ((dst >> 8) & 0xFF) * back) / a;
+        int b = ((src & 0xFF) * sa + (dst & 0xFF) * back) / a;
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    private static String name(Cosmetic item) {
+        return item == null ? "-" : item.name();
+    }
+
+    private static String file(Cosmetic item) {
+        return item == null ? null : item.getFile() + "_idle";
+    }
+}
@@ -55,6 +55,12 @@ public class AvatarFactory {
 
     private String ext = ".png";
 
+    /**
+     * Whether the avatar is drawn as one flattened image, which it is unless it
+     * is animated
+     */
+    private boolean flattened;
+
     /**
      * Constructor
      * 
@@ -118,12 +124,19 @@ public class AvatarFactory {
         }
 
         fxFrame = container;
-        container.getChildren().setAll(new ImageView(), new ImageView(), new ImageView(), new ImageView());
+        flattened = !ext.equals(".gif");
 
         fxBaseLayer = new ImageView();
         fxBaseLayer.fitWidthProperty().bind(size);
         fxBaseLayer.fitHeightProperty().bind(size);
 
+        if (flattened) {
+            // The whole avatar is drawn by the base layer, see render
+            fxFrame.getChildren().setAll(fxBaseLayer);
+            render();
+            return;
+        }
+
         fxHatLayer = new ImageView();
         fxHatLayer.fitWidthProperty().bind(size);
         fxHatLayer.fitHeightProperty().bind(size);
@@ -152,34 +165,69 @@ public class AvatarFactory {
         size.set(scale);
     }
 
+    /**
+     * Sets the item the avatar wears in a slot
+     * 
+     * @param item the item, or null for none
+     * @param slot the slot to wear it in
+     */
     public void set(Cosmetic item, Slot slot) {
+        if (apply(item, slot) && flattened) {
+            render();
+        }
+    }
+
+    /**
+     * Sets the item in a slot, and updates its layer if the avatar is animated
+     * 
+     * @return whether the slot changed
+     */
+    private boolean apply(Cosmetic item, Slot slot) {
         switch (slot) {
             case ACCESSORY:
                 if (!(item == savedAccessory)) {
-                    fxBody = setSlot(item);
                     savedAccessory = item;
-                    fxBodyLayer.setImage(fxBody);
+                    if (!flattened) {
+                        fxBody = setSlot(item);
+                        fxBodyLayer.setImage(fxBody);
+                    }
+                    return true;
                 }
                 break;
             case EYES:
                 if (!(item == savedEyes)) {
-                    fxEyes = setSlot(item);
                     savedEyes = item;
-                    fxEyesLayer.setImage(fxEyes);
+                    if (!flattened) {
+                        fxEyes = setSlot(item);
+                        fxEyesLayer.setImage(fxEyes);
+                    }
+                    return true;
                 }
                 break;
             case HAT:
                 if (!(item == savedHat)) {
-                    fxHat = setSlot(item);
                     savedHat = item;
-                    fxHatLayer.setImage(fxHat);
+                    if (!flattened) {
+                        fxHat = setSlot(item);
+                        fxHatLayer.setImage(fxHat);
+                    }
+                    return true;
                 }
                 break;
             default:
                 break;
 
         }
+        return false;
+    }
 
+    /**
+     * Draws a still avatar as a single image, shared with every other avatar
+     * wearing the same items at the same size
+     */
+    private void render() {
+        fxBase = AvatarCompositor.get(savedHat, savedAccessory, savedEyes, size.get());
+        fxBaseLayer.setImage(fxBase);
     }
 
     /**
@@ -202,8 +250,11 @@ public class AvatarFactory {
      * @param avatar the avatar to render
      */
     public void set(Avatar avatar) {
-        set(avatar.getHat(), Slot.HAT);
-        set(avatar.getAccessory(), Slot.ACCESSORY);
-        set(avatar.getEyes(), Slot.EYES);
+        boolean changed = apply(avatar.getHat(), Slot.HAT);
+        changed |= apply(avatar.getAccessory(), Slot.ACCESSORY);
+        changed |= apply(avatar.getEyes(), Slot.EYES);
+        if (changed && flattened) {
+            render();
+        }
     }
 }
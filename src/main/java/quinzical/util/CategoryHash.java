@@ -0,0 +1,74 @@
+package quinzical.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Hashes the questions of a category by their content, so a category can be
+ * named by its hash. Two categories with the same questions have the same
+ * hash, whatever order the questions are in, and changing any part of any
+ * question changes it. The app and the server both hash categories with this,
+ * so the server can check a category it is sent matches the hash it was asked
+ * for.
+ *
+ * The hash is the SHA-256 of each question, ordered by id, as its id,
+ * difficulty, question, prefix and answer, written in hex.
+ *
+ * @author Alexander Nicholson
+ */
+public class CategoryHash {
+
+    private static final String[] FIELDS = { "id", "difficulty", "question", "questionPrefix", "answer" };
+
+    private CategoryHash() { }
+
+    /**
+     * Hash the questions of a category
+     *
+     * @param questions the questions, each as Question.toJSONObject writes it
+     * @return the hash
+     * @throws JSONException if one of the questions is not an object
+     */
+    public static String of(JSONArray questions) throws JSONException {
+        List<JSONObject> sorted = new ArrayList<JSONObject>();
+        for (int i = 0; i < questions.length(); i++) {
+            sorted.add(questions.getJSONObject(i));
+        }
+        sorted.sort(Comparator.comparing(question -> question.optString("id", "")));
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM has SHA-256
+            throw new IllegalStateException(e);
+        }
+        for (JSONObject question : sorted) {
+            for (String field : FIELDS) {
+                // each field is its length and then its bytes, so no two questions
+                // can run together into the same bytes
+                byte[] bytes = question.optString(field, "").getBytes(StandardCharsets.UTF_8);
+                digest.update((byte) (bytes.length >>> 24));
+                digest.update((byte) (bytes.length >>> 16));
+                digest.update((byte) (bytes.length >>> 8));
+                digest.update((byte) bytes.length);
+                digest.update(bytes);
+            }
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
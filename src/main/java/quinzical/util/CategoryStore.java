@@ -0,0 +1,64 @@
+package quinzical.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.json.JSONArray;
+
+import quinzical.model.Category;
+
+/**
+ * The questions of the categories the player has chosen for a lobby, by the
+ * hash of their content. A lobby is created with just the hashes of its
+ * categories, and the server asks for the questions of any it does not already
+ * have, which are sent from here. The stock categories are the same for every
+ * player, so the server usually has them already.
+ *
+ * The questions are kept as JSON, so they can be sent from the socket thread
+ * without touching the categories.
+ *
+ * @author Alexander Nicholson
+ */
+public class CategoryStore {
+
+    private static CategoryStore instance;
+
+    private final Map<String, JSONArray> questions = new ConcurrentHashMap<String, JSONArray>();
+
+    private CategoryStore() { }
+
+    /**
+     * Get the singleton instance of the class
+     *
+     * @return instance
+     */
+    public static synchronized CategoryStore getInstance() {
+        if (instance == null) {
+            instance = new CategoryStore();
+        }
+        return instance;
+    }
+
+    /**
+     * Add a category to the store, if one with the same questions is not in it
+     * already
+     *
+     * @param category the category
+     * @return the hash of the category
+     */
+    public String put(Category category) {
+        String hash = category.getHash();
+        if (!questions.containsKey(hash)) {
+            questions.put(hash, category.toJSONArray());
+        }
+        return hash;
+    }
+
+    /**
+     * @param hash the hash of a category
+     * @return the questions of the category, or null if it is not in the store
+     */
+    public JSONArray get(String hash) {
+        return questions.get(hash);
+    }
+}
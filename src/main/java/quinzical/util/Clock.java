@@ -0,0 +1,22 @@
+package quinzical.util;
+
+/**
+ * A source of time, so that code which measures time can be run against a
+ * clock other than the system's, such as one which is advanced by hand without
+ * JavaFX running.
+ *
+ * @author Alexander Nicholson
+ */
+@FunctionalInterface
+public interface Clock {
+
+    /**
+     * The system's monotonic clock
+     */
+    Clock SYSTEM = System::nanoTime;
+
+    /**
+     * @return the current time in nanoseconds, from an arbitrary origin
+     */
+    long nanoTime();
+}
@@ -0,0 +1,289 @@
+package quinzical.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+
+import javafx.scene.media.AudioClip;
+
+/**
+ * On-disk cache of spoken clues. The clues of a new game are rendered to WAV
+ * files with {@code espeak -w} in the background as soon as the game is
+ * created, so when a clue comes up it can be played straight away instead of
+ * being synthesised. Clues are played by the TTS consumer thread, in turn with
+ * the messages it speaks.
+ *
+ * Files are keyed by a hash of the text, volume and speed, since espeak bakes
+ * the volume and speed into the audio. The cache is bounded in size (32MB by
+ * default, set with {@code -Dquinzical.ttsCacheMB}) and evicts the least
+ * recently played clues first. Recency is kept in the files' modification
+ * times, so it carries over between sessions.
+ *
+ * @author Alexander Nicholson
+ */
+public class ClueAudioCache {
+
+    private static final long MAX_BYTES = Long.getLong("quinzical.ttsCacheMB", 32) * 1024 * 1024;
+
+    private static final String KEY_VERSION = "1";
+
+    private static volatile ClueAudioCache instance;
+
+    private final File directory;
+
+    /**
+     * Size of each cached file, keyed by file name, from least to most recently
+     * used
+     */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+    private long totalBytes;
+
+    private final Set<String> rendering = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService renderer;
+
+    private volatile boolean renderFailed;
+
+    /**
+     * How often play checks whether the clip has finished
+     */
+    private static final long POLL_MILLIS = 15;
+
+    /**
+     * The clip being played, set on the thread playing it and stopped from any
+     * thread
+     */
+    private volatile AudioClip playing;
+
+    /**
+     * Get the singleton instance of the class
+     *
+     * @return instance
+     */
+    public static synchronized ClueAudioCache getInstance() {
+        if (instance == null) {
+            instance = new ClueAudioCache(IOManager.getAudioCacheDirectory());
+        }
+        return instance;
+    }
+
+    /**
+     * Private constructor, which indexes the files already in the cache
+     *
+     * @param directory the directory the cache is kept in
+     */
+    private ClueAudioCache(File directory) {
+        this.directory = directory;
+        directory.mkdirs();
+
+        File[] files = directory.listFiles(File::isFile);
+        if (files != null) {
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+            for (File file : files) {
+                if (file.getName().endsWith(".wav")) {
+                    entries.put(file.getName(), file.length());
+                    totalBytes += file.length();
+                } else {
+                    // Left over from a render that was cut short
+                    file.delete();
+                }
+            }
+        }
+
+        renderer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "quinzical-clue-audio");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Render clues in the background so they are ready to play
+     *
+     * @param clues  the text of each clue
+     * @param volume the volume the clues will be played at
+     * @param speed  the speed the clues will be played at
+     */
+    public void prefetch(List<String> clues, int volume, int speed) {
+        for (String clue : clues) {
+            render(clue, volume, speed);
+        }
+    }
+
+    /**
+     * Find the rendered audio of a clue. If it has not been rendered, it is
+     * rendered in the background for next time.
+     *
+     * @param clue   the text of the clue
+     * @param volume the volume it will be played at
+     * @param speed  the speed it will be played at
+     * @return the audio file, or null if the clue has not been rendered
+     */
+    public File find(String clue, int volume, int speed) {
+        String name = fileName(clue, volume, speed);
+        File file = new File(directory, name);
+
+        synchronized (this) {
+            if (entries.get(name) == null || !file.isFile()) {
+                Metrics.increment("tts.cache.miss");
+                render(clue, volume, speed);
+                return null;
+            }
+        }
+
+        Metrics.increment("tts.cache.hit");
+        renderer.execute(() -> file.setLastModified(System.currentTimeMillis()));
+        return file;
+    }
+
+    /**
+     * Play a rendered clue, and wait until it has finished or been stopped
+     *
+     * @param file    the audio file, from find
+     * @param stopped whether the clue has been stopped, which is checked while it
+     *                plays, since stop can come before the clip has started
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void play(File file, BooleanSupplier stopped) throws InterruptedException {
+        AudioClip clip = new AudioClip(file.toURI().toString());
+        playing = clip;
+        try {
+            if (stopped.getAsBoolean()) {
+                return;
+            }
+            clip.play();
+            while (clip.isPlaying()) {
+                if (stopped.getAsBoolean()) {
+                    clip.stop();
+                    return;
+                }
+                Thread.sleep(POLL_MILLIS);
+            }
+        } finally {
+            playing = null;
+        }
+    }
+
+    /**
+     * Stop the clue that is playing, if the cache has been created. Nothing can
+     * be playing before then, so the cache is not created just to stop it.
+     */
+    public static void stopIfCreated() {
+        ClueAudioCache cache = instance;
+        if (cache != null) {
+            cache.stop();
+        }
+    }
+
+    /**
+     * Stop the clue that is playing, if any
+     */
+    public void stop() {
+        AudioClip clip = playing;
+        if (clip != null) {
+            clip.stop();
+        }
+    }
+
+    /**
+     * Queue a clue to be rendered, unless it is already cached or queued
+     */
+    private void render(String clue, int volume, int speed) {
+        String name = fileName(clue, volume, speed);
+        synchronized (this) {
+            if (renderFailed || entries.containsKey(name) || !rendering.add(name)) {
+                return;
+            }
+        }
+
+        renderer.execute(() -> {
+            long start = System.nanoTime();
+            File temp = new File(directory, name + ".tmp");
+            try {
+                List<String> command = EspeakWorker.command(volume, speed);
+                command.addAll(Arrays.asList("-w", temp.getPath(), clue));
+
+                ProcessBuilder builder = new ProcessBuilder(command);
+                builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+                builder.redirectError(ProcessBuilder.Redirect.DISCARD);
+                Process process = builder.start();
+
+                if (process.waitFor() == 0 && temp.length() > 0) {
+                    File file = new File(directory, name);
+                    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    add(name, file.length());
+                    Metrics.recordSince("tts.cache.render", start);
+                } else {
+                    temp.delete();
+                }
+            } catch (IOException e) {
+                // espeak could not be run, there is no point trying every clue
+                renderFailed = true;
+                e.printStackTrace();
+            } catch (InterruptedException e) {
+                temp.delete();
+            } finally {
+                rendering.remove(name);
+            }
+        });
+    }
+
+    /**
+     * Add a rendered file to the index, evicting the least recently used files
+     * until the cache fits in its bound
+     */
+    private synchronized void add(String name, long size) {
+        Long previous = entries.put(name, size);
+        totalBytes += size - (previous == null ? 0 : previous);
+
+        Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+        while (totalBytes > MAX_BYTES && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            if (entry.getKey().equals(name)) {
+                continue;
+            }
+            new File(directory, entry.getKey()).delete();
+            totalBytes -= entry.getValue();
+            eldest.remove();
+            Metrics.increment("tts.cache.evict");
+        }
+        Metrics.set("tts.cache.bytes", totalBytes);
+    }
+
+    /**
+     * @return the name of the file a clue is cached in
+     */
+    private static String fileName(String clue, int volume, int speed) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(
+                    (KEY_VERSION + "|" + volume + "|" + speed + "|" + clue).getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder name = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                name.append(String.format("%02x", hash[i]));
+            }
+            return name.append(".wav").toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
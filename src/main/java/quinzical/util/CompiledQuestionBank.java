@@ -0,0 +1,95 @@
+package quinzical.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import quinzical.model.Category;
+import quinzical.model.Question;
+
+/**
+ * Reads a question bank produced by QuestionBankCompiler. The file is
+ * memory-mapped and only the category index is read up front; the questions
+ * of a category are decoded the first time that category is accessed.
+ *
+ * @see QuestionBankCompiler for the file layout
+ */
+public class CompiledQuestionBank {
+
+    /**
+     * Memory-map a compiled bank and create its (not yet decoded) categories
+     *
+     * @param file          the compiled bank
+     * @param isUserCreated whether the categories were created by the user
+     * @return the categories in the bank, keyed by name
+     * @throws IOException if the file could not be mapped or is not a compiled
+     *                     bank of a supported version
+     */
+    public static HashMap<String, Category> load(File file, boolean isUserCreated) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.getInt() != QuestionBankCompiler.MAGIC) {
+            throw new IOException(file + " is not a compiled question bank");
+        }
+        int version = buffer.getInt();
+        if (version != QuestionBankCompiler.VERSION) {
+            throw new IOException(file + " has unsupported version " + version);
+        }
+
+        HashMap<String, Category> categories = new HashMap<String, Category>();
+        int categoryCount = buffer.getInt();
+        for (int i = 0; i < categoryCount; i++) {
+            String name = readString(buffer);
+            int questionCount = buffer.getInt();
+            int tableOffset = buffer.getInt();
+
+            categories.put(name, new Category(name, isUserCreated, () -> decode(buffer, tableOffset, questionCount)));
+        }
+        return categories;
+    }
+
+    /**
+     * Decode the questions of one category
+     *
+     * @param mapped        the mapped bank
+     * @param tableOffset   the position of the category's record table
+     * @param questionCount the number of questions in the category
+     * @return the decoded questions
+     */
+    private static List<Question> decode(ByteBuffer mapped, int tableOffset, int questionCount) {
+        // Each category reads through its own view so decoding never disturbs the
+        // position of another reader
+        ByteBuffer buffer = mapped.duplicate();
+        List<Question> questions = new ArrayList<Question>(questionCount);
+
+        for (int i = 0; i < questionCount; i++) {
+            buffer.position(mapped.getInt(tableOffset + 4 * i));
+
+            String id = readString(buffer);
+            int difficulty = buffer.getInt();
+            String question = readString(buffer);
+            String prefix = readString(buffer);
+            String answer = readString(buffer);
+
+            questions.add(new Question(id, difficulty, question, prefix, answer));
+        }
+        return questions;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
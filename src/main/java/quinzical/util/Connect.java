@@ -1,11 +1,33 @@
 package quinzical.util;
 
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 
 import io.socket.client.IO;
 import io.socket.client.Socket;
 import io.socket.emitter.Emitter;
+import io.socket.thread.EventThread;
 import javafx.application.Platform;
+import quinzical.avatar.Cosmetic;
+import quinzical.model.MultiplayerGame;
 import quinzical.model.User;
 
 /**
@@ -14,10 +36,113 @@ import quinzical.model.User;
  * a specific format and socket IO requires them in a different format. This
  * wrapper class allows you to provide callbacks which will work with JavaFX and
  * socket IO
+ *
+ * Messages are decoded on the socket thread as they arrive and queued. The
+ * JavaFX thread is woken once for all the messages queued since it last ran,
+ * rather than once per message, and a burst of messages which supersede each
+ * other (such as several score updates for the same player) is delivered as
+ * just the latest one.
+ *
+ * When the connection drops it is reopened with exponential backoff, and every
+ * listener is kept across the new connection. If the player was in a lobby,
+ * the server is asked to resume their place in it, and replays the events sent
+ * while they were away. If their place could not be resumed, a RESUME_FAILED
+ * message is delivered to its listener instead.
+ *
+ * Each time it connects it offers the server the binary wire format (see
+ * WireCodec). If the server agrees, messages in both directions are sent in
+ * it, and listeners still see the same JSON. Servers which do not answer the
+ * offer are sent JSON as before.
+ *
+ * It also asks whether the server keeps a store of categories by their hash
+ * (see CategoryStore). If it does, lobbies are created with just the hashes of
+ * their categories, and the questions of any the server asks for are sent to
+ * it from here.
  */
 public class Connect {
+    /**
+     * The message delivered when the player's place in a lobby could not be
+     * resumed after the connection dropped
+     */
+    public static final String RESUME_FAILED = "RESUME_FAILED";
+
+    // The first retry is after about half a second, and each one after that waits
+    // twice as long as the last, up to ten seconds
+    private static final long RECONNECT_DELAY = Long.getLong("quinzical.reconnectDelayMs", 500);
+    private static final long RECONNECT_DELAY_MAX = Long.getLong("quinzical.reconnectDelayMaxMs", 10000);
+
+    // How long to wait for the server to answer a resume before giving up on it
+    private static final long RESUME_TIMEOUT = Long.getLong("quinzical.resumeTimeoutMs", 5000);
+
+    // Whether to offer the server the binary wire format
+    private static final boolean WIRE = Boolean.parseBoolean(System.getProperty("quinzical.wire", "true"));
+
     private static Connect instance;
 
+    /**
+     * Decodes the arguments of a message into an event. Runs on the socket
+     * thread.
+     */
+    @FunctionalInterface
+    public interface Decoder<T> {
+        T decode(Object... args) throws JSONException;
+    }
+
+    /**
+     * A decoded message waiting to be delivered on the JavaFX thread
+     */
+    private static class Inbound<T> {
+        private final String type;
+        private final T event;
+        private final Object key;
+        private final Consumer<T> handler;
+        private final long receivedAt;
+
+        private Inbound(String type, T event, Object key, Consumer<T> handler, long receivedAt) {
+            this.type = type;
+            this.event = event;
+            this.key = key;
+            this.handler = handler;
+            this.receivedAt = receivedAt;
+        }
+
+        private void deliver() {
+            handler.accept(event);
+        }
+    }
+
+    private final Queue<Inbound<?>> inbound = new ConcurrentLinkedQueue<Inbound<?>>();
+
+    private final AtomicInteger depth = new AtomicInteger();
+
+    // Whether the JavaFX thread has been asked to deliver the queue and has not
+    // yet started to
+    private final AtomicBoolean pulseScheduled = new AtomicBoolean();
+
+    // Every listener added, by message type, so they can be added to a new socket
+    private final Map<String, Emitter.Listener> listeners = new ConcurrentHashMap<String, Emitter.Listener>();
+
+    // The number the server gave the last lobby event received, which a resume
+    // asks to replay from
+    private volatile long lastEventId;
+
+    // When the connection dropped, or 0 while it is up
+    private volatile long disconnectedAt;
+
+    // When the latest attempt to reconnect started
+    private volatile long reconnectStartedAt;
+
+    // When the resume waiting for an answer was sent, or 0 if none is
+    private final AtomicLong resumeSentAt = new AtomicLong();
+
+    // Encodes messages in the binary wire format once the server has agreed to
+    // it, or null while they are sent as JSON. Only changed on the socket thread,
+    // and only for as long as the connection it was agreed on is up.
+    private volatile WireCodec codec;
+
+    // Whether the server on the current connection keeps categories by their hash
+    private volatile boolean categoryStore;
+
     /**
      * Private constructor
      */
@@ -43,21 +168,229 @@ public class Connect {
      */
     public void forceReconnect() {
         if (socket != null) {
+            socket.off();
             socket.disconnect();
+            disconnected();
+            reconnectStartedAt = System.nanoTime();
         }
         makeConnection();
     }
 
     /**
-     * Establish a connection to the server with the logged in user.
+     * Establish a connection to the server with the logged in user, and add every
+     * listener to it.
      */
     private void makeConnection() {
+        IO.Options options = new IO.Options();
+        // never share a connection with an old socket
+        options.forceNew = true;
+        options.reconnection = true;
+        options.reconnectionDelay = RECONNECT_DELAY;
+        options.reconnectionDelayMax = RECONNECT_DELAY_MAX;
+        options.randomizationFactor = 0.5;
         try {
-            socket = IO.socket("http://13.210.217.144:3000/?token=" + User.getInstance().getToken());
-            socket.connect();
+            socket = IO.socket(UserConnect.BASEURL + "/?token=" + User.getInstance().getToken(), options);
         } catch (URISyntaxException e1) {
             e1.printStackTrace();
+            return;
+        }
+
+        socket.on(Socket.EVENT_DISCONNECT, args -> disconnected());
+        socket.on(Socket.EVENT_RECONNECT_ATTEMPT, args -> {
+            reconnectStartedAt = System.nanoTime();
+            Metrics.increment("connect.reconnect.attempt");
+        });
+        socket.on(Socket.EVENT_CONNECT, args -> connected());
+        socket.on("RESUMED", this::resumed);
+        socket.on("WIRE", args -> {
+            codec = new WireCodec(cosmeticNames());
+            Metrics.increment("connect.wire");
+        });
+        socket.on("CATEGORY_STORE", args -> categoryStore = true);
+        socket.on("CATEGORIES_NEEDED", this::categoriesNeeded);
+        for (Map.Entry<String, Emitter.Listener> listener : listeners.entrySet()) {
+            socket.on(listener.getKey(), listener.getValue());
         }
+        socket.connect();
+    }
+
+    /**
+     * Record that the connection has dropped. Runs on the socket thread.
+     */
+    private void disconnected() {
+        codec = null;
+        categoryStore = false;
+        if (disconnectedAt == 0) {
+            disconnectedAt = System.nanoTime();
+            Metrics.increment("connect.disconnect");
+        }
+    }
+
+    /**
+     * Once the connection is back, ask the server to resume the player's place in
+     * their lobby. Runs on the socket thread, before anything sent while the
+     * connection was down, so the server knows who the player is by the time it
+     * gets those.
+     */
+    private void connected() {
+        codec = null;
+        categoryStore = false;
+        socket.emit("CATEGORY_STORE", new JSONObject());
+        if (WIRE) {
+            JSONObject offer = new JSONObject();
+            try {
+                offer.put("version", WireCodec.VERSION);
+                offer.put("cosmetics", new JSONArray(cosmeticNames()));
+                socket.emit("WIRE", offer);
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+        }
+
+        long since = disconnectedAt;
+        if (since == 0) {
+            return;
+        }
+        Metrics.increment("connect.reconnect");
+        Metrics.recordSince("connect.reconnect.latency", reconnectStartedAt);
+
+        MultiplayerGame game = MultiplayerGame.getInstance();
+        if (game == null || game.getCode() == null || game.getResumeToken() == null) {
+            disconnectedAt = 0;
+            Metrics.recordSince("connect.outage", since);
+            return;
+        }
+
+        JSONObject obj = new JSONObject();
+        try {
+            obj.put("code", game.getCode());
+            obj.put("username", game.getLocalUsername());
+            obj.put("token", game.getResumeToken());
+            obj.put("last", lastEventId);
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        long sentAt = System.nanoTime();
+        resumeSentAt.set(sentAt);
+        socket.emit("RESUME", obj);
+        CompletableFuture.delayedExecutor(RESUME_TIMEOUT, TimeUnit.MILLISECONDS).execute(() -> {
+            if (resumeSentAt.compareAndSet(sentAt, 0)) {
+                resumeFailed();
+            }
+        });
+    }
+
+    /**
+     * The server's answer to a resume. If it worked, the missed events follow it.
+     * Runs on the socket thread.
+     */
+    private void resumed(Object... args) {
+        long sentAt = resumeSentAt.getAndSet(0);
+        if (sentAt == 0) {
+            // it already timed out
+            return;
+        }
+        JSONObject obj = args.length > 0 && args[0] instanceof JSONObject ? (JSONObject) args[0] : new JSONObject();
+        if (!obj.optBoolean("ok")) {
+            resumeFailed();
+            return;
+        }
+        Metrics.recordSince("connect.resume", sentAt);
+        Metrics.recordSince("connect.outage", disconnectedAt);
+        Metrics.add("connect.resume.replayed", obj.optInt("replayed"));
+        disconnectedAt = 0;
+    }
+
+    /**
+     * Give up the player's place in their lobby, and tell whoever listens for
+     * RESUME_FAILED
+     */
+    private void resumeFailed() {
+        Metrics.increment("connect.resume.failed");
+        Metrics.recordSince("connect.outage", disconnectedAt);
+        disconnectedAt = 0;
+        MultiplayerGame game = MultiplayerGame.getInstance();
+        if (game != null) {
+            game.setResumeToken(null);
+        }
+        Emitter.Listener listener = listeners.get(RESUME_FAILED);
+        if (listener != null) {
+            listener.call(new JSONObject());
+        }
+    }
+
+    /**
+     * The server is creating a lobby, and asked for the questions of the
+     * categories it does not have. Runs on the socket thread.
+     */
+    private void categoriesNeeded(Object... args) {
+        try {
+            Object[] decoded = fromWire(args);
+            JSONObject obj = decoded.length > 0 && decoded[0] instanceof JSONObject ? (JSONObject) decoded[0]
+                    : new JSONObject();
+            JSONArray hashes = obj.optJSONArray("hashes");
+
+            JSONArray categories = new JSONArray();
+            for (int i = 0; hashes != null && i < hashes.length(); i++) {
+                String hash = hashes.getString(i);
+                JSONArray questions = CategoryStore.getInstance().get(hash);
+                if (questions == null) {
+                    continue;
+                }
+                JSONObject category = new JSONObject();
+                category.put("hash", hash);
+                category.put("questions", questions);
+                categories.put(category);
+            }
+            Metrics.add("connect.categories.sent", categories.length());
+
+            JSONObject reply = new JSONObject();
+            reply.put("categories", categories);
+            emit("CATEGORIES", reply);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return whether the server keeps categories by their hash, so a lobby can be
+     *         created with just the hashes of its categories
+     */
+    public boolean hasCategoryStore() {
+        return categoryStore;
+    }
+
+    /**
+     * @return the names of the cosmetics, in order, which the wire format sends
+     *         avatars as positions in
+     */
+    private static List<String> cosmeticNames() {
+        List<String> names = new ArrayList<String>();
+        for (Cosmetic cosmetic : Cosmetic.values()) {
+            names.add(cosmetic.name());
+        }
+        return names;
+    }
+
+    /**
+     * Leave the lobby the player is in, if any, so the server does not hold their
+     * place for them to resume.
+     */
+    public void leaveLobby() {
+        MultiplayerGame game = MultiplayerGame.getInstance();
+        if (game == null || game.getCode() == null) {
+            return;
+        }
+        JSONObject obj = new JSONObject();
+        try {
+            obj.put("code", game.getCode());
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        game.setResumeToken(null);
+        emit("LEAVE_LOBBY", obj);
     }
 
     /**
@@ -69,23 +402,121 @@ public class Connect {
      * @param message the callback to run when the message triggers
      */
     public void onMessage(String type, Message message) {
-        socket.off(type);
+        on(type, args -> args, null, args -> message.run(args));
+    }
+
+    /**
+     * Add a listener for a message type which decodes each message on the socket
+     * thread, and handles the decoded event on the JavaFX thread. Adding a
+     * listener will remove any existing listeners on that message type.
+     * 
+     * @param type    the type of message to listen for
+     * @param decoder decodes the arguments of the message into an event
+     * @param handler handles the event on the JavaFX thread
+     */
+    public <T> void on(String type, Decoder<T> decoder, Consumer<T> handler) {
+        on(type, decoder, null, handler);
+    }
 
-        // socket IO uses Emitter.Listener and JavaFX requires runnables. However,
-        // runnables take no parameters, meaning that - to pass the event data to the
-        // callback - we must run a custom callback which takes the right signature of
-        // argument
-        socket.on(type, new Emitter.Listener() {
+    /**
+     * Add a listener for a message type whose messages may supersede each other.
+     * When several events with the same key arrive before the JavaFX thread gets
+     * to them, only the last is handled.
+     * 
+     * @param type    the type of message to listen for
+     * @param decoder decodes the arguments of the message into an event
+     * @param key     the key of an event, or null to never coalesce
+     * @param handler handles the event on the JavaFX thread
+     */
+    public <T> void on(String type, Decoder<T> decoder, Function<T, Object> key, Consumer<T> handler) {
+        Emitter.Listener listener = new Emitter.Listener() {
             @Override
             public void call(Object... args) {
-                Platform.runLater(new Runnable() {
-                    @Override
-                    public void run() {
-                        message.run(args);
-                    }
-                });
+                long receivedAt = System.nanoTime();
+                // events the server can replay are numbered after their data
+                if (args.length > 1 && args[args.length - 1] instanceof Number) {
+                    lastEventId = ((Number) args[args.length - 1]).longValue();
+                }
+                T event;
+                try {
+                    event = decoder.decode(fromWire(args));
+                } catch (JSONException | RuntimeException e) {
+                    e.printStackTrace();
+                    return;
+                }
+                Metrics.recordSince("connect.decode", receivedAt);
+
+                inbound.add(new Inbound<T>(type, event, key == null ? null : key.apply(event), handler, receivedAt));
+                Metrics.set("connect.queue.depth", depth.incrementAndGet());
+                if (pulseScheduled.compareAndSet(false, true)) {
+                    Platform.runLater(Connect.this::deliver);
+                }
             }
-        });
+        };
+        listeners.put(type, listener);
+
+        socket.off(type);
+        socket.on(type, listener);
+    }
+
+    /**
+     * Decode the data of a message sent in the binary wire format back into the
+     * JSON it stands for, so decoders never see the difference
+     */
+    private Object[] fromWire(Object... args) throws JSONException {
+        if (args.length == 0 || !(args[0] instanceof byte[])) {
+            return args;
+        }
+        WireCodec current = codec;
+        if (current == null) {
+            throw new JSONException("Binary message before the wire format was agreed");
+        }
+        byte[] bytes = (byte[]) args[0];
+        long start = System.nanoTime();
+        Object[] decoded = Arrays.copyOf(args, args.length);
+        decoded[0] = current.decode(bytes);
+        Metrics.recordSince("connect.wire.decode", start);
+        Metrics.add("connect.wire.in", bytes.length);
+        return decoded;
+    }
+
+    /**
+     * Deliver every queued event, on the JavaFX thread
+     */
+    private void deliver() {
+        // Clear the flag first, so a message which arrives while delivering
+        // schedules another pulse rather than being missed
+        pulseScheduled.set(false);
+
+        List<Inbound<?>> batch = new ArrayList<Inbound<?>>();
+        for (Inbound<?> next = inbound.poll(); next != null; next = inbound.poll()) {
+            batch.add(next);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        Metrics.set("connect.queue.depth", depth.addAndGet(-batch.size()));
+        Metrics.increment("connect.pulse");
+        Metrics.add("connect.delivered", batch.size());
+
+        // The position of the last event of each type and key in the batch
+        Map<String, Integer> last = new HashMap<String, Integer>();
+        for (int i = 0; i < batch.size(); i++) {
+            Inbound<?> event = batch.get(i);
+            if (event.key != null) {
+                last.put(event.type + "\0" + event.key, i);
+            }
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            Inbound<?> event = batch.get(i);
+            if (event.key != null && last.get(event.type + "\0" + event.key) != i) {
+                Metrics.increment("connect.coalesced");
+                continue;
+            }
+            Metrics.recordSince("connect.latency", event.receivedAt);
+            event.deliver();
+        }
     }
 
     /**
@@ -95,6 +526,25 @@ public class Connect {
      * @param data the data to be included in the message. Should be valid JSON
      */
     public void emit(String type, Object data) {
-        socket.emit(type, data);
+        if (codec == null || !(data instanceof JSONObject)) {
+            socket.emit(type, data);
+            return;
+        }
+        Socket target = socket;
+        // Encode on the socket thread, where the codec is only ever used while the
+        // connection it was agreed on is up. A message sent while it is down is
+        // buffered as JSON, which any connection can read.
+        EventThread.exec(() -> {
+            WireCodec current = codec;
+            if (current == null || !target.connected()) {
+                target.emit(type, data);
+                return;
+            }
+            long start = System.nanoTime();
+            byte[] bytes = current.encode((JSONObject) data);
+            Metrics.recordSince("connect.wire.encode", start);
+            Metrics.add("connect.wire.out", bytes.length);
+            target.emit(type, bytes);
+        });
     }
 }
\ No newline at end of file
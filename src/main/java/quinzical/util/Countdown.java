@@ -0,0 +1,106 @@
+package quinzical.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The state of a countdown, which can be paused and resumed. The time left is
+ * worked out from the clock whenever it is asked for, rather than by adding up
+ * ticks, so it is exact however often (or rarely) it is checked.
+ *
+ * This does not need JavaFX; Timer uses it to drive the timer display.
+ *
+ * @author Alexander Nicholson
+ */
+public class Countdown {
+
+    private final Clock clock;
+
+    private long durationNanos;
+
+    // The time counted before the countdown was last resumed
+    private long elapsedNanos;
+
+    // When the countdown was last started or resumed, if it is running
+    private long resumedAt;
+
+    private boolean running;
+
+    /**
+     * @param clock the clock to count down by
+     */
+    public Countdown(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Start counting down from the beginning
+     *
+     * @param duration the time to count down from
+     * @param unit     the unit of the duration
+     */
+    public void start(long duration, TimeUnit unit) {
+        durationNanos = unit.toNanos(duration);
+        elapsedNanos = 0;
+        resumedAt = clock.nanoTime();
+        running = true;
+    }
+
+    /**
+     * Stop counting, keeping the time counted so far
+     */
+    public void pause() {
+        if (running) {
+            elapsedNanos += clock.nanoTime() - resumedAt;
+            running = false;
+        }
+    }
+
+    /**
+     * Carry on counting from where the countdown was paused
+     */
+    public void resume() {
+        if (!running && elapsedNanos < durationNanos) {
+            resumedAt = clock.nanoTime();
+            running = true;
+        }
+    }
+
+    /**
+     * @return whether the countdown is counting
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return whether all of the time has been counted
+     */
+    public boolean isFinished() {
+        return getRemainingNanos() == 0;
+    }
+
+    /**
+     * @return the time counted so far in nanoseconds, at most the duration
+     */
+    public long getElapsedNanos() {
+        long elapsed = elapsedNanos;
+        if (running) {
+            elapsed += clock.nanoTime() - resumedAt;
+        }
+        return Math.min(elapsed, durationNanos);
+    }
+
+    /**
+     * @return the time left in nanoseconds
+     */
+    public long getRemainingNanos() {
+        return durationNanos - getElapsedNanos();
+    }
+
+    /**
+     * @return the time to count down from in nanoseconds
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+}
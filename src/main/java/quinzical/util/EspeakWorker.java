@@ -0,0 +1,179 @@
+package quinzical.util;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Speaks messages with espeak, with a process started ahead of time for the
+ * next message. Starting espeak and loading a voice takes a noticeable amount
+ * of time, so a spare process is kept waiting on its stdin. A message is
+ * written to the spare, its stdin is closed, and it exits once it has spoken
+ * the message, while a new spare is started for the message after.
+ *
+ * One process per message means speak can wait until its message has been
+ * spoken, and cancel only cuts off the message being spoken.
+ *
+ * espeak takes the volume and speed as arguments, so when they change the
+ * spare is killed and a new one is started with the new settings.
+ *
+ * The command is "espeak" unless the quinzical.tts.command system property is
+ * set, e.g. to a script which logs what it reads from stdin, for testing
+ * without audio. The volume and speed arguments are added after it.
+ *
+ * @author Alexander Nicholson
+ */
+public class EspeakWorker {
+
+    private static final List<String> COMMAND = Arrays
+            .asList(System.getProperty("quinzical.tts.command", "espeak").trim().split("\\s+"));
+
+    /**
+     * The process waiting for the next message
+     */
+    private Process spare;
+
+    private Writer stdin;
+
+    private int volume;
+
+    private int speed;
+
+    /**
+     * The process speaking the current message
+     */
+    private Process speaking;
+
+    /**
+     * Start a process ahead of time if there is not one waiting, so the next
+     * message can be spoken straight away
+     *
+     * @param volume the volume to speak at
+     * @param speed  the speed to speak at
+     */
+    public synchronized void prepare(int volume, int speed) {
+        try {
+            ensureSpare(volume, speed);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Speak a message, and wait until it has been spoken or cancelled. A cancel
+     * can come before the message has been handed to espeak, so the caller says
+     * whether the message has been cancelled, which is checked once it has been.
+     *
+     * @param text      the message
+     * @param volume    the volume to speak at
+     * @param speed     the speed to speak at
+     * @param cancelled whether the message has been cancelled. Must be set before
+     *                  cancel is called.
+     * @throws IOException          if espeak could not be started or written to
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void speak(String text, int volume, int speed, BooleanSupplier cancelled)
+            throws IOException, InterruptedException {
+        Process process;
+        synchronized (this) {
+            ensureSpare(volume, speed);
+            try {
+                write(text);
+            } catch (IOException e) {
+                // The spare died, start a fresh one and try once more
+                kill(spare);
+                spare = null;
+                ensureSpare(volume, speed);
+                write(text);
+            }
+            process = spare;
+            speaking = process;
+            spare = null;
+            stdin = null;
+            if (cancelled.getAsBoolean()) {
+                cancel();
+            }
+            prepare(volume, speed);
+        }
+
+        try {
+            process.waitFor();
+        } finally {
+            synchronized (this) {
+                if (speaking == process) {
+                    speaking = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Build the command to run espeak with
+     *
+     * @param volume the volume to speak at
+     * @param speed  the speed to speak at
+     * @return the command and its arguments, to which the text to speak can be
+     *         added
+     */
+    public static List<String> command(int volume, int speed) {
+        List<String> command = new ArrayList<String>(COMMAND);
+        command.addAll(Arrays.asList("-a", Integer.toString(volume), "-s", Integer.toString(speed)));
+        return command;
+    }
+
+    /**
+     * Give the spare its message, and close its stdin so it exits once it has
+     * spoken it
+     */
+    private void write(String text) throws IOException {
+        stdin.write(text);
+        stdin.close();
+    }
+
+    /**
+     * Stop speaking the current message immediately, so the next one can be
+     * spoken. The spare is left waiting.
+     */
+    public synchronized void cancel() {
+        kill(speaking);
+        speaking = null;
+    }
+
+    /**
+     * Stop a process straight away, along with anything it has not finished
+     * saying
+     */
+    private static void kill(Process process) {
+        if (process != null) {
+            process.destroyForcibly();
+        }
+    }
+
+    /**
+     * Make sure there is a spare process with the given settings
+     */
+    private void ensureSpare(int volume, int speed) throws IOException {
+        if (spare != null && spare.isAlive() && volume == this.volume && speed == this.speed) {
+            return;
+        }
+        kill(spare);
+        spare = null;
+        stdin = null;
+
+        long start = System.nanoTime();
+        ProcessBuilder builder = new ProcessBuilder(command(volume, speed));
+        builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        builder.redirectError(ProcessBuilder.Redirect.DISCARD);
+        spare = builder.start();
+        stdin = new OutputStreamWriter(spare.getOutputStream(), StandardCharsets.UTF_8);
+        this.volume = volume;
+        this.speed = speed;
+
+        Metrics.recordSince("tts.worker.start", start);
+    }
+}
@@ -0,0 +1,103 @@
+package quinzical.util;
+
+/**
+ * A Fenwick (binary indexed) tree of non-negative weights. Supports updating a
+ * weight, summing a range of weights and finding the index a cumulative weight
+ * falls on, all in O(log n). Used for weighted random sampling.
+ *
+ * @author Alexander Nicholson
+ */
+public class FenwickTree {
+
+    private final double[] tree;
+
+    private final double[] values;
+
+    /**
+     * Builds a tree over the given weights in O(n)
+     *
+     * @param weights the initial weights, which are copied
+     */
+    public FenwickTree(double[] weights) {
+        int n = weights.length;
+        values = weights.clone();
+        tree = new double[n + 1];
+        for (int i = 0; i < n; i++) {
+            tree[i + 1] += values[i];
+            int parent = (i + 1) + ((i + 1) & -(i + 1));
+            if (parent <= n) {
+                tree[parent] += tree[i + 1];
+            }
+        }
+    }
+
+    /**
+     * @return the number of weights in the tree
+     */
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * @param index the index of the weight
+     * @return the weight at the index
+     */
+    public double get(int index) {
+        return values[index];
+    }
+
+    /**
+     * Sets the weight at an index
+     *
+     * @param index  the index of the weight
+     * @param weight the new weight, which must not be negative
+     */
+    public void set(int index, double weight) {
+        double delta = weight - values[index];
+        values[index] = weight;
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * @param end the end of the range, exclusive
+     * @return the sum of the weights from 0 up to end
+     */
+    public double prefixSum(int end) {
+        double sum = 0;
+        for (int i = end; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * @param start the start of the range, inclusive
+     * @param end   the end of the range, exclusive
+     * @return the sum of the weights in the range
+     */
+    public double sum(int start, int end) {
+        return prefixSum(end) - prefixSum(start);
+    }
+
+    /**
+     * Finds the index whose weight spans the given cumulative weight, i.e. the
+     * smallest index i for which prefixSum(i + 1) is greater than target.
+     *
+     * @param target a cumulative weight, between 0 and the total weight
+     * @return the index, or size() if target is not less than the total weight
+     */
+    public int find(double target) {
+        int pos = 0;
+        int step = Integer.highestOneBit(Math.max(tree.length - 1, 1));
+        for (; step > 0; step >>= 1) {
+            int next = pos + step;
+            if (next < tree.length && tree[next] <= target) {
+                pos = next;
+                target -= tree[next];
+            }
+        }
+        return pos;
+    }
+}
@@ -0,0 +1,193 @@
+package quinzical.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the events in the game in progress. Rather than
+ * rewriting the whole game each time a clue is opened or answered, the game
+ * appends a small fixed-size record here, and only takes a full snapshot (see
+ * Game.persist) every so often. Each snapshot empties the journal once it is on
+ * disk. When the game is loaded, the records since the last snapshot are
+ * replayed on top of it.
+ *
+ * Every record is RECORD_SIZE bytes:
+ *
+ * <pre>
+ * int type, int a, int b, int value, long gameId, int crc32
+ * </pre>
+ *
+ * Records hold absolute values (the new score, not the points scored) so
+ * replaying a record the snapshot already includes changes nothing. The game id
+ * stops records of an earlier game being replayed onto a new one, and the
+ * checksum stops a record torn by a crash from being replayed; replay stops at
+ * the first record that does not check out.
+ *
+ * Writes happen on the persistence thread, in order with the snapshots. Like
+ * the snapshot (see IOManager.readState), replay never waits for them: records
+ * still to be written are replayed from memory, and a journal which a queued
+ * snapshot will empty is not read at all.
+ *
+ * @author Alexander Nicholson
+ */
+public class GameJournal {
+
+    public static final int RECORD_SIZE = 28;
+
+    /**
+     * A clue was opened: a is the category, b the index of the clue in it
+     */
+    public static final int OPENED = 1;
+
+    /**
+     * A clue was answered: a is the category, b the index of the clue in it and
+     * value the result
+     */
+    public static final int ANSWERED = 2;
+
+    /**
+     * The score changed: value is the new score
+     */
+    public static final int SCORED = 3;
+
+    /**
+     * Time was added: value is the bits of the new total time
+     */
+    public static final int TIMED = 4;
+
+    /**
+     * Receives the records of a journal as it is replayed
+     */
+    @FunctionalInterface
+    public interface Replayer {
+        void apply(int type, int a, int b, int value);
+    }
+
+    private static GameJournal instance;
+
+    /**
+     * The records appended since the last snapshot was queued which have not
+     * been written yet, oldest first. Guarded by this, which is also held while a
+     * record is written so a record is never both on disk and in here.
+     */
+    private final List<byte[]> unwritten = new ArrayList<byte[]>();
+
+    /**
+     * Get the singleton instance of the class
+     *
+     * @return instance
+     */
+    public static GameJournal getInstance() {
+        if (instance == null) {
+            instance = new GameJournal();
+        }
+        return instance;
+    }
+
+    /**
+     * Private constructor
+     */
+    private GameJournal() {
+        // Once a snapshot of the game is on disk, or the game has been cleared,
+        // the journal is no longer needed
+        PersistenceService.getInstance().afterWrite(State.GAME, IOManager::clearGameJournal);
+        // and a snapshot includes every record before it
+        PersistenceService.getInstance().afterQueue(State.GAME, this::supersede);
+    }
+
+    /**
+     * Append a record to the journal. The record is written in the background.
+     *
+     * @param gameId the id of the game the record belongs to
+     * @param type   the type of the record
+     * @param a      the first argument of the record
+     * @param b      the second argument of the record
+     * @param value  the value of the record
+     */
+    public void append(long gameId, int type, int a, int b, int value) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.putInt(type).putInt(a).putInt(b).putInt(value).putLong(gameId);
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, RECORD_SIZE - 4);
+        record.putInt((int) crc.getValue());
+
+        byte[] bytes = record.array();
+        synchronized (this) {
+            unwritten.add(bytes);
+        }
+        PersistenceService.getInstance().execute(() -> write(bytes));
+        Metrics.increment("journal.append");
+    }
+
+    /**
+     * Write a record to the end of the journal. Runs on the persistence thread.
+     */
+    private synchronized void write(byte[] record) {
+        IOManager.appendGameJournal(record);
+        unwritten.remove(record);
+    }
+
+    /**
+     * Forget the records still to be written once a snapshot has been queued,
+     * since the snapshot includes them
+     */
+    private synchronized void supersede() {
+        unwritten.clear();
+    }
+
+    /**
+     * Replay the journal of a game: the records on disk, then the records still
+     * to be written. Must be called after the snapshot of the game has been read.
+     * If that snapshot has not been written yet, the journal on disk is older
+     * than it and will be emptied when it is written, so only the records after
+     * it are replayed.
+     *
+     * @param gameId   the id of the game
+     * @param replayer what to apply each record to
+     * @return the number of records replayed
+     */
+    public int replay(long gameId, Replayer replayer) {
+        long start = System.nanoTime();
+        boolean snapshotQueued = PersistenceService.getInstance().latest(State.GAME) != null;
+
+        ByteBuffer journal;
+        synchronized (this) {
+            byte[] onDisk = snapshotQueued ? new byte[0] : IOManager.readGameJournal();
+            journal = ByteBuffer.allocate(onDisk.length + unwritten.size() * RECORD_SIZE);
+            journal.put(onDisk);
+            for (byte[] record : unwritten) {
+                journal.put(record);
+            }
+            journal.flip();
+        }
+        CRC32 crc = new CRC32();
+
+        int count = 0;
+        while (journal.remaining() >= RECORD_SIZE) {
+            int offset = journal.position();
+            crc.reset();
+            crc.update(journal.array(), offset, RECORD_SIZE - 4);
+
+            int type = journal.getInt();
+            int a = journal.getInt();
+            int b = journal.getInt();
+            int value = journal.getInt();
+            long id = journal.getLong();
+            if (journal.getInt() != (int) crc.getValue()) {
+                // Torn or corrupt record, nothing after it can be trusted
+                break;
+            }
+
+            if (id == gameId) {
+                replayer.apply(type, a, b, value);
+                count++;
+            }
+        }
+
+        Metrics.recordSince("journal.replay", start);
+        return count;
+    }
+}
@@ -2,18 +2,28 @@ package quinzical.util;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import quinzical.model.Category;
 import quinzical.model.Question;
@@ -26,10 +36,15 @@ public class IOManager {
 
     private static final String DATAPATH = "./gamedata";
 
+    private static final boolean PARALLEL_LOAD = !"false".equals(System.getProperty("quinzical.parallelLoad"));
+
     private static enum Path {
         BASE_CATEGORIES("/categories/"),
         USER_CATEGORIES("/user/categories/"),
         USER_DATA("/user/"),
+        BASE_BANK("/categories.qzb"),
+        GAME_JOURNAL("/user/game.journal"),
+        AUDIO_CACHE("/cache/tts/"),
 
         ;
         private String path;
@@ -56,30 +71,9 @@ public class IOManager {
         try {
             // try to load the questions from the file
             if ((new File(directory)).isDirectory()) {
-                File[] files = (new File(directory)).listFiles();
-                for (File file : files) {
-                    if (file.isFile()) {
-                        BufferedReader br = new BufferedReader(new FileReader(file));
-                        String categoryName = file.getName();
-                        Category category = new Category(categoryName, isUserCreated);
-                        String line;
-                        //Iterate over each question
-                        while ((line = br.readLine()) != null) {
-                            try {
-                                String[] parts = line.split("\\|");
-                                String id = parts[0];
-                                int difficulty = Integer.parseInt(parts[1]);
-                                String questionText = parts[2];
-                                String questionPrefix = parts[3];
-                                String answer = parts[4];
-                                Question question = new Question(id, difficulty, questionText, questionPrefix, answer);
-
-                                category.addQuestion(question);
-                            } catch (Exception e) {}
-                        }
-                        br.close();
-                        categoryList.put(categoryName,category);
-                    }
+                File[] files = (new File(directory)).listFiles(File::isFile);
+                for (Category category : parseCategories(files, isUserCreated)) {
+                    categoryList.put(category.getName(), category);
                 }
             }
             // otherwise, make the directory
@@ -93,7 +87,125 @@ public class IOManager {
         return categoryList;
     }
 
+    /**
+     * Parse a set of category files. Unless parallel loading has been disabled
+     * with {@code -Dquinzical.parallelLoad=false} the files are parsed
+     * concurrently on a pool bounded by the number of cores. The time taken to
+     * parse each file is recorded in Metrics.
+     * 
+     * @param files         the category files to parse
+     * @param isUserCreated whether the categories were created by the user
+     * @return the parsed categories, in the same order as the files
+     * @throws IOException if any of the files could not be read
+     */
+    static List<Category> parseCategories(File[] files, boolean isUserCreated) throws IOException {
+        List<Callable<Category>> tasks = new ArrayList<Callable<Category>>();
+        for (File file : files) {
+            tasks.add(() -> {
+                long start = System.nanoTime();
+                Category category = parseCategory(file, isUserCreated);
+                Metrics.recordSince("questions.parse." + file.getName(), start);
+                return category;
+            });
+        }
+
+        List<Category> categories = new ArrayList<Category>();
+        try {
+            if (!PARALLEL_LOAD || tasks.size() < 2) {
+                for (Callable<Category> task : tasks) {
+                    categories.add(task.call());
+                }
+                return categories;
+            }
+
+            int workers = Math.min(tasks.size(), Runtime.getRuntime().availableProcessors());
+            ForkJoinPool pool = new ForkJoinPool(workers);
+            try {
+                for (Future<Category> result : pool.invokeAll(tasks)) {
+                    categories.add(result.get());
+                }
+            } finally {
+                pool.shutdown();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading categories", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } catch (Exception e) {
+            throw unwrap(e);
+        }
+        return categories;
+    }
+
+    private static IOException unwrap(Throwable e) {
+        return e instanceof IOException ? (IOException) e : new IOException(e);
+    }
+
+    /**
+     * Parse a single pipe-delimited category file. Each line is of the form
+     * id|difficulty|question|prefix|answer. Malformed lines are reported and
+     * skipped rather than failing the whole category.
+     * 
+     * @param file          the category file, whose name is the category name
+     * @param isUserCreated whether the category was created by the user
+     * @return the parsed category
+     * @throws IOException if the file could not be read
+     */
+    static Category parseCategory(File file, boolean isUserCreated) throws IOException {
+        String categoryName = file.getName();
+        Category category = new Category(categoryName, isUserCreated);
+
+        try (BufferedReader br = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+            //Iterate over each question
+            while ((line = br.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    String[] parts = line.split("\\|");
+                    String id = parts[0];
+                    int difficulty = Integer.parseInt(parts[1]);
+                    String questionText = parts[2];
+                    String questionPrefix = parts[3];
+                    String answer = parts[4];
+                    Question question = new Question(id, difficulty, questionText, questionPrefix, answer);
+
+                    category.addQuestion(question);
+                } catch (RuntimeException e) {
+                    System.err.println(categoryName + ":" + lineNumber + ": skipping malformed question (" + e + ")");
+                }
+            }
+        }
+        return category;
+    }
+
+    /**
+     * Load the built in categories. These are read from the compiled question bank,
+     * which is rebuilt from the text category files first if any of them have
+     * changed since it was last compiled. If the compiled bank cannot be used the
+     * text files are parsed directly.
+     * 
+     * @return the built in categories, keyed by name
+     */
     public static HashMap<String, Category> getBaseQuestions(){
+        File source = new File(Path.BASE_CATEGORIES.getPath());
+        File compiled = new File(Path.BASE_BANK.getPath());
+
+        if (source.isDirectory()) {
+            try {
+                if (QuestionBankCompiler.isStale(source, compiled)) {
+                    QuestionBankCompiler.compile(source, compiled);
+                }
+                return CompiledQuestionBank.load(compiled, false);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
         return loadQuestions(Path.BASE_CATEGORIES.getPath(),false);
     }
 
@@ -128,62 +240,134 @@ public class IOManager {
     }
 
     /**
-     * Writes the specified object into the state variable.
+     * Writes the specified object into the state variable. The write happens in
+     * the background, see PersistenceService.
      */
     public static void writeState(State state, Object obj) {
-        try {
-            Files.createDirectories(Paths.get(Path.USER_DATA.getPath()));
-        } catch (Exception e) {};
-
-        try {
-            // Saving of object in a file
-            FileOutputStream file = new FileOutputStream(Path.USER_DATA.getPath() + state.getFileName());
-            ObjectOutputStream out = new ObjectOutputStream(file);
+        PersistenceService.getInstance().markDirty(state, obj);
+    }
 
-            // Method for serialization of object
-            out.writeObject(obj);
+    /**
+     * Writes the serialised bytes of a state to its file. The bytes go to a
+     * temporary file which is synced and then moved over the old file, so a crash
+     * part way through never leaves a half written state.
+     *
+     * @param state the state being written
+     * @param bytes the serialised state
+     * @throws IOException
+     */
+    static void writeStateFile(State state, byte[] bytes) throws IOException {
+        Files.createDirectories(Paths.get(Path.USER_DATA.getPath()));
 
-            out.close();
-            file.close();
+        File target = new File(Path.USER_DATA.getPath() + state.getFileName());
+        File temp = new File(target.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(bytes);
+            out.getFD().sync();
         }
 
-        catch (IOException ex) {
+        try {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
         }
     }
 
     /**
+     * Reads a state. A state with a write still to come is read from the bytes it
+     * will be written as, so this never waits for the disk to catch up. States
+     * saved by older versions of the game with Java serialisation are read and
+     * then rewritten in the current format.
+     * 
      * @return the object in state with the given name, or null if none exists
      */
     public static <T> T readState(State state) {
+        byte[] latest = PersistenceService.getInstance().latest(state);
+        if (latest == PersistenceService.CLEARED) {
+            return null;
+        }
+
+        File file = new File(Path.USER_DATA.getPath() + state.getFileName());
+        if (latest == null && !file.isFile()) {
+            return null;
+        }
+
         try {
-            // Reading the object from a file
-            FileInputStream file = new FileInputStream(Path.USER_DATA.getPath() + state.getFileName());
-            ObjectInputStream in = new ObjectInputStream(file);
+            byte[] bytes = latest != null ? latest : Files.readAllBytes(file.toPath());
+            if (!StateCodec.isJavaSerialised(bytes)) {
+                return StateCodec.decode(state, bytes);
+            }
 
-            // Method for deserialization of object
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
             @SuppressWarnings("unchecked")
             T obj = (T) in.readObject();
-
             in.close();
-            file.close();
-            return obj;
 
+            writeState(state, obj);
+            return obj;
         } catch (Exception e) {
+            e.printStackTrace();
             return null;
         }
     }
 
     /**
-     * Clears the specified state
+     * @return the directory spoken clues are cached in
+     */
+    static File getAudioCacheDirectory() {
+        return new File(Path.AUDIO_CACHE.getPath());
+    }
+
+    /**
+     * Appends a record to the game journal. Runs on the persistence thread.
      * 
-     * @param state @see quinzical.util.State
+     * @param record the record
      */
-    public static void clearState(State state) {
+    static void appendGameJournal(byte[] record) {
         try {
-            File f = new File(Path.USER_DATA + state.getFileName());
-            f.delete();
-            return;
-        } catch (Exception e) {
+            Files.createDirectories(Paths.get(Path.USER_DATA.getPath()));
+            Files.write(Paths.get(Path.GAME_JOURNAL.getPath()), record, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return the contents of the game journal, which are empty if there is none
+     */
+    static byte[] readGameJournal() {
+        try {
+            return Files.readAllBytes(Paths.get(Path.GAME_JOURNAL.getPath()));
+        } catch (IOException e) {
+            return new byte[0];
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Deletes the game journal. Runs on the persistence thread.
+     */
+    static void clearGameJournal() {
+        new File(Path.GAME_JOURNAL.getPath()).delete();
+    }
+
+    /**
+     * Clears the specified state, discarding any write of it that is still
+     * pending
+     * 
+     * @param state @see quinzical.util.State
+     */
+    public static void clearState(State state) {
+        PersistenceService.getInstance().clear(state);
+    }
+
+    /**
+     * Deletes the file of a state. Runs on the persistence thread, after any
+     * writes of the state that were already queued.
+     *
+     * @param state the state to delete
+     */
+    static void deleteStateFile(State state) {
+        new File(Path.USER_DATA.getPath() + state.getFileName()).delete();
+    }
+}
@@ -1,22 +1,157 @@
 package quinzical.util;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import javafx.scene.image.Image;
 import quinzical.App;
+import quinzical.avatar.Cosmetic;
+import quinzical.model.Reward;
 
 /**
  * This is a utility class responsible for loading images
- * 
+ *
+ * Images are shared: each image is decoded once for a given size and kept in a
+ * cache, so showing the same avatar or icon again reuses the decoded pixels.
+ * The cache is bounded by the memory the decoded images take up (64MB by
+ * default, set with -Dquinzical.imageCacheMB), and the least recently used
+ * images are dropped first. An image which is dropped stays alive for as long
+ * as something is still showing it.
+ *
+ * GIFs are not cached. An animated GIF has every frame decoded up front, so an
+ * avatar animation takes far more memory than its size suggests, and more than
+ * the whole cache. They are decoded each time they are shown, in the
+ * background, as every image used to be, so the JavaFX thread never decodes all
+ * of their frames. Other images are small and are decoded as they are loaded.
+ *
  * @author Alexander Nicholson
  */
 public class ImageLoader {
 
+    private static final long MAX_BYTES = Long.getLong("quinzical.imageCacheMB", 64) * 1024 * 1024;
+
+    private static final int BYTES_PER_PIXEL = 4;
+
+    /**
+     * Cached images, keyed by path and size, from least to most recently used
+     */
+    private static final LinkedHashMap<String, Image> images = new LinkedHashMap<String, Image>(64, 0.75f, true);
+
+    /**
+     * The size in bytes of each cached image
+     */
+    private static final Map<String, Long> weights = new HashMap<String, Long>();
+
+    private static long totalBytes;
+
     /**
      * @param path the path to the image to load
      * @return the loaded image
      */
-    public static Image loadImage(String path) {     
-            Image image = new Image(App.class.getResource(path).toString(), true);
+    public static Image loadImage(String path) {
+        return loadImage(path, 0, 0);
+    }
+
+    /**
+     * Load an image scaled to fit within a size. Scaling while decoding takes less
+     * memory than decoding at full size and letting the ImageView scale it.
+     *
+     * @param path   the path to the image to load
+     * @param width  the width to fit the image in, or 0 for its own width
+     * @param height the height to fit the image in, or 0 for its own height
+     * @return the loaded image
+     */
+    public static Image loadImage(String path, int width, int height) {
+        String url = App.class.getResource(path).toString();
+        if (isGif(path)) {
+            return new Image(url, width, height, true, true, true);
+        }
+
+        String key = path + "@" + width + "x" + height;
+        synchronized (ImageLoader.class) {
+            Image image = images.get(key);
+            if (image != null) {
+                Metrics.increment("image.cache.hit");
+                return image;
+            }
+        }
+
+        // Decode without holding the lock, so a preload does not hold up images
+        // which are already cached
+        Metrics.increment("image.cache.miss");
+        Image image = new Image(url, width, height, true, true);
+        if (image.isError()) {
+            // Let the next load try again
             return image;
         }
+        return cache(key, image);
     }
 
+    /**
+     * Start loading the avatar and medal images in the background, so they are
+     * already decoded the first time they are shown. GIFs are left until they
+     * are shown, since they are not cached.
+     */
+    public static void preload() {
+        List<String> paths = new ArrayList<String>();
+        paths.add("avatar/char_idle.png");
+        for (Cosmetic item : Cosmetic.values()) {
+            paths.add("avatar/" + item.getFile() + "_idle.png");
+            paths.add("avatar/" + item.getIcon());
+        }
+        for (Reward reward : Reward.values()) {
+            paths.add("images/md_" + reward.name().toLowerCase() + ".png");
+        }
+
+        Thread preloader = new Thread(() -> {
+            for (String path : paths) {
+                if (!isGif(path) && App.class.getResource(path) != null) {
+                    loadImage(path);
+                }
+            }
+        }, "quinzical-image-preload");
+        preloader.setDaemon(true);
+        preloader.setPriority(Thread.MIN_PRIORITY);
+        preloader.start();
+    }
+
+    private static boolean isGif(String path) {
+        return path.toLowerCase().endsWith(".gif");
+    }
+
+    /**
+     * Add a decoded image to the cache, unless another thread has already added
+     * it, and drop the least recently used images until the cache is back within
+     * its budget
+     *
+     * @return the image in the cache
+     */
+    private static synchronized Image cache(String key, Image image) {
+        Image cached = images.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        images.put(key, image);
+
+        long bytes = (long) image.getWidth() * (long) image.getHeight() * BYTES_PER_PIXEL;
+        weights.put(key, bytes);
+        totalBytes += bytes;
+
+        Iterator<Map.Entry<String, Image>> eldest = images.entrySet().iterator();
+        while (totalBytes > MAX_BYTES && eldest.hasNext()) {
+            String eldestKey = eldest.next().getKey();
+            if (eldestKey.equals(key)) {
+                continue;
+            }
+            totalBytes -= weights.remove(eldestKey);
+            eldest.remove();
+            Metrics.increment("image.cache.evict");
+        }
+        Metrics.set("image.cache.bytes", totalBytes);
+        return image;
+    }
+}
@@ -0,0 +1,179 @@
+package quinzical.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lightweight in-process metrics, used to measure things such as load times,
+ * cache hit rates and queue depths. Metrics are always recorded and can be read
+ * back at any time. If the application is started with
+ * {@code -Dquinzical.metrics=true} every timing is also printed as it is
+ * recorded, and every metric is printed once the app has started and again
+ * when it exits.
+ *
+ * Safe to use from any thread.
+ *
+ * @author Alexander Nicholson
+ */
+public class Metrics {
+
+    private static final boolean VERBOSE = Boolean.getBoolean("quinzical.metrics");
+
+    private static final Map<String, Timing> timings = new ConcurrentHashMap<String, Timing>();
+
+    private static final Map<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+
+    /**
+     * Summary of all the durations recorded under one name
+     */
+    public static class Timing {
+        private long count;
+        private long total;
+        private long max;
+        private long last;
+
+        private synchronized void record(long nanos) {
+            count++;
+            total += nanos;
+            max = Math.max(max, nanos);
+            last = nanos;
+        }
+
+        /**
+         * @return the number of durations recorded
+         */
+        public synchronized long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the mean duration in milliseconds
+         */
+        public synchronized double getMeanMillis() {
+            return count == 0 ? 0 : toMillis(total / count);
+        }
+
+        /**
+         * @return the longest duration in milliseconds
+         */
+        public synchronized double getMaxMillis() {
+            return toMillis(max);
+        }
+
+        /**
+         * @return the most recent duration in milliseconds
+         */
+        public synchronized double getLastMillis() {
+            return toMillis(last);
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("n=%d mean=%.2fms max=%.2fms last=%.2fms", count, getMeanMillis(), getMaxMillis(),
+                    getLastMillis());
+        }
+    }
+
+    /**
+     * Record a duration
+     *
+     * @param name  the name of the metric
+     * @param nanos the duration in nanoseconds
+     */
+    public static void recordTime(String name, long nanos) {
+        timings.computeIfAbsent(name, k -> new Timing()).record(nanos);
+        if (VERBOSE) {
+            System.out.println(String.format("[metrics] %s %.2fms", name, toMillis(nanos)));
+        }
+    }
+
+    /**
+     * Record the time elapsed since the given start time
+     *
+     * @param name      the name of the metric
+     * @param startNano a value previously returned by System.nanoTime()
+     */
+    public static void recordSince(String name, long startNano) {
+        recordTime(name, System.nanoTime() - startNano);
+    }
+
+    /**
+     * Add one to a counter
+     *
+     * @param name the name of the counter
+     */
+    public static void increment(String name) {
+        add(name, 1);
+    }
+
+    /**
+     * Add an amount to a counter
+     *
+     * @param name  the name of the counter
+     * @param delta the amount to add, which may be negative
+     */
+    public static void add(String name, long delta) {
+        counters.computeIfAbsent(name, k -> new AtomicLong()).addAndGet(delta);
+    }
+
+    /**
+     * Set a counter to an absolute value, e.g. the current depth of a queue
+     *
+     * @param name  the name of the counter
+     * @param value the new value
+     */
+    public static void set(String name, long value) {
+        counters.computeIfAbsent(name, k -> new AtomicLong()).set(value);
+    }
+
+    /**
+     * @param name the name of the counter
+     * @return the value of the counter, or 0 if it has never been set
+     */
+    public static long getCount(String name) {
+        AtomicLong counter = counters.get(name);
+        return counter == null ? 0 : counter.get();
+    }
+
+    /**
+     * @param name the name of the timing
+     * @return the timing, or null if nothing has been recorded under the name
+     */
+    public static Timing getTiming(String name) {
+        return timings.get(name);
+    }
+
+    /**
+     * @return every metric recorded so far, one per line, sorted by name
+     */
+    public static String report() {
+        Map<String, Object> all = new TreeMap<String, Object>();
+        all.putAll(timings);
+        all.putAll(counters);
+
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Object> entry : all.entrySet()) {
+            sb.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Print every metric recorded so far, if the application was started with
+     * {@code -Dquinzical.metrics=true}
+     *
+     * @param when what the metrics are being printed at, e.g. "startup"
+     */
+    public static void printReport(String when) {
+        if (VERBOSE) {
+            System.out.print("[metrics] report at " + when + "\n" + report());
+        }
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
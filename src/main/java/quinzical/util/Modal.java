@@ -3,6 +3,7 @@ package quinzical.util;
 import java.io.IOException;
 
 import com.jfoenix.controls.JFXDialog;
+import com.jfoenix.controls.events.JFXDialogEvent;
 
 import javafx.event.ActionEvent;
 import javafx.event.Event;
@@ -92,13 +93,15 @@ public class Modal {
      * @return
      */
     private static JFXDialog makeDialog(Region content, double width, double height) {
-        frosted = new FrostPane(root, content, width, height);
+        FrostPane pane = new FrostPane(root, content, width, height);
+        frosted = pane;
 
         frosted.setMaxWidth(width);
         frosted.setMaxHeight(height);
 
         dialog = new JFXDialog();
         dialog.setContent(frosted);
+        dialog.addEventHandler(JFXDialogEvent.CLOSED, e -> pane.dispose());
         dialog.show(root);
 
         return dialog;
@@ -0,0 +1,254 @@
+package quinzical.util;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javafx.application.Platform;
+
+/**
+ * Writes state objects to disk in the background. Marking a state as dirty
+ * does no IO: the first notification for a state starts a short window, any
+ * further notifications within that window are folded into it, and when the
+ * window closes the object is encoded once and written on a background
+ * thread.
+ *
+ * The state objects are owned by the JavaFX thread, so they are encoded on it
+ * with StateCodec (into memory, which is quick) to get a consistent snapshot.
+ * Only the bytes are handed to the writer thread. Writes and deletes of a state happen
+ * in the order they were requested.
+ *
+ * Reading a state back never waits for the writer: a state with a write still
+ * to come is read from the bytes it will write (see latest).
+ *
+ * The window defaults to 250ms and can be changed with
+ * {@code -Dquinzical.persistWindow=<millis>}.
+ *
+ * @author Alexander Nicholson
+ */
+public class PersistenceService {
+
+    private static final long WINDOW_MILLIS = Long.getLong("quinzical.persistWindow", 250);
+
+    private static final long FLUSH_TIMEOUT_SECONDS = 5;
+
+    private static PersistenceService instance;
+
+    /**
+     * The latest object for each state which has been marked dirty but not yet
+     * encoded
+     */
+    private final Map<State, Object> pending = new ConcurrentHashMap<State, Object>();
+
+    /**
+     * The bytes of each state which have been queued for the writer but not yet
+     * written, or an empty array if the state is waiting to be deleted. Each
+     * delete has its own empty array, so finishing one delete does not forget
+     * another queued after it.
+     */
+    private final Map<State, byte[]> unwritten = new ConcurrentHashMap<State, byte[]>();
+
+    /**
+     * Returned by latest for a state whose file is waiting to be deleted.
+     * Compared by identity.
+     */
+    static final byte[] CLEARED = new byte[0];
+
+    private final Map<State, List<Runnable>> writeListeners = new ConcurrentHashMap<State, List<Runnable>>();
+
+    private final Map<State, List<Runnable>> queueListeners = new ConcurrentHashMap<State, List<Runnable>>();
+
+    private final ScheduledExecutorService writer;
+
+    /**
+     * Get the singleton instance of the class
+     *
+     * @return instance
+     */
+    public static synchronized PersistenceService getInstance() {
+        if (instance == null) {
+            instance = new PersistenceService();
+        }
+        return instance;
+    }
+
+    /**
+     * Private constructor
+     */
+    private PersistenceService() {
+        writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "quinzical-persistence");
+            // Never keep the app alive, flush() is called on exit instead
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Marks a state as changed, so that it is written once the current window
+     * closes
+     *
+     * @param state the state that changed
+     * @param obj   the object to write
+     */
+    public void markDirty(State state, Object obj) {
+        if (pending.put(state, obj) == null) {
+            writer.schedule(() -> snapshotLater(state), WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+        } else {
+            Metrics.increment("persist.coalesced");
+        }
+    }
+
+    /**
+     * Drops any pending write of a state and deletes its file
+     *
+     * @param state the state to clear
+     */
+    public void clear(State state) {
+        pending.remove(state);
+        byte[] cleared = new byte[0];
+        unwritten.put(state, cleared);
+        notify(queueListeners, state);
+        writer.execute(() -> {
+            IOManager.deleteStateFile(state);
+            notify(writeListeners, state);
+            unwritten.remove(state, cleared);
+        });
+    }
+
+    /**
+     * Get what a state will be on disk once every queued write has finished,
+     * without waiting for them. A pending state is encoded on the current
+     * thread and queued first, as it would be when its window closes.
+     *
+     * @param state the state
+     * @return the bytes the state will be written as, CLEARED if it will be
+     *         deleted, or null if its file is already up to date
+     */
+    byte[] latest(State state) {
+        snapshot(state);
+        byte[] bytes = unwritten.get(state);
+        return bytes != null && bytes.length == 0 ? CLEARED : bytes;
+    }
+
+    /**
+     * Runs other IO on the persistence thread, in order with the writes of the
+     * states
+     *
+     * @param task the IO to run
+     */
+    public void execute(Runnable task) {
+        writer.execute(task);
+    }
+
+    /**
+     * Registers a task to run on the persistence thread each time a state has
+     * been written to disk or cleared. The task runs before the state stops
+     * being read from memory (see latest).
+     *
+     * @param state the state
+     * @param task  the task to run
+     */
+    public void afterWrite(State state, Runnable task) {
+        writeListeners.computeIfAbsent(state, s -> new CopyOnWriteArrayList<Runnable>()).add(task);
+    }
+
+    /**
+     * Registers a task to run each time a write or delete of a state is queued,
+     * on the thread that queued it
+     *
+     * @param state the state
+     * @param task  the task to run
+     */
+    public void afterQueue(State state, Runnable task) {
+        queueListeners.computeIfAbsent(state, s -> new CopyOnWriteArrayList<Runnable>()).add(task);
+    }
+
+    /**
+     * Writes every pending state now and waits for all queued writes to finish.
+     * Called when the app exits.
+     */
+    public void flush() {
+        for (State state : State.values()) {
+            snapshot(state);
+        }
+        try {
+            writer.submit(() -> {
+            }).get(FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Asks the JavaFX thread to snapshot a state once its window has closed
+     *
+     * @param state the state to snapshot
+     */
+    private void snapshotLater(State state) {
+        try {
+            Platform.runLater(() -> snapshot(state));
+        } catch (IllegalStateException e) {
+            // JavaFX is not running, so there is no thread that owns the state
+            snapshot(state);
+        }
+    }
+
+    /**
+     * Encodes a pending state on the current thread and queues the write
+     *
+     * @param state the state to snapshot
+     */
+    private void snapshot(State state) {
+        Object obj = pending.remove(state);
+        if (obj == null) {
+            return;
+        }
+
+        byte[] bytes;
+        try {
+            bytes = StateCodec.encode(state, obj);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        unwritten.put(state, bytes);
+        notify(queueListeners, state);
+        writer.execute(() -> write(state, bytes));
+    }
+
+    /**
+     * Writes the bytes of a state to disk. Runs on the writer thread.
+     */
+    private void write(State state, byte[] bytes) {
+        long start = System.nanoTime();
+        try {
+            IOManager.writeStateFile(state, bytes);
+        } catch (IOException e) {
+            // Keep reading the state from memory, the file is out of date
+            e.printStackTrace();
+            return;
+        }
+        Metrics.recordSince("persist.write." + state.getFileName(), start);
+        notify(writeListeners, state);
+        // Unless a later write of the state is already queued
+        unwritten.remove(state, bytes);
+    }
+
+    private static void notify(Map<State, List<Runnable>> listenersByState, State state) {
+        List<Runnable> listeners = listenersByState.get(state);
+        if (listeners != null) {
+            for (Runnable listener : listeners) {
+                listener.run();
+            }
+        }
+    }
+}
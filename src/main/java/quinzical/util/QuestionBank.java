@@ -39,8 +39,53 @@ public class QuestionBank {
 
     // Private constructor
     private QuestionBank() {
+        long start = System.nanoTime();
         questionBank = IOManager.getBaseQuestions();
         userQuestionBank = IOManager.getUserQuestions();
+        Metrics.recordSince("questions.load", start);
+    }
+
+    /**
+     * Gets the next practice question from the category. Questions are chosen by
+     * the QuestionScheduler, so no question is repeated until every question in
+     * the category has been seen, and questions the user has not seen or has got
+     * wrong come up sooner. Progress through the category is saved with the user,
+     * so restarting the application carries on from where the user left off.
+     * 
+     * @param category the category to draw from
+     * @return a copy of the next question
+     * @throws IllegalArgumentException if the category has no questions
+     */
+    public Question getPracticeQuestion(Category category) throws IllegalArgumentException {
+        Question question = QuestionScheduler.getInstance().nextPractice(category);
+        if (question == null) {
+            throw new IllegalArgumentException(category.getName() + " has no questions");
+        }
+        return new Question(question);
+    }
+
+    /**
+     * Gets one question of each difficulty from 1 to amount for a game. Questions
+     * are chosen by the QuestionScheduler, so questions the user has not seen or
+     * has got wrong are more likely to come up.
+     * 
+     * @param category the category to draw from
+     * @param amount   the number of questions, which is also the highest difficulty
+     * @return copies of the questions, in order of difficulty
+     * @throws IllegalArgumentException if the category is missing a difficulty
+     */
+    public ArrayList<Question> getScheduledQuestions(Category category, int amount) throws IllegalArgumentException {
+        QuestionScheduler scheduler = QuestionScheduler.getInstance();
+        ArrayList<Question> results = new ArrayList<Question>(amount);
+
+        for (int difficulty = 1; difficulty <= amount; difficulty++) {
+            Question question = scheduler.next(category, difficulty);
+            if (question == null) {
+                throw new IllegalArgumentException(category.getName() + " has no questions of difficulty " + difficulty);
+            }
+            results.add(new Question(question));
+        }
+        return results;
     }
 
     /**
@@ -53,33 +98,20 @@ public class QuestionBank {
      */
     public ArrayList<Question> getRandomQuestions(Category category, int amount, boolean allowDuplicates)
             throws IllegalArgumentException {
-        // Get arraylist of questions
-
-        // Check if category exists
-        // Get the list of questions and create a copy of the array so the original is
-        // not modified
-        ArrayList<Question> questionList = new ArrayList<Question>(category.getQuestions());
-
-        ArrayList<Question> results = new ArrayList<Question>();
+        ArrayList<Question> results = new ArrayList<Question>(amount);
 
         for (int i = 0; i < amount; i++) {
             int difficulty = i + 1;
-            // Get all questions with difficulty i
-            if (!allowDuplicates) {
-                List<Question> filteredQs = questionList.stream().filter(p -> p.getDifficulty() == difficulty)
-                        .collect(Collectors.toList());
-
-                int index = _rand.nextInt(filteredQs.size());
-                // Get a random question and remove it from the list
-
-                results.add(new Question(filteredQs.get(index)));
-            } else {
-
-                int index = _rand.nextInt(questionList.size());
-                // Get a random question and remove it from the list
+            // Without duplicates, question i is the one question of difficulty i + 1
+            Question question = allowDuplicates ? category.getRandomQuestion(_rand)
+                    : category.getRandomQuestion(difficulty, _rand);
 
-                results.add(new Question(questionList.get(index)));
+            if (question == null) {
+                throw new IllegalArgumentException(category.getName() + " has no questions"
+                        + (allowDuplicates ? "" : " of difficulty " + difficulty));
             }
+            // Copy the question so answering it does not modify the category
+            results.add(new Question(question));
         }
 
         return results;
@@ -149,7 +181,7 @@ public class QuestionBank {
 
         // Get the list of categories and create a copy of the array so the original is
         // not modified
-        List<Category> categoryList = getCategories().stream().filter(p -> p.getQuestions().size() >= minimumQuestions)
+        List<Category> categoryList = getCategories().stream().filter(p -> p.getQuestionCount() >= minimumQuestions)
                 .collect(Collectors.toList());
 
         // Throw an error if there are not enough unique questions to match the amount
@@ -205,6 +237,7 @@ public class QuestionBank {
      */
     public void setUserCategories(HashMap<String, Category> categories) {
         userQuestionBank = categories;
+        QuestionScheduler.invalidate();
 
         IOManager.saveUserQuestions(categories);
     }
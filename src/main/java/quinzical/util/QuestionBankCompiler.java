@@ -0,0 +1,187 @@
+package quinzical.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import quinzical.model.Category;
+import quinzical.model.Question;
+
+/**
+ * Compiles the pipe-delimited category files into a single indexed binary
+ * question bank, which can be memory-mapped by CompiledQuestionBank. The text
+ * files remain the source of truth; the compiled bank is only a cache of them.
+ *
+ * The layout of the compiled file (all integers big-endian) is:
+ *
+ * <pre>
+ * header:   magic, version, categoryCount
+ * category: name, questionCount, offset of its record table   (x categoryCount)
+ * table:    offset of each question record                   (x questionCount)
+ * record:   id, difficulty, question, prefix, answer
+ * </pre>
+ *
+ * Strings are stored as an int byte length followed by UTF-8 bytes.
+ *
+ * Can also be run offline, e.g. when building a question pack:
+ * {@code QuestionBankCompiler <category directory> <output file>}
+ */
+public class QuestionBankCompiler {
+
+    static final int MAGIC = 0x515A4231; // "QZB1"
+
+    static final int VERSION = 1;
+
+    /**
+     * Compile the categories in a directory from the command line
+     *
+     * @param args the category directory and the output file
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: QuestionBankCompiler <category directory> <output file>");
+            System.exit(1);
+        }
+        compile(new File(args[0]), new File(args[1]));
+    }
+
+    /**
+     * Checks whether the compiled bank needs to be rebuilt. This is the case if it
+     * does not exist, or if any category file (or the directory itself, which
+     * changes when files are added or removed) is newer than it.
+     *
+     * @param sourceDir the directory of text category files
+     * @param compiled  the compiled bank
+     * @return whether the compiled bank is out of date
+     */
+    public static boolean isStale(File sourceDir, File compiled) {
+        if (!compiled.isFile()) {
+            return true;
+        }
+        long compiledAt = compiled.lastModified();
+        if (sourceDir.lastModified() > compiledAt) {
+            return true;
+        }
+        File[] files = sourceDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile() && file.lastModified() > compiledAt) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compiles every category file in the source directory into one bank. The
+     * bank is written to a temporary file first so that a reader never sees a
+     * partially written bank.
+     *
+     * @param sourceDir the directory of text category files
+     * @param output    the file to write the compiled bank to
+     * @throws IOException if a category could not be read or the bank written
+     */
+    public static void compile(File sourceDir, File output) throws IOException {
+        File[] files = sourceDir.listFiles(File::isFile);
+        if (files == null) {
+            throw new IOException(sourceDir + " is not a directory");
+        }
+        // Sort so the same source always produces the same bank
+        Arrays.sort(files, Comparator.comparing(File::getName));
+
+        List<Category> categories = IOManager.parseCategories(files, false);
+
+        File temp = new File(output.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            write(categories, out);
+        }
+        Files.move(temp.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Writes the categories in the compiled format
+     *
+     * @param categories the categories to write
+     * @param out        the stream to write to
+     * @throws IOException
+     */
+    private static void write(List<Category> categories, DataOutputStream out) throws IOException {
+        List<byte[]> names = new ArrayList<byte[]>();
+        List<List<Question>> questions = new ArrayList<List<Question>>();
+        List<List<byte[][]>> records = new ArrayList<List<byte[][]>>();
+
+        // Encode everything up front so every offset is known before writing
+        int headerSize = 12;
+        for (Category category : categories) {
+            byte[] name = category.getName().getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            headerSize += 4 + name.length + 8;
+
+            List<Question> categoryQuestions = category.getQuestions();
+            questions.add(categoryQuestions);
+
+            List<byte[][]> encoded = new ArrayList<byte[][]>();
+            for (Question q : categoryQuestions) {
+                encoded.add(new byte[][] { utf8(q.getId()), utf8(q.getHint()), utf8(q.getPrefix()),
+                        utf8(q.getAnswer()) });
+            }
+            records.add(encoded);
+        }
+
+        // Header
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(categories.size());
+        int tableOffset = headerSize;
+        for (int i = 0; i < categories.size(); i++) {
+            writeBytes(out, names.get(i));
+            out.writeInt(questions.get(i).size());
+            out.writeInt(tableOffset);
+            tableOffset += 4 * questions.get(i).size();
+        }
+
+        // Record tables
+        int recordOffset = tableOffset;
+        for (int i = 0; i < categories.size(); i++) {
+            for (byte[][] record : records.get(i)) {
+                out.writeInt(recordOffset);
+                recordOffset += 4 * record.length + 4;
+                for (byte[] field : record) {
+                    recordOffset += field.length;
+                }
+            }
+        }
+
+        // Records
+        for (int i = 0; i < categories.size(); i++) {
+            for (int j = 0; j < questions.get(i).size(); j++) {
+                byte[][] record = records.get(i).get(j);
+                writeBytes(out, record[0]);
+                out.writeInt(questions.get(i).get(j).getDifficulty());
+                writeBytes(out, record[1]);
+                writeBytes(out, record[2]);
+                writeBytes(out, record[3]);
+            }
+        }
+    }
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,343 @@
+package quinzical.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+
+import quinzical.model.Category;
+import quinzical.model.Question;
+import quinzical.model.QuestionHistory;
+import quinzical.model.User;
+
+/**
+ * Spaced repetition scheduler which picks questions for both game and practice
+ * modes. Every question is given a weight based on the user's history with it:
+ * unseen questions are the most likely to be picked, followed by questions the
+ * user has got wrong and has not seen for a while. Weights are kept in Fenwick
+ * trees, so each draw is O(log n) however large the category is. Games and
+ * practice each have their own tree, so taking a question out of the practice
+ * cycle does not change how likely it is to come up in a game.
+ *
+ * A category's questions and weights are only set up the first time the
+ * category is scheduled from, so a game does not decode every category in the
+ * question bank. Within a category the questions are grouped by difficulty, so
+ * any difficulty can be sampled directly. The weights of a category are worked
+ * out again when they are more than a minute old, so questions that have not
+ * been seen for a while become more likely over a long session.
+ *
+ * @author Alexander Nicholson
+ */
+public class QuestionScheduler {
+
+    private static final double UNSEEN_WEIGHT = 4;
+
+    private static final double MIN_WEIGHT = 0.1;
+
+    private static final double MISSED_WEIGHT = 3;
+
+    private static final double DAY_MILLIS = 24 * 60 * 60 * 1000.0;
+
+    private static final long REWEIGH_MILLIS = 60 * 1000;
+
+    private static QuestionScheduler instance;
+
+    /**
+     * The questions of one category and their weights. difficultyStart[d] to
+     * difficultyStart[d + 1] holds the questions of difficulty d.
+     */
+    private static class Range {
+        private final Question[] questions;
+        private final int[] difficultyStart;
+
+        /**
+         * The index of each question in the user's question history
+         */
+        private final int[] historyIndex;
+
+        private final HashMap<String, Integer> positionOf = new HashMap<String, Integer>();
+
+        private FenwickTree weights;
+
+        /**
+         * The weights for practice, which are the same as for games except that
+         * questions in the current practice cycle have no weight
+         */
+        private FenwickTree practiceWeights;
+
+        /**
+         * When the weights were last worked out, in epoch milliseconds
+         */
+        private long weighedAt;
+
+        /**
+         * The number of questions in the range which have not come up in the
+         * current practice cycle. Counted exactly, because the sum of their
+         * weights in the tree drifts away from zero as weights are cleared.
+         */
+        private int unpractised;
+
+        private Range(Question[] questions, int[] difficultyStart, int[] historyIndex) {
+            this.questions = questions;
+            this.difficultyStart = difficultyStart;
+            this.historyIndex = historyIndex;
+            for (int i = 0; i < questions.length; i++) {
+                positionOf.put(questions[i].getId(), i);
+            }
+        }
+    }
+
+    private final IdentityHashMap<Category, Range> ranges = new IdentityHashMap<Category, Range>();
+
+    /**
+     * The range holding each question, by id, for every category set up so far
+     */
+    private final HashMap<String, Range> rangeOf = new HashMap<String, Range>();
+
+    private final QuestionHistory history;
+
+    private final Random rand = new Random();
+
+    /**
+     * @return the scheduler for the current question bank
+     */
+    public static QuestionScheduler getInstance() {
+        if (instance == null) {
+            instance = new QuestionScheduler(User.getInstance().getQuestionHistory());
+        }
+        return instance;
+    }
+
+    /**
+     * Discards the scheduler so it is rebuilt the next time it is needed. Must be
+     * called whenever the categories in the question bank change.
+     */
+    public static void invalidate() {
+        instance = null;
+    }
+
+    /**
+     * Private constructor
+     *
+     * @param history the user's question history
+     */
+    private QuestionScheduler(QuestionHistory history) {
+        this.history = history;
+    }
+
+    /**
+     * Pick a question of the given difficulty for a game
+     *
+     * @param category   the category to pick from
+     * @param difficulty the difficulty of the question
+     * @return the question, or null if the category has no questions of that
+     *         difficulty
+     */
+    public Question next(Category category, int difficulty) {
+        Range range = range(category);
+        if (difficulty < 0 || difficulty >= range.difficultyStart.length - 1) {
+            return null;
+        }
+
+        int index = sample(range.weights, range.difficultyStart[difficulty], range.difficultyStart[difficulty + 1]);
+        if (index < 0) {
+            return category.getRandomQuestion(difficulty, rand);
+        }
+        return range.questions[index];
+    }
+
+    /**
+     * Pick the next practice question. Questions are drawn without replacement:
+     * once a question has come up it is not picked again until every other
+     * question in the category has come up, at which point a new cycle starts.
+     * Which question comes next within a cycle is weighted by the user's history.
+     *
+     * @param category the category to pick from
+     * @return the question, or null if the category is empty
+     */
+    public Question nextPractice(Category category) {
+        Range range = range(category);
+        int count = range.questions.length;
+        if (count == 0) {
+            return null;
+        }
+
+        int index = range.unpractised > 0 ? sample(range.practiceWeights, 0, count) : -1;
+        if (index < 0) {
+            // Cycle complete, start a new one
+            for (int i = 0; i < count; i++) {
+                history.setPracticed(range.historyIndex[i], false);
+            }
+            weigh(range, System.currentTimeMillis());
+            index = sample(range.practiceWeights, 0, count);
+        }
+
+        history.setPracticed(range.historyIndex[index], true);
+        range.practiceWeights.set(index, 0);
+        range.unpractised--;
+        User.getInstance().saveQuestionHistory();
+
+        return range.questions[index];
+    }
+
+    /**
+     * Record the user's answer to a question. A question from a category which
+     * has not been scheduled from yet, such as one from a game carried over from
+     * the last session, is recorded straight into the history.
+     *
+     * @param question  the question that was answered
+     * @param isCorrect whether the answer was correct
+     */
+    public void record(Question question, boolean isCorrect) {
+        long now = System.currentTimeMillis();
+        Range range = rangeOf.get(question.getId());
+        if (range == null) {
+            history.record(history.indexOf(new String[] { question.getId() })[0], isCorrect, now);
+            User.getInstance().saveQuestionHistory();
+            return;
+        }
+
+        int position = range.positionOf.get(question.getId());
+        int index = range.historyIndex[position];
+        history.record(index, isCorrect, now);
+        double weight = weight(index, now);
+        range.weights.set(position, weight);
+        if (!history.isPracticed(index)) {
+            range.practiceWeights.set(position, weight);
+        }
+        User.getInstance().saveQuestionHistory();
+    }
+
+    /**
+     * Get the range of a category, setting it up the first time, and work its
+     * weights out again if they are out of date
+     */
+    private Range range(Category category) {
+        long now = System.currentTimeMillis();
+        Range range = ranges.get(category);
+        if (range == null) {
+            range = build(category);
+            ranges.put(category, range);
+            weigh(range, now);
+        } else if (now - range.weighedAt > REWEIGH_MILLIS) {
+            weigh(range, now);
+        }
+        return range;
+    }
+
+    /**
+     * Set up the range of a category, adding its questions to the history if
+     * they are not in it yet
+     */
+    private Range build(Category category) {
+        int maxDifficulty = category.getMaxDifficulty();
+        int[] difficultyStart = new int[maxDifficulty + 2];
+        List<Question> questions = new ArrayList<Question>();
+        for (int d = 0; d <= maxDifficulty; d++) {
+            difficultyStart[d] = questions.size();
+            for (int i = 0; i < category.getQuestionCount(d); i++) {
+                questions.add(category.getQuestion(d, i));
+            }
+        }
+        difficultyStart[maxDifficulty + 1] = questions.size();
+
+        String[] ids = new String[questions.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = questions.get(i).getId();
+        }
+        int before = history.size();
+        int[] historyIndex = history.indexOf(ids);
+
+        // A question new to the history may have been attempted before the
+        // history was kept, which the user's record of attempted questions shows
+        User user = User.getInstance();
+        for (int i = 0; i < ids.length; i++) {
+            if (historyIndex[i] >= before && user.hasAttempted(category.getName(), ids[i])) {
+                history.record(historyIndex[i], true, 0);
+            }
+        }
+
+        Range range = new Range(questions.toArray(new Question[0]), difficultyStart, historyIndex);
+        for (Question question : range.questions) {
+            rangeOf.put(question.getId(), range);
+        }
+        return range;
+    }
+
+    /**
+     * Work out the weights of every question in a range from the history
+     */
+    private void weigh(Range range, long now) {
+        int count = range.questions.length;
+        double[] initial = new double[count];
+        double[] initialPractice = new double[count];
+        int unpractised = 0;
+        for (int i = 0; i < count; i++) {
+            int index = range.historyIndex[i];
+            initial[i] = weight(index, now);
+            if (!history.isPracticed(index)) {
+                initialPractice[i] = initial[i];
+                unpractised++;
+            }
+        }
+        range.weights = new FenwickTree(initial);
+        range.practiceWeights = new FenwickTree(initialPractice);
+        range.unpractised = unpractised;
+        range.weighedAt = now;
+    }
+
+    /**
+     * Sample an index in a range in proportion to its weight
+     *
+     * @param weights the weights to sample by
+     * @param start   the start of the range, inclusive
+     * @param end     the end of the range, exclusive
+     * @return the index, or -1 if every weight in the range is zero
+     */
+    private int sample(FenwickTree weights, int start, int end) {
+        double total = weights.sum(start, end);
+        if (end <= start || total <= 0) {
+            return -1;
+        }
+
+        int index = weights.find(weights.prefixSum(start) + rand.nextDouble() * total);
+
+        // Guard against floating point error landing just outside the range or on
+        // a question with no weight
+        index = Math.max(start, Math.min(end - 1, index));
+        while (index > start && weights.get(index) <= 0) {
+            index--;
+        }
+        while (index < end - 1 && weights.get(index) <= 0) {
+            index++;
+        }
+        // The sum of a range whose weights have all been cleared can be left just
+        // above zero by rounding
+        if (weights.get(index) <= 0) {
+            return -1;
+        }
+        return index;
+    }
+
+    /**
+     * The weight of a question. Unseen questions have the highest weight. Seen
+     * questions are weighted by how often they have been missed (smoothed, so one
+     * lucky answer does not bury a question) and how long ago they were seen.
+     *
+     * @param index the dense index of the question
+     * @param now   the current time, in epoch milliseconds
+     * @return the weight
+     */
+    private double weight(int index, long now) {
+        int attempts = history.getAttempts(index);
+        if (attempts == 0) {
+            return UNSEEN_WEIGHT;
+        }
+        double missRate = (attempts - history.getCorrect(index) + 1.0) / (attempts + 2.0);
+        double age = Math.max(0, now - history.getLastSeen(index));
+        double recency = 1 - Math.exp(-age / DAY_MILLIS);
+
+        return MIN_WEIGHT + MISSED_WEIGHT * missRate * recency;
+    }
+}
@@ -22,6 +22,10 @@ public class Router {
     // Represents the history of the pages the user has visited
     private static Deque<View> history = new ArrayDeque<View>();
 
+    // Counts every navigation, so that anything derived from the current view can
+    // tell when it has changed
+    private static int navigations;
+
     /**
      * Navigate the user to the last page in history and remove it from the history.
      */
@@ -47,6 +51,8 @@ public class Router {
      * @param addToHistory whether to add the navigation to the history
      */
     public static void show(View fxml, boolean addToHistory) {
+        long start = System.nanoTime();
+        navigations++;
         App.setState(fxml.getState());
         TTS.getInstance().clearQueue();
         Timer.getInstance().stop();
@@ -56,16 +62,18 @@ public class Router {
         ft.setToValue(1);
         ft.play();
 
-        // Place the content into the container
-        container.setCenter(ViewLoader.loadFXML(fxml.getCenter(), fxml.getController()));
-        container.setTop(ViewLoader.loadFXML(fxml.getTop()));
-        container.setRight(ViewLoader.loadFXML(fxml.getRight()));
-        container.setBottom(ViewLoader.loadFXML(fxml.getBottom()));
-        container.setLeft(ViewLoader.loadFXML(fxml.getLeft()));
+        // Place the content into the container. Views which have been shown before
+        // are reused rather than loaded again
+        container.setCenter(ViewCache.get(fxml, fxml.getCenter(), fxml.getController()));
+        container.setTop(ViewCache.get(fxml, fxml.getTop(), null));
+        container.setRight(ViewCache.get(fxml, fxml.getRight(), null));
+        container.setBottom(ViewCache.get(fxml, fxml.getBottom(), null));
+        container.setLeft(ViewCache.get(fxml, fxml.getLeft(), null));
 
         if (addToHistory) {
             history.add(fxml);
         }
+        Metrics.recordSince("view.show", start);
     }
 
     /**
@@ -87,6 +95,13 @@ public class Router {
         return history.peekLast() == view;
     }
 
+    /**
+     * @return the number of times a view has been shown
+     */
+    public static int getNavigationCount() {
+        return navigations;
+    }
+
     /**
      * Sets the container where content should be placed
      * 
@@ -1,5 +1,8 @@
 package quinzical.util;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 
 import javafx.scene.media.AudioClip;
@@ -14,6 +17,8 @@ public class Sound implements Serializable {
 
     private static final long serialVersionUID = 3339525790584853512L;
 
+    private static final int FORMAT_VERSION = 1;
+
     private static Sound sound;
 
     private double effectVolume;
@@ -31,6 +36,16 @@ public class Sound implements Serializable {
 
     }
 
+    /**
+     * Constructor for a sound object read from file, which does not load the
+     * sound effect
+     * 
+     * @param effectVolume the effect volume
+     */
+    private Sound(double effectVolume) {
+        this.effectVolume = effectVolume;
+    }
+
     /**
      * Plays the click sound effect
      */
@@ -76,6 +91,30 @@ public class Sound implements Serializable {
         return effectVolume;
     }
 
+    /**
+     * Write the settings in the binary state format
+     * 
+     * @param out the output to write them to
+     * @throws IOException
+     * @see StateCodec
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeShort(FORMAT_VERSION);
+        out.writeDouble(effectVolume);
+    }
+
+    /**
+     * Read settings written by write
+     * 
+     * @param in the input to read them from
+     * @return the Sound object
+     * @throws IOException
+     */
+    public static Sound read(DataInput in) throws IOException {
+        StateCodec.readVersion(in, FORMAT_VERSION, "Sound");
+        return new Sound(in.readDouble());
+    }
+
     /**
      * Persists the Sound object to file
      */
@@ -0,0 +1,253 @@
+package quinzical.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.UUID;
+
+import quinzical.model.Game;
+import quinzical.model.User;
+
+/**
+ * Binary format for the persisted state. A state file is a magic number
+ * followed by the state object, which is written field by field with
+ * DataOutput by the object itself (see the write and read methods of User,
+ * Game, TTS and Sound).
+ *
+ * Every object writes its own format version before its fields, so the format
+ * can evolve: new fields are appended to the end of an object and only read
+ * when the version in the file is new enough, and fields that are no longer
+ * needed are still read and then ignored. Objects written by a newer version
+ * of the game than the one reading them are rejected.
+ *
+ * Files written by older versions of the game with Java serialisation are
+ * still read, and are rewritten in this format (see IOManager.readState).
+ *
+ * @author Alexander Nicholson
+ */
+public class StateCodec {
+
+    private static final int MAGIC = 0x515A5331; // "QZS1"
+
+    private static final int UUID_LENGTH = 36;
+
+    /**
+     * The value of each lower case hex digit, and -1 for every other character
+     */
+    private static final byte[] HEX_DIGITS = new byte['f' + 1];
+
+    static {
+        Arrays.fill(HEX_DIGITS, (byte) -1);
+        for (int c = '0'; c <= '9'; c++) {
+            HEX_DIGITS[c] = (byte) (c - '0');
+        }
+        for (int c = 'a'; c <= 'f'; c++) {
+            HEX_DIGITS[c] = (byte) (c - 'a' + 10);
+        }
+    }
+
+    /**
+     * Encode a state object
+     *
+     * @param state the state the object belongs to
+     * @param obj   the object
+     * @return the encoded bytes
+     * @throws IOException if the object could not be encoded
+     */
+    public static byte[] encode(State state, Object obj) throws IOException {
+        long start = System.nanoTime();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+
+        out.writeInt(MAGIC);
+        switch (state) {
+            case USER:
+                ((User) obj).write(out);
+                break;
+            case GAME:
+                ((Game) obj).write(out);
+                break;
+            case TTS:
+                ((TTS) obj).write(out);
+                break;
+            case MUSIC:
+                ((Sound) obj).write(out);
+                break;
+        }
+        out.close();
+
+        byte[] bytes = buffer.toByteArray();
+        Metrics.recordSince("state.encode." + state.getFileName(), start);
+        Metrics.set("state.size." + state.getFileName(), bytes.length);
+        return bytes;
+    }
+
+    /**
+     * Decode a state object
+     *
+     * @param state the state the bytes belong to
+     * @param bytes the encoded bytes
+     * @return the object
+     * @throws IOException if the bytes are not a valid encoding of the state
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T decode(State state, byte[] bytes) throws IOException {
+        long start = System.nanoTime();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+
+        if (in.readInt() != MAGIC) {
+            throw new IOException(state.getFileName() + " is not a state file");
+        }
+        Object obj = null;
+        switch (state) {
+            case USER:
+                obj = User.read(in);
+                break;
+            case GAME:
+                obj = Game.read(in);
+                break;
+            case TTS:
+                obj = TTS.read(in);
+                break;
+            case MUSIC:
+                obj = Sound.read(in);
+                break;
+        }
+
+        Metrics.recordSince("state.decode." + state.getFileName(), start);
+        return (T) obj;
+    }
+
+    /**
+     * @param bytes the contents of a state file
+     * @return whether the file was written with Java serialisation, by a version
+     *         of the game from before this format
+     */
+    public static boolean isJavaSerialised(byte[] bytes) {
+        return bytes.length >= 2 && (bytes[0] & 0xFF) == 0xAC && (bytes[1] & 0xFF) == 0xED;
+    }
+
+    /**
+     * Read the format version of an object and check it can be read
+     *
+     * @param in      the input
+     * @param current the newest version the reader understands
+     * @param name    the name of the object, for the error message
+     * @return the version the object was written with
+     * @throws IOException if the object was written by a newer version
+     */
+    public static int readVersion(DataInput in, int current, String name) throws IOException {
+        int version = in.readUnsignedShort();
+        if (version > current) {
+            throw new IOException(name + " format version " + version + " is newer than " + current);
+        }
+        return version;
+    }
+
+    /**
+     * Write a string which may be null
+     */
+    public static void writeString(DataOutput out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    /**
+     * Read a string written by writeString
+     */
+    public static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * Write a question id. Ids are almost always UUIDs, which are stored as two
+     * longs rather than 36 characters.
+     */
+    public static void writeId(DataOutput out, String id) throws IOException {
+        UUID uuid = toUUID(id);
+        if (uuid != null) {
+            out.writeBoolean(true);
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        } else {
+            out.writeBoolean(false);
+            writeString(out, id);
+        }
+    }
+
+    /**
+     * Read an id written by writeId
+     */
+    public static String readId(DataInput in) throws IOException {
+        if (in.readBoolean()) {
+            return new UUID(in.readLong(), in.readLong()).toString();
+        }
+        return readString(in);
+    }
+
+    /**
+     * Write an enum constant, which may be null. Constants are stored by name, so
+     * reordering an enum does not change what is read back.
+     */
+    public static void writeEnum(DataOutput out, Enum<?> e) throws IOException {
+        writeString(out, e == null ? null : e.name());
+    }
+
+    /**
+     * Read an enum constant written by writeEnum
+     *
+     * @return the constant, or null if there is none or it no longer exists
+     */
+    public static <E extends Enum<E>> E readEnum(DataInput in, Class<E> type) throws IOException {
+        String name = readString(in);
+        if (name == null) {
+            return null;
+        }
+        try {
+            return Enum.valueOf(type, name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the id as a UUID, if it is one written in the canonical lower case
+     *         form (so that it reads back as exactly the same string)
+     */
+    private static UUID toUUID(String id) {
+        if (id == null || id.length() != UUID_LENGTH) {
+            return null;
+        }
+        // Parsed with a table rather than by testing which range each digit is in,
+        // which the CPU cannot predict for random ids
+        long most = 0;
+        long least = 0;
+        int digits = 0;
+        for (int i = 0; i < UUID_LENGTH; i++) {
+            char c = id.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return null;
+                }
+                continue;
+            }
+            int digit = c < HEX_DIGITS.length ? HEX_DIGITS[c] : -1;
+            if (digit < 0) {
+                return null;
+            }
+            if (digits++ < 16) {
+                most = (most << 4) | digit;
+            } else {
+                least = (least << 4) | digit;
+            }
+        }
+        return new UUID(most, least);
+    }
+}
@@ -1,34 +1,126 @@
 package quinzical.util;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.util.ArrayDeque;
-
-import javafx.concurrent.Task;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * TTS module to allow for the easy and non-overlapping playing of text to
  * speech text
+ *
+ * Messages are queued from any thread and spoken one at a time by a single
+ * consumer thread, which owns all of the speech state. There is a queue for
+ * each priority, and a high priority message (such as "Typo") cuts off a normal
+ * message that is being spoken rather than waiting for it.
+ *
+ * A clue whose audio has already been rendered (see ClueAudioCache) is queued
+ * like any other message, and played by the consumer instead of being spoken.
+ *
+ * By default each message is spoken by an espeak process started ahead of
+ * time (see EspeakWorker). Starting with -Dquinzical.tts.persistent=false
+ * instead starts a new espeak process when each message comes up.
  */
 public class TTS implements Serializable {
 
     private static final long serialVersionUID = -7165475779564908787L;
 
-    // Transient as we do not want the queue to be persisted between sessions
-    private transient ArrayDeque<ProcessBuilder> processQueue;
+    private static final boolean PERSISTENT = !"false".equals(System.getProperty("quinzical.tts.persistent"));
+
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * The priority of a message. Higher priority messages are spoken first, and
+     * cut off a lower priority message that is being spoken.
+     */
+    public static enum Priority {
+        HIGH, NORMAL
+    }
+
+    /**
+     * A message waiting to be spoken, with the settings at the time it was queued
+     */
+    private static class Message {
+        private final String text;
+        private final Priority priority;
+        private final int volume;
+        private final int speed;
+        private final long generation;
+        private final long queuedAt = System.nanoTime();
+
+        /**
+         * The rendered audio of the message, to play instead of speaking it, or
+         * null
+         */
+        private final File clip;
+
+        private Message(String text, Priority priority, int volume, int speed, long generation, File clip) {
+            this.text = text;
+            this.priority = priority;
+            this.volume = volume;
+            this.speed = speed;
+            this.generation = generation;
+            this.clip = clip;
+        }
+    }
 
     // singleton code
     private static TTS tts;
     private int volume;
     private int speed;
-    private transient boolean speaking = false;
+
+    // Transient as we do not want the queue to be persisted between sessions.
+    // Indexed by priority, each queue is lock free with many producers and the
+    // one consumer.
+    private transient List<Queue<Message>> queues;
+
+    private transient AtomicInteger depth;
+
+    /**
+     * Incremented by clearQueue, so a message taken off the queue just before
+     * the queue was cleared is not spoken
+     */
+    private transient AtomicLong generation;
+
+    private transient Thread consumer;
+
+    private transient EspeakWorker worker;
+
+    /**
+     * The process speaking the current message, when each message has its own
+     * process
+     */
+    private transient volatile Process speaking;
+
+    private transient volatile Priority speakingPriority;
+
+    /**
+     * Set when the message being spoken is cut off. Cleared by the consumer
+     * before it publishes speakingPriority for the next message, and checked
+     * once that message has started, so a cut off which comes while the message
+     * is still being started is not lost.
+     */
+    private transient volatile boolean cutOff;
+
+    /**
+     * Held while the consumer starts a message and while a message is cut off,
+     * so a cut off meant for one message can never land on the next
+     */
+    private transient Object speechLock;
 
     /**
      * Private constructor
      */
     private TTS() {
-        processQueue = new ArrayDeque<ProcessBuilder>();
         volume = 100;
         speed = 160;
     }
@@ -37,60 +129,19 @@ public class TTS implements Serializable {
      * Get the singleton instance of the class
      * @return instance
      */
-    public static TTS getInstance() {
+    public static synchronized TTS getInstance() {
         if (tts == null) {
             // Attempt to read state from file
             tts = IOManager.readState(State.TTS);
             if (tts == null) {
                 tts = new TTS();
                 persist();
-            } else {
-                tts.init();
             }
+            tts.init();
         }
         return tts;
     }
 
-    /**
-     * Internal method used by the public speak function to handle the actual
-     * speaking of messages. The message which is spoken is the first in the queue.
-     * Speaking of messages runs in a separate thread. When a message has finished
-     * being spoken the message queue is checked to see whether there is another
-     * message which must be spoken.
-     * 
-     * Does not speak if there are no messages in the queue. Messages must be added
-     * to the queue with the speak method.
-     */
-    private void speakNext() {
-        if (speaking || processQueue.peek() == null) {
-            return;
-        }
-
-        speaking = true;
-
-        Task<Void> task = new Task<Void>() {
-            @Override
-            protected Void call() throws Exception {
-                var builder = processQueue.poll();
-
-                try {
-                    Process p = builder.start();
-                    try {
-                        p.waitFor();
-                        speaking = false;
-                        speakNext();
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-                return null;
-            }
-        };
-        new Thread(task).start();
-    }
-
     /**
      * Add a message to the queue of messages to be spoken by espeak. If this is the
      * first message within the queue, then the message will be immediately spoken.
@@ -103,12 +154,57 @@ public class TTS implements Serializable {
      * @param text
      */
     public void speak(String text) {
-        ProcessBuilder builder = new ProcessBuilder("espeak", "-a", Integer.toString(volume), "-s",
-                Integer.toString(speed), text);
-        processQueue.add(builder);
-        if (!speaking) {
-            speakNext();
+        speak(text, Priority.NORMAL);
+    }
+
+    /**
+     * Add a message to the queue with the given priority. A high priority message
+     * is spoken before any normal messages, and stops a normal message that is
+     * already being spoken.
+     * 
+     * @param text
+     * @param priority
+     */
+    public void speak(String text, Priority priority) {
+        queue(new Message(text, priority, volume, speed, generation.get(), null));
+    }
+
+    /**
+     * Speak a clue. If the clue has already been rendered by the clue audio cache
+     * its audio is played rather than spoken, but otherwise it is queued like any
+     * other message.
+     * 
+     * @param clue the text of the clue
+     */
+    public void speakClue(String clue) {
+        File clip = ClueAudioCache.getInstance().find(clue, volume, speed);
+        queue(new Message(clue, Priority.NORMAL, volume, speed, generation.get(), clip));
+    }
+
+    /**
+     * Add a message to its queue, and cut off a normal message being spoken if it
+     * is high priority
+     */
+    private void queue(Message message) {
+        Metrics.increment("tts.speak");
+        queues.get(message.priority.ordinal()).add(message);
+        Metrics.set("tts.queue.depth", depth.incrementAndGet());
+
+        synchronized (speechLock) {
+            if (message.priority == Priority.HIGH && speakingPriority == Priority.NORMAL) {
+                stopSpeaking();
+            }
         }
+        LockSupport.unpark(consumer);
+    }
+
+    /**
+     * Render clues ahead of time so that speakClue can play them straight away
+     * 
+     * @param clues the text of each clue
+     */
+    public void prepareClues(List<String> clues) {
+        ClueAudioCache.getInstance().prefetch(clues, volume, speed);
     }
 
     /**
@@ -116,7 +212,15 @@ public class TTS implements Serializable {
      * be voiced, but have not yet completed.
      */
     public void clearQueue() {
-        processQueue.clear();
+        synchronized (speechLock) {
+            generation.incrementAndGet();
+            stopSpeaking();
+        }
+        for (Queue<Message> queue : queues) {
+            queue.clear();
+        }
+        depth.set(0);
+        Metrics.set("tts.queue.depth", 0);
     }
 
     /**
@@ -125,6 +229,7 @@ public class TTS implements Serializable {
      */
     public void setVolume(int volume) {
         this.volume = volume;
+        prepare();
         persist();
     }
 
@@ -148,9 +253,19 @@ public class TTS implements Serializable {
         } else {
             this.speed = speed;
         }
+        prepare();
         persist();
     }
 
+    /**
+     * Start espeak with the current settings ahead of the next message
+     */
+    private void prepare() {
+        if (worker != null) {
+            worker.prepare(volume, speed);
+        }
+    }
+
     /**
      * 
      * @return the speed
@@ -170,6 +285,35 @@ public class TTS implements Serializable {
         }
     }
 
+    /**
+     * Write the settings in the binary state format
+     * 
+     * @param out the output to write them to
+     * @throws IOException
+     * @see StateCodec
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeShort(FORMAT_VERSION);
+        out.writeInt(volume);
+        out.writeInt(speed);
+    }
+
+    /**
+     * Read settings written by write
+     * 
+     * @param in the input to read them from
+     * @return the TTS object, which still needs to be initialised
+     * @throws IOException
+     */
+    public static TTS read(DataInput in) throws IOException {
+        StateCodec.readVersion(in, FORMAT_VERSION, "TTS");
+
+        TTS tts = new TTS();
+        tts.volume = in.readInt();
+        tts.speed = in.readInt();
+        return tts;
+    }
+
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
         in.defaultReadObject();
     };
@@ -178,8 +322,117 @@ public class TTS implements Serializable {
      * Init the TTS object
      */
     private void init() {
-        processQueue = new ArrayDeque<ProcessBuilder>();
-        speaking = false;
+        queues = new ArrayList<Queue<Message>>();
+        for (int i = 0; i < Priority.values().length; i++) {
+            queues.add(new ConcurrentLinkedQueue<Message>());
+        }
+        depth = new AtomicInteger();
+        generation = new AtomicLong();
+        speechLock = new Object();
+
+        // Start espeak ahead of the first message, so that message does not have
+        // to wait for it
+        if (PERSISTENT) {
+            worker = new EspeakWorker();
+            worker.prepare(volume, speed);
+        }
+
+        consumer = new Thread(this::consume, "quinzical-tts");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /**
+     * The consumer thread. Takes the highest priority message off the queues and
+     * speaks it, and sleeps while there are none.
+     */
+    private void consume() {
+        while (true) {
+            Message message = next();
+            if (message == null) {
+                LockSupport.park(this);
+                continue;
+            }
+            Metrics.set("tts.queue.depth", Math.max(0, depth.decrementAndGet()));
+
+            synchronized (speechLock) {
+                if (message.generation != generation.get()) {
+                    // The queue was cleared after this message was queued
+                    continue;
+                }
+                cutOff = false;
+                speakingPriority = message.priority;
+            }
+            Metrics.recordSince("tts.queue.latency", message.queuedAt);
+
+            try {
+                say(message);
+            } catch (IOException e) {
+                e.printStackTrace();
+            } catch (InterruptedException e) {
+                // Only the consumer thread is ever interrupted, and only on exit
+                return;
+            } finally {
+                speakingPriority = null;
+            }
+        }
+    }
+
+    /**
+     * @return the next message to speak, or null if there is none
+     */
+    private Message next() {
+        for (Queue<Message> queue : queues) {
+            Message message = queue.poll();
+            if (message != null) {
+                return message;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Speak a message, or play it if it is a rendered clue. Runs on the consumer
+     * thread, and waits until the message has finished or been cut off.
+     */
+    private void say(Message message) throws IOException, InterruptedException {
+        if (message.clip != null && message.clip.isFile()) {
+            ClueAudioCache.getInstance().play(message.clip, () -> cutOff);
+            return;
+        }
+        if (PERSISTENT) {
+            worker.speak(message.text, message.volume, message.speed, () -> cutOff);
+            return;
+        }
+
+        List<String> command = EspeakWorker.command(message.volume, message.speed);
+        command.add(message.text);
+        Process process = new ProcessBuilder(command).start();
+        speaking = process;
+        if (cutOff) {
+            process.destroyForcibly();
+        }
+        try {
+            process.waitFor();
+        } finally {
+            speaking = null;
+        }
+    }
+
+    /**
+     * Cut off the message being spoken or played
+     */
+    private void stopSpeaking() {
+        cutOff = true;
+        ClueAudioCache.stopIfCreated();
+        if (PERSISTENT) {
+            worker.cancel();
+        } else {
+            Process process = speaking;
+            if (process != null) {
+                process.destroyForcibly();
+            }
+        }
     }
 
 }
\ No newline at end of file
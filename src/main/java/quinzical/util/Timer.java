@@ -1,25 +1,35 @@
 package quinzical.util;
 
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
+import java.util.concurrent.TimeUnit;
+
+import javafx.animation.AnimationTimer;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.scene.control.Label;
 import javafx.scene.control.ProgressBar;
-import javafx.util.Duration;
 
 /**
  * Util module which is given a Label JavaFX element and turns it into a timer
  * display.
+ *
+ * The time is kept by a Countdown, and the display is redrawn once per frame by
+ * an AnimationTimer. The label is only changed when the second it shows
+ * changes.
  */
 public class Timer {
-    private float tickPeriod = 0.01f;
+    private static final double PROGRESS_SHIFT = 0.07;
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
     private int maxTime;
-    private float currentTime;
     private Label fxElement;
     private ProgressBar fxProgressLeft;
     private ProgressBar fxProgressRight;
-    private Timeline timeline;
+
+    private final Countdown countdown = new Countdown(Clock.SYSTEM);
+    private AnimationTimer ticker;
+    private EventHandler<ActionEvent> onFinished;
+    private long shownSeconds;
 
     public static Timer instance;
 
@@ -66,42 +76,88 @@ public class Timer {
      * @param event The event to be executed once the timer finishes
      */
     public void start(EventHandler<ActionEvent> event) {
-        currentTime = maxTime;
-        fxElement.setText(String.valueOf(currentTime));
-        timeline = new Timeline(new KeyFrame(Duration.seconds(tickPeriod), e -> {
-            currentTime -= tickPeriod;
-            fxElement.setText(String.valueOf((int) Math.ceil(currentTime)));
-            double prog = currentTime / maxTime;
-            double shift = 0.07;
-            fxProgressLeft.setProgress((1 - shift) * prog + shift);
-            fxProgressRight.setProgress((1 - shift) * prog + shift);
-        }));
-        timeline.setCycleCount((int) (maxTime / tickPeriod));
-        timeline.setOnFinished(event);
-        timeline.play();
+        stop();
+        onFinished = event;
+        countdown.start(maxTime, TimeUnit.SECONDS);
+
+        if (ticker == null) {
+            ticker = new AnimationTimer() {
+                @Override
+                public void handle(long now) {
+                    render();
+                }
+            };
+        }
+        ticker.start();
+
+        // Drawn straight away rather than on the next frame, which also finishes
+        // a countdown of no time (and stops the ticker) before it is shown
+        shownSeconds = -1;
+        render();
+    }
+
+    /**
+     * Update the display from the countdown, and fire the event once it has
+     * finished
+     */
+    private void render() {
+        long remaining = countdown.getRemainingNanos();
+
+        long seconds = (long) Math.ceil(remaining / NANOS_PER_SECOND);
+        if (seconds != shownSeconds) {
+            shownSeconds = seconds;
+            fxElement.setText(Long.toString(seconds));
+        }
+
+        // A countdown of no time has nothing left to show
+        long duration = countdown.getDurationNanos();
+        double prog = duration == 0 ? 0 : (double) remaining / duration;
+        fxProgressLeft.setProgress((1 - PROGRESS_SHIFT) * prog + PROGRESS_SHIFT);
+        fxProgressRight.setProgress((1 - PROGRESS_SHIFT) * prog + PROGRESS_SHIFT);
+
+        if (remaining == 0) {
+            ticker.stop();
+            countdown.pause();
+            EventHandler<ActionEvent> event = onFinished;
+            onFinished = null;
+            if (event != null) {
+                event.handle(new ActionEvent());
+            }
+        }
     }
 
     /**
-     * Stop the timer and reset the position to the beginning
+     * Stop the timer. The time it stopped at can still be read until it is
+     * started again.
      */
     public void stop() {
-        if (timeline != null) {
-            timeline.stop();
+        if (ticker != null) {
+            ticker.stop();
         }
+        countdown.pause();
+        onFinished = null;
     }
 
     /**
      * Pause the timer. Resuming is possible
      */
     public void pause() {
-        timeline.pause();
+        if (ticker != null) {
+            ticker.stop();
+        }
+        countdown.pause();
     }
 
     /**
      * Resume the timer if it has been paused
      */
     public void resume() {
-        timeline.play();
+        if (onFinished == null) {
+            // Stopped or already finished
+            return;
+        }
+        countdown.resume();
+        ticker.start();
     }
 
     /**
@@ -109,7 +165,7 @@ public class Timer {
      * @return the current time of the timer
      */
     public float getTime() {
-        return currentTime;
+        return (float) (countdown.getRemainingNanos() / NANOS_PER_SECOND);
     }
 
     /**
@@ -117,6 +173,6 @@ public class Timer {
      * @return the time which has elapsed on the current timer cycle
      */
     public float getElapsed() {
-        return maxTime - currentTime;
+        return (float) (countdown.getElapsedNanos() / NANOS_PER_SECOND);
     }
 }
@@ -31,7 +31,11 @@ import quinzical.model.User;
  */
 public class UserConnect {
 
-    private static final String BASEURL = "http://13.210.217.144:3000";
+    /**
+     * The address of the server, which can be changed with
+     * {@code -Dquinzical.server}, e.g. to play against a local stand-in server
+     */
+    static final String BASEURL = System.getProperty("quinzical.server", "http://13.210.217.144:3000");
 
     private static final HttpClient client = HttpClient.newBuilder().version(Version.HTTP_1_1).build();
 
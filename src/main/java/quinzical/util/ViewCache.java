@@ -0,0 +1,205 @@
+package quinzical.util;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Node;
+import quinzical.App;
+import quinzical.controller.Reusable;
+import quinzical.controller.View;
+
+/**
+ * Keeps the node graphs of views so each view is only parsed from fxml once.
+ * Only views whose controllers are Reusable (or which have no controller) are
+ * kept; the controller's onShow method is called each time the view is shown
+ * to bring it up to date. Any other view is loaded from fxml every time, as
+ * before.
+ *
+ * Views can also be loaded ahead of time on a background thread with prewarm,
+ * so even the first visit to them is quick. Only reusable views are loaded
+ * ahead of time, as the initialize method of any other controller may depend
+ * on the state of the app when it is shown.
+ *
+ * The cache can be turned off with {@code -Dquinzical.viewCache=false}.
+ *
+ * @author Alexander Nicholson
+ */
+public class ViewCache {
+
+    private static final boolean ENABLED = !"false".equals(System.getProperty("quinzical.viewCache"));
+
+    /**
+     * A loaded part of a view
+     */
+    private static class Loaded {
+        private final Node node;
+        private final Object controller;
+
+        private Loaded(Node node, Object controller) {
+            this.node = node;
+            this.controller = controller;
+        }
+    }
+
+    /**
+     * The loaded parts of views, keyed by view and the part of the screen they
+     * fill. A future which has not completed is a part being loaded ahead of
+     * time.
+     */
+    private static final Map<String, CompletableFuture<Loaded>> cache = new ConcurrentHashMap<String, CompletableFuture<Loaded>>();
+
+    private static ExecutorService loader;
+
+    /**
+     * Get a part of a view, loading it if it has not been loaded already. Must be
+     * called on the JavaFX thread.
+     *
+     * @param view       the view
+     * @param fxml       the path to the fxml of the part, relative to App.java
+     * @param controller the controller to use, or null if the fxml names its own
+     * @return the node graph of the part, or null if there is no fxml
+     */
+    public static Node get(View view, String fxml, Object controller) {
+        if (fxml == null) {
+            return null;
+        }
+        if (!ENABLED) {
+            return ViewLoader.loadFXML(fxml, controller);
+        }
+
+        long start = System.nanoTime();
+        String key = key(view, fxml);
+        Loaded loaded = null;
+
+        CompletableFuture<Loaded> cached = cache.get(key);
+        if (cached != null) {
+            try {
+                // Waits if the part is still being loaded ahead of time
+                loaded = cached.join();
+                Metrics.increment("view.cache.hit");
+            } catch (CompletionException e) {
+                // Loading ahead of time failed, load it here instead
+                cache.remove(key, cached);
+            }
+        }
+
+        if (loaded == null) {
+            Metrics.increment("view.cache.miss");
+            loaded = load(fxml, controller, false);
+            if (loaded == null) {
+                return null;
+            }
+            if (loaded.controller == null || loaded.controller instanceof Reusable) {
+                cache.put(key, CompletableFuture.completedFuture(loaded));
+            }
+        }
+
+        if (loaded.controller instanceof Reusable) {
+            ((Reusable) loaded.controller).onShow();
+        }
+        Metrics.recordSince("view.get", start);
+        return loaded.node;
+    }
+
+    /**
+     * Load views in the background so they are ready before they are first shown.
+     * Views which are not reusable are skipped.
+     *
+     * @param views the views to load
+     */
+    public static synchronized void prewarm(View... views) {
+        if (!ENABLED) {
+            return;
+        }
+        if (loader == null) {
+            loader = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "quinzical-view-prewarm");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+        }
+
+        for (View view : views) {
+            if (view.getController() != null && !(view.getController() instanceof Reusable)) {
+                continue;
+            }
+            String[] parts = { view.getCenter(), view.getTop(), view.getRight(), view.getBottom(), view.getLeft() };
+            for (int i = 0; i < parts.length; i++) {
+                String fxml = parts[i];
+                if (fxml == null) {
+                    continue;
+                }
+                // Like Router, only the center is given the view's controller
+                Object controller = i == 0 ? view.getController() : null;
+                CompletableFuture<Loaded> future = new CompletableFuture<Loaded>();
+                String key = key(view, fxml);
+                if (cache.putIfAbsent(key, future) != null) {
+                    continue;
+                }
+
+                loader.execute(() -> {
+                    long start = System.nanoTime();
+                    Loaded loaded = load(fxml, controller, true);
+                    if (loaded == null) {
+                        cache.remove(key, future);
+                        future.completeExceptionally(new IllegalStateException(fxml + " could not be prewarmed"));
+                    } else {
+                        future.complete(loaded);
+                        Metrics.recordSince("view.prewarm", start);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Load a part of a view from fxml
+     *
+     * @param fxml       the path to the fxml
+     * @param controller the controller to use, or null if the fxml names its own
+     * @param reusable   whether to refuse to create a controller which is not
+     *                   reusable
+     * @return the loaded part, or null if it could not be loaded
+     */
+    private static Loaded load(String fxml, Object controller, boolean reusable) {
+        long start = System.nanoTime();
+        try {
+            FXMLLoader loader = new FXMLLoader(App.class.getResource(fxml));
+            if (controller != null) {
+                loader.setController(controller);
+            } else if (reusable) {
+                loader.setControllerFactory(type -> {
+                    if (!Reusable.class.isAssignableFrom(type)) {
+                        throw new IllegalStateException(type.getName() + " is not reusable");
+                    }
+                    try {
+                        return type.getDeclaredConstructor().newInstance();
+                    } catch (ReflectiveOperationException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+            }
+            Node node = loader.load();
+            Metrics.recordSince("view.load", start);
+            return new Loaded(node, loader.getController());
+        } catch (Exception e) {
+            if (!reusable) {
+                e.printStackTrace();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @return the key of a part of a view in the cache
+     */
+    private static String key(View view, String fxml) {
+        return view.name() + ":" + fxml;
+    }
+}
@@ -0,0 +1,508 @@
+package quinzical.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Compact binary encoding of multiplayer messages, used in place of JSON on a
+ * connection once both ends have agreed to it. A message is the data of one
+ * socket event, written as a tree of tagged values:
+ *
+ * <pre>
+ * message:  version, value
+ * value:    tag, then depending on the tag
+ *             INT           zigzag varint
+ *             DOUBLE        8 bytes
+ *             STRING        varint byte length, UTF-8 bytes
+ *             OBJECT        varint size, (key, value) x size
+ *             ARRAY         varint size, value x size
+ *             AVATAR        hat, accessory, eyes
+ *             QUESTION      id, zigzag varint difficulty, question, prefix, answer
+ *             QUESTION_REF  id
+ * key:      varint position in KEYS + 1, or 0 and the key as a string
+ * cosmetic: varint ordinal + 1, or 0 for none
+ * id:       0 for none, 1 and 16 bytes for a UUID, or 2 and a string
+ * </pre>
+ *
+ * Varints hold 7 bits a byte, least significant first, with the top bit set on
+ * every byte but the last.
+ *
+ * A codec belongs to one connection. It remembers every question with an id
+ * which has been sent or received over the connection, and sends a question
+ * the other end already has as just its id. Cosmetics are sent by their
+ * ordinal in the client's Cosmetic enum, whose names the client sends when the
+ * encoding is agreed, so the server does not need to know them.
+ *
+ * The stand-in server compiles this file into its own module, so it depends on
+ * nothing but org.json.
+ *
+ * @author Alexander Nicholson
+ */
+public class WireCodec {
+
+    public static final int VERSION = 1;
+
+    private static final int NULL = 0;
+    private static final int FALSE = 1;
+    private static final int TRUE = 2;
+    private static final int INT = 3;
+    private static final int DOUBLE = 4;
+    private static final int STRING = 5;
+    private static final int OBJECT = 6;
+    private static final int ARRAY = 7;
+    private static final int AVATAR = 8;
+    private static final int QUESTION = 9;
+    private static final int QUESTION_REF = 10;
+
+    private static final int NO_ID = 0;
+    private static final int UUID_ID = 1;
+    private static final int STRING_ID = 2;
+
+    /**
+     * Keys sent as their position in this list rather than spelled out. Keys may
+     * only ever be added to the end.
+     */
+    private static final String[] KEYS = { "code", "seq", "op", "username", "member", "members", "user", "score",
+            "status", "answer", "avatar", "isHost", "question", "questions", "questionPrefix", "difficulty", "id",
+            "resume", "ok", "replayed", "last", "token", "hat", "accessory", "eyes" };
+
+    private static final String[] AVATAR_SLOTS = { "hat", "accessory", "eyes" };
+
+    private static final Map<String, Integer> KEY_CODES = new HashMap<String, Integer>();
+    static {
+        for (int i = 0; i < KEYS.length; i++) {
+            KEY_CODES.put(KEYS[i], i + 1);
+        }
+    }
+
+    /**
+     * The body of a question, to tell whether the other end has the same one
+     */
+    private static class KnownQuestion {
+        private final int difficulty;
+        private final String question;
+        private final String prefix;
+        private final String answer;
+
+        private KnownQuestion(int difficulty, String question, String prefix, String answer) {
+            this.difficulty = difficulty;
+            this.question = question;
+            this.prefix = prefix;
+            this.answer = answer;
+        }
+
+        private boolean matches(JSONObject obj) {
+            return difficulty == obj.optInt("difficulty") && question.equals(obj.optString("question"))
+                    && prefix.equals(obj.optString("questionPrefix")) && answer.equals(obj.optString("answer"));
+        }
+
+        private JSONObject toJSONObject(String id) throws JSONException {
+            JSONObject obj = new JSONObject();
+            if (id != null) {
+                obj.put("id", id);
+            }
+            obj.put("difficulty", difficulty);
+            obj.put("question", question);
+            obj.put("questionPrefix", prefix);
+            obj.put("answer", answer);
+            return obj;
+        }
+    }
+
+    private final List<String> cosmetics;
+    private final Map<String, Integer> cosmeticOrdinals = new HashMap<String, Integer>();
+
+    /**
+     * Every question with an id sent or received over the connection
+     */
+    private final Map<String, KnownQuestion> questions = new HashMap<String, KnownQuestion>();
+
+    /**
+     * Constructor
+     *
+     * @param cosmetics the names of the client's cosmetics, in order
+     */
+    public WireCodec(List<String> cosmetics) {
+        this.cosmetics = cosmetics;
+        for (int i = 0; i < cosmetics.size(); i++) {
+            cosmeticOrdinals.put(cosmetics.get(i), i);
+        }
+    }
+
+    /**
+     * Encode the data of an event
+     *
+     * @param data the data
+     * @return the encoded bytes
+     */
+    public synchronized byte[] encode(JSONObject data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, VERSION);
+        writeValue(out, data);
+        return out.toByteArray();
+    }
+
+    /**
+     * Decode the data of an event
+     *
+     * @param bytes the encoded bytes
+     * @return the data, as the JSON it would have been sent as otherwise
+     * @throws JSONException if the bytes are not a valid message
+     */
+    public synchronized JSONObject decode(byte[] bytes) throws JSONException {
+        Reader in = new Reader(bytes);
+        int version = (int) in.readVarint();
+        if (version > VERSION) {
+            throw new JSONException("Wire format version " + version + " is newer than " + VERSION);
+        }
+        Object value = readValue(in);
+        if (!(value instanceof JSONObject)) {
+            throw new JSONException("Message is not an object");
+        }
+        return (JSONObject) value;
+    }
+
+    private void writeValue(ByteArrayOutputStream out, Object value) {
+        if (value == null || value == JSONObject.NULL) {
+            out.write(NULL);
+        } else if (value instanceof Boolean) {
+            out.write((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short
+                || value instanceof Byte) {
+            out.write(INT);
+            writeSigned(out, ((Number) value).longValue());
+        } else if (value instanceof Number) {
+            out.write(DOUBLE);
+            long bits = Double.doubleToLongBits(((Number) value).doubleValue());
+            for (int i = 56; i >= 0; i -= 8) {
+                out.write((int) (bits >>> i));
+            }
+        } else if (value instanceof JSONObject) {
+            writeObject(out, (JSONObject) value);
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            out.write(ARRAY);
+            writeVarint(out, array.length());
+            for (int i = 0; i < array.length(); i++) {
+                writeValue(out, array.opt(i));
+            }
+        } else {
+            out.write(STRING);
+            writeString(out, value.toString());
+        }
+    }
+
+    private void writeObject(ByteArrayOutputStream out, JSONObject obj) {
+        int[] avatar = avatar(obj);
+        if (avatar != null) {
+            out.write(AVATAR);
+            for (int ordinal : avatar) {
+                writeVarint(out, ordinal);
+            }
+            return;
+        }
+
+        if (isQuestion(obj)) {
+            String id = obj.optString("id", null);
+            KnownQuestion known = id == null ? null : questions.get(id);
+            if (known != null && known.matches(obj)) {
+                out.write(QUESTION_REF);
+                writeId(out, id);
+                return;
+            }
+            out.write(QUESTION);
+            writeId(out, id);
+            writeSigned(out, obj.optInt("difficulty"));
+            writeString(out, obj.optString("question"));
+            writeString(out, obj.optString("questionPrefix"));
+            writeString(out, obj.optString("answer"));
+            if (id != null) {
+                questions.put(id, new KnownQuestion(obj.optInt("difficulty"), obj.optString("question"),
+                        obj.optString("questionPrefix"), obj.optString("answer")));
+            }
+            return;
+        }
+
+        out.write(OBJECT);
+        writeVarint(out, obj.length());
+        for (Iterator<?> keys = obj.keys(); keys.hasNext();) {
+            String key = keys.next().toString();
+            Integer code = KEY_CODES.get(key);
+            if (code != null) {
+                writeVarint(out, code);
+            } else {
+                writeVarint(out, 0);
+                writeString(out, key);
+            }
+            writeValue(out, obj.opt(key));
+        }
+    }
+
+    /**
+     * @return the ordinal + 1 of each cosmetic if the object is an avatar, or null
+     *         if it is not
+     */
+    private int[] avatar(JSONObject obj) {
+        if (obj.length() == 0 || obj.length() > AVATAR_SLOTS.length) {
+            return null;
+        }
+        int[] ordinals = new int[AVATAR_SLOTS.length];
+        int found = 0;
+        for (int slot = 0; slot < AVATAR_SLOTS.length; slot++) {
+            Object value = obj.opt(AVATAR_SLOTS[slot]);
+            if (value == null) {
+                continue;
+            }
+            Integer ordinal = value instanceof String ? cosmeticOrdinals.get(value) : null;
+            if (ordinal == null) {
+                return null;
+            }
+            ordinals[slot] = ordinal + 1;
+            found++;
+        }
+        return found == obj.length() ? ordinals : null;
+    }
+
+    /**
+     * @return whether the object is exactly a question, as Question.toJSONObject
+     *         writes it
+     */
+    private static boolean isQuestion(JSONObject obj) {
+        Object id = obj.opt("id");
+        return obj.length() == (id == null ? 4 : 5) && (id == null || id instanceof String)
+                && obj.opt("difficulty") instanceof Integer && obj.opt("question") instanceof String
+                && obj.opt("questionPrefix") instanceof String && obj.opt("answer") instanceof String;
+    }
+
+    private Object readValue(Reader in) throws JSONException {
+        int tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return JSONObject.NULL;
+            case FALSE:
+                return Boolean.FALSE;
+            case TRUE:
+                return Boolean.TRUE;
+            case INT: {
+                long value = in.readSigned();
+                if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                    return (int) value;
+                }
+                return value;
+            }
+            case DOUBLE: {
+                long bits = 0;
+                for (int i = 0; i < 8; i++) {
+                    bits = bits << 8 | in.readByte();
+                }
+                return Double.longBitsToDouble(bits);
+            }
+            case STRING:
+                return in.readString();
+            case OBJECT: {
+                int size = in.readLength();
+                JSONObject obj = new JSONObject();
+                for (int i = 0; i < size; i++) {
+                    long code = in.readVarint();
+                    String key;
+                    if (code == 0) {
+                        key = in.readString();
+                    } else if (code <= KEYS.length) {
+                        key = KEYS[(int) code - 1];
+                    } else {
+                        throw new JSONException("Unknown key " + code);
+                    }
+                    obj.put(key, readValue(in));
+                }
+                return obj;
+            }
+            case ARRAY: {
+                int size = in.readLength();
+                JSONArray array = new JSONArray();
+                for (int i = 0; i < size; i++) {
+                    array.put(readValue(in));
+                }
+                return array;
+            }
+            case AVATAR: {
+                JSONObject avatar = new JSONObject();
+                for (String slot : AVATAR_SLOTS) {
+                    long ordinal = in.readVarint();
+                    if (ordinal > cosmetics.size()) {
+                        throw new JSONException("Unknown cosmetic " + ordinal);
+                    }
+                    if (ordinal > 0) {
+                        avatar.put(slot, cosmetics.get((int) ordinal - 1));
+                    }
+                }
+                return avatar;
+            }
+            case QUESTION: {
+                String id = readId(in);
+                KnownQuestion question = new KnownQuestion((int) in.readSigned(), in.readString(), in.readString(),
+                        in.readString());
+                if (id != null) {
+                    questions.put(id, question);
+                }
+                return question.toJSONObject(id);
+            }
+            case QUESTION_REF: {
+                String id = readId(in);
+                KnownQuestion question = id == null ? null : questions.get(id);
+                if (question == null) {
+                    throw new JSONException("Unknown question " + id);
+                }
+                return question.toJSONObject(id);
+            }
+            default:
+                throw new JSONException("Unknown tag " + tag);
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * Write a signed integer, zigzag encoded so small negative numbers stay short
+     */
+    private static void writeSigned(ByteArrayOutputStream out, long value) {
+        writeVarint(out, (value << 1) ^ (value >> 63));
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Write a question id. Ids are almost always UUIDs, which are sent as 16 bytes
+     * rather than 36 characters.
+     */
+    private static void writeId(ByteArrayOutputStream out, String id) {
+        UUID uuid = toUUID(id);
+        if (uuid != null) {
+            out.write(UUID_ID);
+            long[] halves = { uuid.getMostSignificantBits(), uuid.getLeastSignificantBits() };
+            for (long half : halves) {
+                for (int i = 56; i >= 0; i -= 8) {
+                    out.write((int) (half >>> i));
+                }
+            }
+        } else if (id != null) {
+            out.write(STRING_ID);
+            writeString(out, id);
+        } else {
+            out.write(NO_ID);
+        }
+    }
+
+    private static String readId(Reader in) throws JSONException {
+        int kind = in.readByte();
+        switch (kind) {
+            case NO_ID:
+                return null;
+            case UUID_ID: {
+                long[] halves = new long[2];
+                for (int h = 0; h < 2; h++) {
+                    for (int i = 0; i < 8; i++) {
+                        halves[h] = halves[h] << 8 | in.readByte();
+                    }
+                }
+                return new UUID(halves[0], halves[1]).toString();
+            }
+            case STRING_ID:
+                return in.readString();
+            default:
+                throw new JSONException("Unknown id kind " + kind);
+        }
+    }
+
+    /**
+     * @return the id as a UUID, if it is one written in the canonical lower case
+     *         form (so that it reads back as exactly the same string)
+     */
+    private static UUID toUUID(String id) {
+        if (id == null || id.length() != 36) {
+            return null;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            boolean valid = (i == 8 || i == 13 || i == 18 || i == 23) ? c == '-'
+                    : (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f');
+            if (!valid) {
+                return null;
+            }
+        }
+        return UUID.fromString(id);
+    }
+
+    /**
+     * Reads the parts of a message, failing cleanly on one which is cut short
+     */
+    private static class Reader {
+        private final byte[] bytes;
+        private int position;
+
+        private Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private int readByte() throws JSONException {
+            if (position >= bytes.length) {
+                throw new JSONException("Message ends early");
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        private long readVarint() throws JSONException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new JSONException("Varint is too long");
+        }
+
+        private long readSigned() throws JSONException {
+            long value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        /**
+         * Read a varint which counts something in the message, so cannot be more
+         * than the bytes left
+         */
+        private int readLength() throws JSONException {
+            long value = readVarint();
+            if (value < 0 || value > bytes.length - position) {
+                throw new JSONException("Length " + value + " is more than the message holds");
+            }
+            return (int) value;
+        }
+
+        private String readString() throws JSONException {
+            int length = readLength();
+            String s = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return s;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package quinzical.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for Countdown, run against a clock which is advanced by hand. Timer,
+ * which draws a Countdown, needs a running JavaFX toolkit and is not covered
+ * here.
+ *
+ * @author Alexander Nicholson
+ */
+public class CountdownTest {
+
+    /**
+     * A clock which only moves when it is told to
+     */
+    private static class FakeClock implements Clock {
+        private long now = 1_000_000_000L;
+
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+
+        void advance(long nanos) {
+            now += nanos;
+        }
+    }
+
+    private static final long DURATION = TimeUnit.SECONDS.toNanos(15);
+
+    private FakeClock clock;
+
+    private Countdown countdown;
+
+    @Before
+    public void setUp() {
+        clock = new FakeClock();
+        countdown = new Countdown(clock);
+    }
+
+    @Test
+    public void startCountsFromTheFullDuration() {
+        countdown.start(15, TimeUnit.SECONDS);
+
+        assertTrue(countdown.isRunning());
+        assertFalse(countdown.isFinished());
+        assertEquals(DURATION, countdown.getDurationNanos());
+        assertEquals(DURATION, countdown.getRemainingNanos());
+        assertEquals(0, countdown.getElapsedNanos());
+    }
+
+    @Test
+    public void remainingTimeIsExact() {
+        countdown.start(15, TimeUnit.SECONDS);
+
+        clock.advance(1);
+        assertEquals(DURATION - 1, countdown.getRemainingNanos());
+
+        clock.advance(1_234_567_890L);
+        assertEquals(DURATION - 1_234_567_891L, countdown.getRemainingNanos());
+        assertEquals(1_234_567_891L, countdown.getElapsedNanos());
+    }
+
+    @Test
+    public void restartingCountsFromTheBeginning() {
+        countdown.start(15, TimeUnit.SECONDS);
+        clock.advance(TimeUnit.SECONDS.toNanos(5));
+
+        countdown.start(10, TimeUnit.SECONDS);
+
+        assertEquals(TimeUnit.SECONDS.toNanos(10), countdown.getRemainingNanos());
+    }
+
+    @Test
+    public void pauseStopsCounting() {
+        countdown.start(15, TimeUnit.SECONDS);
+        clock.advance(TimeUnit.SECONDS.toNanos(4));
+
+        countdown.pause();
+        clock.advance(TimeUnit.SECONDS.toNanos(100));
+
+        assertFalse(countdown.isRunning());
+        assertEquals(TimeUnit.SECONDS.toNanos(11), countdown.getRemainingNanos());
+    }
+
+    @Test
+    public void resumeCarriesOnFromThePause() {
+        countdown.start(15, TimeUnit.SECONDS);
+        clock.advance(TimeUnit.SECONDS.toNanos(4));
+        countdown.pause();
+        clock.advance(TimeUnit.SECONDS.toNanos(100));
+
+        countdown.resume();
+        clock.advance(TimeUnit.SECONDS.toNanos(3));
+
+        assertTrue(countdown.isRunning());
+        assertEquals(TimeUnit.SECONDS.toNanos(8), countdown.getRemainingNanos());
+    }
+
+    @Test
+    public void pausingTwiceCountsOnce() {
+        countdown.start(15, TimeUnit.SECONDS);
+        clock.advance(TimeUnit.SECONDS.toNanos(4));
+        countdown.pause();
+        clock.advance(TimeUnit.SECONDS.toNanos(4));
+        countdown.pause();
+
+        assertEquals(TimeUnit.SECONDS.toNanos(11), countdown.getRemainingNanos());
+    }
+
+    @Test
+    public void remainingTimeStopsAtZero() {
+        countdown.start(15, TimeUnit.SECONDS);
+
+        clock.advance(DURATION + TimeUnit.SECONDS.toNanos(1));
+
+        assertTrue(countdown.isFinished());
+        assertEquals(0, countdown.getRemainingNanos());
+        assertEquals(DURATION, countdown.getElapsedNanos());
+    }
+
+    @Test
+    public void resumeAfterFinishingDoesNothing() {
+        countdown.start(15, TimeUnit.SECONDS);
+        clock.advance(DURATION);
+        countdown.pause();
+
+        countdown.resume();
+        clock.advance(TimeUnit.SECONDS.toNanos(1));
+
+        assertFalse(countdown.isRunning());
+        assertTrue(countdown.isFinished());
+        assertEquals(0, countdown.getRemainingNanos());
+    }
+
+    @Test
+    public void zeroDurationIsFinishedStraightAway() {
+        countdown.start(0, TimeUnit.SECONDS);
+
+        assertTrue(countdown.isFinished());
+        assertEquals(0, countdown.getRemainingNanos());
+    }
+}